@@ -1,5 +1,7 @@
 package com.collab.collab_editor_backend.config;
 
+import com.collab.collab_editor_backend.service.CategoryStatsService;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,6 +9,9 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class DatabaseInitializer implements CommandLineRunner {
 
@@ -15,6 +20,12 @@ public class DatabaseInitializer implements CommandLineRunner {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private CategoryStatsService categoryStatsService;
+
+    @Autowired
+    private DocumentContentStore contentStore;
+
     @Override
     public void run(String... args) throws Exception {
         logger.info("Checking and creating required database tables...");
@@ -39,6 +50,52 @@ public class DatabaseInitializer implements CommandLineRunner {
             addColumnIfMissing("t_document_version", "created_time", "TIMESTAMP DEFAULT CURRENT_TIMESTAMP");
             addColumnIfMissing("t_document_version", "is_locked", "TINYINT(1) DEFAULT 0");
             logger.info("Table 't_document_version' check/creation completed.");
+            // 文档列表只读取内容大小和预览，不再读取正文
+            addColumnIfMissing("t_document", "content_size", "INT");
+            addColumnIfMissing("t_document", "preview", "VARCHAR(255)");
+            // 内容哈希用作ETag；新增列时为已有数据回填：内联内容用SHA2计算（与UTF-8编码的SHA-256一致），
+            // 外置内容的key中已包含哈希
+            if (addColumnIfMissing("t_document", "content_hash", "VARCHAR(64)")) {
+                jdbcTemplate.update("UPDATE t_document SET content_hash = SHA2(COALESCE(content, ''), 256) " +
+                        "WHERE minio_key IS NULL OR minio_key = ''");
+                jdbcTemplate.update("UPDATE t_document SET content_hash = " +
+                        "SUBSTRING_INDEX(SUBSTRING_INDEX(minio_key, '/', -1), '.', 1) WHERE minio_key LIKE '%docs/sha256/%'");
+            }
+            // 外置内容的content列为空，搜索改查纯文本副本；为尚未填写的外置内容回填
+            addColumnIfMissing("t_document", "search_text", "MEDIUMTEXT");
+            backfillSearchText();
+            // 文档列表游标分页按(排序字段, id)定位
+            addIndexIfMissing("t_document", "idx_document_update", "update_time, id");
+            addIndexIfMissing("t_document", "idx_document_create", "create_time, id");
+            addIndexIfMissing("t_document", "idx_document_category_update", "category, update_time, id");
+            // 删除文档时先标记删除，关联数据由后台任务按doc_id分批清理
+            addColumnIfMissing("t_document", "deleted", "TINYINT NOT NULL DEFAULT 0");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS t_document_purge (" +
+                    "doc_id BIGINT PRIMARY KEY, " +
+                    "status VARCHAR(20) NOT NULL, " +
+                    "purged_rows BIGINT DEFAULT 0, " +
+                    "attempts INT DEFAULT 0, " +
+                    "last_error VARCHAR(500), " +
+                    "next_attempt_time TIMESTAMP NULL, " +
+                    "create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "INDEX idx_purge_status_next (status, next_attempt_time)" +
+                    ")");
+            addIndexIfMissing("t_document_version", "idx_document_version_doc", "doc_id");
+            addIndexIfMissing("t_task", "idx_task_doc", "doc_id");
+            addIndexIfMissing("t_comment", "idx_comment_doc", "doc_id");
+            // 分类/标签统计：侧边栏读取统计表，不再对文档表GROUP BY
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS t_category_stats (" +
+                    "name VARCHAR(50) PRIMARY KEY, " +
+                    "doc_count INT NOT NULL DEFAULT 0, " +
+                    "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS t_tag_stats (" +
+                    "name VARCHAR(255) PRIMARY KEY, " +
+                    "doc_count INT NOT NULL DEFAULT 0, " +
+                    "last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+            categoryStatsService.backfillIfEmpty();
             // Create t_video_meeting table if not exists
             String createVideoMeetingTable = "CREATE TABLE IF NOT EXISTS t_video_meeting (" +
                     "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
@@ -109,7 +166,39 @@ public class DatabaseInitializer implements CommandLineRunner {
         }
     }
 
-    private void addColumnIfMissing(String tableName, String columnName, String columnDefinition) {
+    /**
+     * 为search_text为NULL的外置内容回填纯文本副本，按id分批读取；读取失败的文档保持NULL，下次启动重试
+     */
+    private void backfillSearchText() {
+        long lastId = 0;
+        int filled = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, minio_key FROM t_document WHERE id > ? AND minio_key IS NOT NULL AND minio_key <> '' " +
+                            "AND search_text IS NULL ORDER BY id LIMIT 100", lastId);
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (Map<String, Object> row : rows) {
+                lastId = ((Number) row.get("id")).longValue();
+                try {
+                    String content = contentStore.get("", (String) row.get("minio_key"));
+                    jdbcTemplate.update("UPDATE t_document SET search_text = ? WHERE id = ?", contentStore.searchText(content), lastId);
+                    filled++;
+                } catch (Exception e) {
+                    logger.warn("回填文档搜索文本失败, docId: {}, 错误: {}", lastId, e.getMessage());
+                }
+            }
+        }
+        if (filled > 0) {
+            logger.info("已回填外置文档的搜索文本: {}", filled);
+        }
+    }
+
+    /**
+     * @return 是否新增了该列
+     */
+    private boolean addColumnIfMissing(String tableName, String columnName, String columnDefinition) {
         try {
             Integer count = jdbcTemplate.queryForObject(
                     "SELECT COUNT(*) FROM information_schema.COLUMNS " +
@@ -119,9 +208,27 @@ public class DatabaseInitializer implements CommandLineRunner {
                 String sql = String.format("ALTER TABLE %s ADD COLUMN %s %s", tableName, columnName, columnDefinition);
                 jdbcTemplate.execute(sql);
                 logger.info("Added missing column '{}' to table '{}'", columnName, tableName);
+                return true;
             }
         } catch (Exception ex) {
             logger.error("Failed to add column '{}' to table '{}': {}", columnName, tableName, ex.getMessage());
         }
+        return false;
+    }
+
+    private void addIndexIfMissing(String tableName, String indexName, String columns) {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.STATISTICS " +
+                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME = ?",
+                    Integer.class, tableName, indexName);
+            if (count != null && count == 0) {
+                String sql = String.format("CREATE INDEX %s ON %s(%s)", indexName, tableName, columns);
+                jdbcTemplate.execute(sql);
+                logger.info("Added missing index '{}' to table '{}'", indexName, tableName);
+            }
+        } catch (Exception ex) {
+            logger.error("Failed to add index '{}' to table '{}': {}", indexName, tableName, ex.getMessage());
+        }
     }
 }
@@ -35,8 +35,8 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addMapping("/**")
                 .allowedOriginPatterns("http://localhost:5173", "http://localhost:5174", "http://localhost:5175") // 允许常用开发端口
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .allowedHeaders("Authorization", "Content-Type", "Accept")
-                .exposedHeaders("Authorization")
+                .allowedHeaders("Authorization", "Content-Type", "Accept", "If-None-Match")
+                .exposedHeaders("Authorization", "X-Document-Version", "X-Document-Live", "X-Next-Cursor", "ETag")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -78,6 +78,7 @@ public class WebConfig implements WebMvcConfigurer {
                 .excludePathPatterns("/api/user/reset-password/request")
                 .excludePathPatterns("/api/user/reset-password")
                 .excludePathPatterns("/api/error-logs") // 允许未登录用户上报错误日志
+                .excludePathPatterns("/api/doc/*/stream") // EventSource无法设置请求头，在接口内通过token参数校验
                 .excludePathPatterns("/api/monitor/**") // 允许访问监控端点 (仅供测试，生产环境应加权限)
                 .excludePathPatterns("/actuator/**"); // 允许访问Actuator端点
     }
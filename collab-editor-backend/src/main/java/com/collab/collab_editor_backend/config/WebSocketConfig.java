@@ -2,11 +2,14 @@ package com.collab.collab_editor_backend.config; // 这行是自动生成的，
 
 import com.collab.collab_editor_backend.websocket.ChatWebSocketHandler;
 import com.collab.collab_editor_backend.websocket.DocumentWebSocketHandler;
+import com.collab.collab_editor_backend.websocket.MultiplexWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 /**
  * WebSocket 基础配置类：仅启用功能，暂不写复杂业务
@@ -15,6 +18,17 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @EnableWebSocket // 关键注解：启用 WebSocket 功能（少了这行 WebSocket 不生效）
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    // 容器的文本消息缓冲区大小：文档和多路复用连接按此大小接收分片，其他连接的单条消息不能超过此大小
+    @Value("${collab.ws.text-buffer-size:65536}")
+    private int textBufferSize;
+
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(textBufferSize);
+        return container;
+    }
+
     @Bean
     public DocumentWebSocketHandler documentWebSocketHandler() {
         return new DocumentWebSocketHandler();
@@ -25,6 +39,11 @@ public class WebSocketConfig implements WebSocketConfigurer {
         return new ChatWebSocketHandler();
     }
 
+    @Bean
+    public MultiplexWebSocketHandler multiplexWebSocketHandler() {
+        return new MultiplexWebSocketHandler();
+    }
+
     // 注册 WebSocket 处理器（暂时用 Spring 自带的空处理器，后续再替换成自定义逻辑）
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
@@ -38,5 +57,9 @@ public class WebSocketConfig implements WebSocketConfigurer {
         // 5. 使用自定义的 ChatWebSocketHandler 处理聊天逻辑
         registry.addHandler(chatWebSocketHandler(), "/ws/chat")
                 .setAllowedOrigins("*");
+
+        // 6. 多路复用路径：/ws/mux，一条连接订阅多个文档、聊天和通知通道
+        registry.addHandler(multiplexWebSocketHandler(), "/ws/mux")
+                .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import com.collab.collab_editor_backend.service.DocumentService;
 // 2. 导入DTO类
 import com.collab.collab_editor_backend.dto.DocCreateDTO;
+import com.collab.collab_editor_backend.dto.DocumentPage;
 // 3. 导入JwtUtil工具类
 import com.collab.collab_editor_backend.util.JwtUtil;
 // 4. 导入统一响应类
@@ -26,14 +27,20 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import com.collab.collab_editor_backend.service.UserActivityService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import java.util.HashMap;
 import java.util.Map;
 import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.websocket.DocumentStreamBroadcaster;
+import com.collab.collab_editor_backend.websocket.LiveDocument;
+import com.collab.collab_editor_backend.websocket.LiveDocumentRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncContext;
 
 @RestController
 @RequestMapping("/api/doc")
@@ -51,22 +58,43 @@ public class DocumentController {
     @Autowired
     private UserActivityService userActivityService;
 
+    // 只读文档流广播器
+    @Autowired
+    private DocumentStreamBroadcaster streamBroadcaster;
+
+    // 在线文档注册表（正在编辑的文档的实时内容）
+    @Autowired
+    private LiveDocumentRegistry liveDocumentRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 导出时的响应缓冲区大小，超出后分块发送
+    @Value("${collab.doc.export.buffer-bytes:65536}")
+    private int exportBufferBytes;
+
     /**
-     * 文档列表接口
+     * 文档列表接口（游标分页，下一页游标通过X-Next-Cursor响应头返回）
      */
     @GetMapping("/list")
-    public Result<?> getDocList(@RequestHeader("Authorization") String token) {
+    public Result<?> getDocList(@RequestHeader("Authorization") String token,
+                                @RequestParam(required = false) String cursor,
+                                @RequestParam(required = false) Integer limit,
+                                HttpServletResponse response) {
         Long userId = jwtUtil.getUserIdFromToken(token);
-        return documentService.getList(userId);
+        return pageResult(documentService.getList(userId, cursor, limit), response);
     }
 
     /**
      * 按分类获取文档列表接口
      */
     @GetMapping("/list/category/{category}")
-    public Result<?> getDocListByCategory(@RequestHeader("Authorization") String token, @PathVariable String category) {
+    public Result<?> getDocListByCategory(@RequestHeader("Authorization") String token, @PathVariable String category,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer limit,
+                                          HttpServletResponse response) {
         Long userId = jwtUtil.getUserIdFromToken(token);
-        return documentService.getListByCategory(userId, category);
+        return pageResult(documentService.getListByCategory(userId, category, cursor, limit), response);
     }
 
     /**
@@ -78,6 +106,15 @@ public class DocumentController {
         return documentService.getCategories(userId);
     }
 
+    /**
+     * 获取所有标签及文档数接口
+     */
+    @GetMapping("/tags")
+    public Result<?> getTags(@RequestHeader("Authorization") String token) {
+        Long userId = jwtUtil.getUserIdFromToken(token);
+        return documentService.getTags(userId);
+    }
+
     /**
      * 删除文档接口
      */
@@ -116,12 +153,136 @@ public class DocumentController {
 
     /**
      * 获取文档内容接口
+     * 支持If-None-Match条件请求：内容未变化时返回304，不读取内容
      */
     @GetMapping("/content/{docId}")
-    public Result<String> getDocContent(@PathVariable Long docId, HttpServletRequest request) {
+    public Result<String> getDocContent(@PathVariable Long docId, HttpServletRequest request, HttpServletResponse response) {
         String authorization = request.getHeader("Authorization");
         Long userId = jwtUtil.getUserIdFromToken(authorization);
-        return documentService.getContent(docId, userId);
+        if (notModified(docId, userId, "", request, response)) {
+            return null;
+        }
+        Result<Map<String, Object>> result = documentService.getContentWithVersion(docId, userId);
+        if (result.getCode() != 200) {
+            return Result.error(result.getCode(), result.getMessage());
+        }
+        // 版本信息放在响应头中，响应体保持不变
+        response.setHeader("X-Document-Version", String.valueOf(result.getData().get("version")));
+        response.setHeader("X-Document-Live", String.valueOf(result.getData().get("live")));
+        setEtag(response, (String) result.getData().get("etag"), "");
+        return Result.success((String) result.getData().get("content"));
+    }
+
+    /**
+     * 条件请求：If-None-Match与文档当前的ETag一致时返回304
+     * @param prefix 不同表示形式（内容、Word导出）的ETag前缀
+     * @return 是否已返回304
+     */
+    private boolean notModified(Long docId, Long userId, String prefix, HttpServletRequest request, HttpServletResponse response) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        Result<String> tagResult = documentService.getContentTag(docId, userId);
+        if (tagResult.getCode() != 200 || tagResult.getData() == null) {
+            return false;
+        }
+        String etag = withPrefix(tagResult.getData(), prefix);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match使用弱比较
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                setEtag(response, tagResult.getData(), prefix);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setEtag(HttpServletResponse response, String etag, String prefix) {
+        if (etag == null) {
+            return;
+        }
+        response.setHeader("ETag", withPrefix(etag, prefix));
+        // 允许浏览器缓存，但每次使用前都要向服务器确认
+        response.setHeader("Cache-Control", "private, no-cache");
+    }
+
+    private static String withPrefix(String etag, String prefix) {
+        return prefix.isEmpty() ? etag : "\"" + prefix + etag.substring(1);
+    }
+
+    /**
+     * 文档统计接口：字数、字符数和标题大纲
+     */
+    @GetMapping("/{docId}/stats")
+    public Result<Map<String, Object>> getDocStats(@PathVariable Long docId, HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        Long userId = jwtUtil.getUserIdFromToken(authorization);
+        return documentService.getStats(docId, userId);
+    }
+
+    /**
+     * 只读文档流接口（Server-Sent Events）
+     * 先推送文档快照，之后按较低频率推送批量操作；EventSource无法设置请求头，支持通过token参数认证
+     */
+    @GetMapping("/{docId}/stream")
+    public void streamDocument(@PathVariable Long docId,
+                               @RequestParam(required = false) String token,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        String authorization = request.getHeader("Authorization");
+        if (authorization == null || authorization.trim().isEmpty()) {
+            authorization = token;
+        }
+        Long userId;
+        try {
+            userId = jwtUtil.getUserIdFromToken(authorization);
+        } catch (RuntimeException e) {
+            writeError(response, HttpServletResponse.SC_UNAUTHORIZED, "Token无效或已过期");
+            return;
+        }
+
+        // 复用内容接口的存在性与查看权限校验，冷文档的快照也来自这里
+        Result<String> contentResult = documentService.getContent(docId, userId);
+        if (contentResult.getCode() != 200) {
+            writeError(response, contentResult.getCode() == 403 ? HttpServletResponse.SC_FORBIDDEN : HttpServletResponse.SC_NOT_FOUND, contentResult.getMessage());
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+        AsyncContext asyncContext = request.startAsync();
+        streamBroadcaster.subscribe(docId, asyncContext, () -> {
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("type", "document_content");
+            snapshot.put("docId", docId);
+            LiveDocument.Snapshot live = liveDocumentRegistry.snapshot(docId);
+            if (live != null) {
+                snapshot.put("content", live.content());
+                snapshot.put("version", live.version());
+            } else {
+                snapshot.put("content", contentResult.getData() != null ? contentResult.getData() : "");
+                snapshot.put("version", 0);
+            }
+            try {
+                return objectMapper.writeValueAsString(snapshot);
+            } catch (Exception e) {
+                throw new RuntimeException("文档快照序列化失败", e);
+            }
+        });
+    }
+
+    private void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().write(objectMapper.writeValueAsString(Result.error(status, message)));
     }
 
     /**
@@ -178,63 +339,59 @@ public class DocumentController {
      * 导出Word文档接口
      */
     @GetMapping("/export/word/{docId}")
-    public void exportWord(@PathVariable Long docId, HttpServletRequest request, HttpServletResponse response) {
+    public void exportWord(@PathVariable Long docId, HttpServletRequest request, HttpServletResponse response) throws IOException {
         String token = request.getHeader("Authorization");
         Long userId = jwtUtil.getUserIdFromToken(token);
-        Result<?> result = documentService.exportWord(docId, userId);
-        if (result.getCode() == 200) {
-            try {
-                String fileName = result.getMessage();
-                InputStream inputStream = (ByteArrayInputStream) result.getData();
-                
-                // 设置响应头
-                response.setContentType("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
-                response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
-                
-                // 写入响应
-                byte[] buffer = new byte[1024];
-                int len;
-                while ((len = inputStream.read(buffer)) > 0) {
-                    response.getOutputStream().write(buffer, 0, len);
-                }
-                
-                inputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        if (notModified(docId, userId, "docx-", request, response)) {
+            return;
         }
+        // 在导出前取ETag：导出期间内容变化时ETag偏旧，下次请求会重新导出，不会返回过期内容
+        Result<String> tagResult = documentService.getContentTag(docId, userId);
+        Result<?> result = documentService.exportWord(docId, userId, fileName -> {
+            if (tagResult.getCode() == 200) {
+                setEtag(response, tagResult.getData(), "docx-");
+            }
+            return openAttachment(response, fileName, "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+        });
+        finishExport(result, response);
     }
 
     /**
      * 导出PDF文档接口
      */
     @PostMapping("/export/pdf/{docId}")
-    public void exportPdf(@PathVariable Long docId, @RequestBody Map<String, Object> params, HttpServletRequest request, HttpServletResponse response) {
+    public void exportPdf(@PathVariable Long docId, @RequestBody Map<String, Object> params, HttpServletRequest request, HttpServletResponse response) throws IOException {
         String content = (String) params.get("content");
         String token = request.getHeader("Authorization");
         Long userId = jwtUtil.getUserIdFromToken(token);
-        Result<?> result = documentService.exportPdf(docId, content, userId);
-        if (result.getCode() == 200) {
-            try {
-                String fileName = result.getMessage();
-                InputStream inputStream = (ByteArrayInputStream) result.getData();
-                
-                // 设置响应头
-                response.setContentType("application/pdf");
-                response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
-                
-                // 写入响应
-                byte[] buffer = new byte[1024];
-                int len;
-                while ((len = inputStream.read(buffer)) > 0) {
-                    response.getOutputStream().write(buffer, 0, len);
-                }
-                
-                inputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        Result<?> result = documentService.exportPdf(docId, content, userId,
+                fileName -> openAttachment(response, fileName, "application/pdf"));
+        finishExport(result, response);
+    }
+
+    /**
+     * 设置下载响应头并返回响应输出流
+     * 不设置Content-Length：内容超出容器缓冲区（export-buffer-bytes）后按分块传输边生成边发送，
+     * 每次导出占用的缓冲区大小固定，与文档大小无关
+     */
+    private OutputStream openAttachment(HttpServletResponse response, String fileName, String contentType) throws IOException {
+        response.setBufferSize(exportBufferBytes);
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
+        return response.getOutputStream();
+    }
+
+    /**
+     * 导出失败时，响应尚未提交则清掉已设置的下载头改为返回错误；
+     * 已经开始发送时无法再修改状态码，客户端收到的文件缺少结尾，会被识别为损坏
+     */
+    private void finishExport(Result<?> result, HttpServletResponse response) throws IOException {
+        if (result.getCode() == 200 || response.isCommitted()) {
+            return;
         }
+        response.reset();
+        int status = result.getCode() == 403 || result.getCode() == 404 ? result.getCode() : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        writeError(response, status, result.getMessage());
     }
 
     /**
@@ -250,8 +407,25 @@ public class DocumentController {
                                   @RequestParam(required = false, defaultValue = "updateTime") String sortField,
                                   @RequestParam(required = false, defaultValue = "desc") String sortOrder,
                                   @RequestParam(required = false) String category,
-                                  @RequestParam(required = false, defaultValue = "all") String scope) {
+                                  @RequestParam(required = false, defaultValue = "all") String scope,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(required = false) Integer limit,
+                                  HttpServletResponse response) {
         Long userId = jwtUtil.getUserIdFromToken(authorization);
-        return documentService.search(userId, keyword, tags, author, startTime, endTime, sortField, sortOrder, category, scope);
+        return pageResult(documentService.search(userId, keyword, tags, author, startTime, endTime, sortField, sortOrder, category, scope, cursor, limit), response);
+    }
+
+    /**
+     * 分页结果：data仍为文档数组，还有下一页时通过X-Next-Cursor响应头返回游标
+     */
+    private Result<?> pageResult(Result<DocumentPage> result, HttpServletResponse response) {
+        if (result.getCode() != 200 || result.getData() == null) {
+            return result;
+        }
+        DocumentPage page = result.getData();
+        if (page.getNextCursor() != null) {
+            response.setHeader("X-Next-Cursor", page.getNextCursor());
+        }
+        return Result.success(page.getItems());
     }
 }
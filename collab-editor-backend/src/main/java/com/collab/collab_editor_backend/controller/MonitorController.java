@@ -1,6 +1,15 @@
 package com.collab.collab_editor_backend.controller;
 
+import com.collab.collab_editor_backend.service.DocumentPurgeService;
+import com.collab.collab_editor_backend.util.CompressedTextTypeHandler;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentLoader;
+import com.collab.collab_editor_backend.util.DocumentMetaCache;
+import com.collab.collab_editor_backend.util.OffHeapText;
+import com.collab.collab_editor_backend.util.PdfExporter;
 import com.collab.collab_editor_backend.util.Result;
+import com.collab.collab_editor_backend.websocket.AdmissionController;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -33,6 +42,24 @@ public class MonitorController {
     @Value("${spring.profiles.active}")
     private String activeProfile;
 
+    @Autowired
+    private AdmissionController admissionController;
+
+    @Autowired
+    private DocumentLoader documentLoader;
+
+    @Autowired
+    private DocumentContentStore contentStore;
+
+    @Autowired
+    private DocumentMetaCache documentMetaCache;
+
+    @Autowired
+    private DocumentPurgeService documentPurgeService;
+
+    @Autowired
+    private PdfExporter pdfExporter;
+
     /**
      * 获取系统信息
      */
@@ -71,10 +98,69 @@ public class MonitorController {
         memoryInfo.put("freeMemory", runtime.freeMemory() / 1024 / 1024);
         memoryInfo.put("usedMemory", (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024);
         memoryInfo.put("usedMemoryPercentage", Math.round(((double)(runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory()) * 100));
+        // 在线文档内容占用的堆外内存（含池中空闲块）
+        memoryInfo.put("offHeapDocumentMemory", OffHeapText.reservedBytes() / 1024 / 1024);
+        memoryInfo.put("offHeapPooledChunks", OffHeapText.pooledChunks());
 
         return Result.success(memoryInfo);
     }
 
+    /**
+     * 获取文档协作连接的准入负载指标
+     */
+    @GetMapping("/admission")
+    public Result<Map<String, Object>> getAdmissionInfo() {
+        return Result.success(admissionController.status());
+    }
+
+    /**
+     * 获取文档读取的合并情况：实际查询次数与共享结果的次数
+     */
+    @GetMapping("/document-loads")
+    public Result<Map<String, Object>> getDocumentLoadInfo() {
+        return Result.success(documentLoader.status());
+    }
+
+    /**
+     * 获取文档内容分层存储的缓存情况
+     */
+    @GetMapping("/content-store")
+    public Result<Map<String, Object>> getContentStoreInfo() {
+        return Result.success(contentStore.status());
+    }
+
+    /**
+     * 获取文档元数据缓存的命中率与数据库读取次数
+     */
+    @GetMapping("/document-meta")
+    public Result<Map<String, Object>> getDocumentMetaInfo() {
+        return Result.success(documentMetaCache.status());
+    }
+
+    /**
+     * 获取已删除文档的后台清理进度
+     */
+    @GetMapping("/document-purge")
+    public Result<Map<String, Object>> getDocumentPurgeInfo() {
+        return Result.success(documentPurgeService.status());
+    }
+
+    /**
+     * 获取版本内容压缩存储的压缩率与解压耗时
+     */
+    @GetMapping("/content-compression")
+    public Result<Map<String, Object>> getContentCompressionInfo() {
+        return Result.success(CompressedTextTypeHandler.status());
+    }
+
+    /**
+     * 获取PDF导出使用的字体、导出页数与平均耗时
+     */
+    @GetMapping("/pdf-export")
+    public Result<Map<String, Object>> getPdfExportInfo() {
+        return Result.success(pdfExporter.status());
+    }
+
     /**
      * 获取CPU使用率信息
      */
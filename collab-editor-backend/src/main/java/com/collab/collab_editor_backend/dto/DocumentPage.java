@@ -0,0 +1,17 @@
+package com.collab.collab_editor_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 文档摘要分页结果（游标分页）
+ */
+@Data
+@AllArgsConstructor
+public class DocumentPage {
+
+    private List<DocumentSummary> items; // 本页文档
+    private String nextCursor; // 下一页游标，没有更多时为null
+}
@@ -0,0 +1,23 @@
+package com.collab.collab_editor_backend.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 文档摘要（列表、分类、搜索接口返回）
+ * 只包含元数据、内容大小和简短预览，不含正文；正文通过 /api/doc/content/{docId} 获取
+ */
+@Data
+public class DocumentSummary {
+
+    private Long id;
+    private String title; // 文档标题
+    private Long ownerId; // 所有者ID
+    private String category; // 文档分类
+    private String tags; // 文档标签，用逗号分隔
+    private Integer size; // 内容长度（字符数）
+    private String preview; // 内容预览（去掉标签后的开头部分）
+    private LocalDateTime createTime;
+    private LocalDateTime updateTime;
+}
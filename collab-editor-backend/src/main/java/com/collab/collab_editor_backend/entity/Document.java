@@ -3,6 +3,7 @@ package com.collab.collab_editor_backend.entity;
 import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableLogic;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 import java.time.LocalDateTime;
@@ -19,8 +20,17 @@ public class Document {
     private String content; // 文档内容
     @TableField("minio_key") // 明确指定数据库字段名
     private String minioKey; // MinIO 存储路径（对应数据库的minio_key字段）
+    @TableField("content_size")
+    private Integer contentSize; // 内容长度（字符数），列表接口不读取正文即可显示
+    private String preview; // 内容预览（去掉标签后的开头部分）
+    @TableField("content_hash")
+    private String contentHash; // 内容的SHA-256（十六进制），保存时维护，用作ETag
+    @TableField(value = "search_text", select = false)
+    private String searchText; // 外置内容的纯文本副本（去掉标签），供内容搜索使用；内联内容为空串，查询实体时不读取
     private String category; // 文档分类
     private String tags; // 文档标签，用逗号分隔
     private LocalDateTime createTime;
     private LocalDateTime updateTime;
+    @TableLogic
+    private Integer deleted; // 删除标记：1表示已删除，关联数据由后台任务清理后再物理删除
 }
\ No newline at end of file
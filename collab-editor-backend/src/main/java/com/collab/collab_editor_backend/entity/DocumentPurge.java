@@ -0,0 +1,24 @@
+package com.collab.collab_editor_backend.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 文档清理任务：文档被标记删除后，由后台任务分批删除其版本、评论、任务和权限，最后删除文档行
+ */
+@Data
+@TableName(value = "t_document_purge")
+public class DocumentPurge {
+    @TableId(type = IdType.INPUT)
+    private Long docId; // 被删除的文档ID
+    private String status; // pending-待清理，failed-重试次数用尽
+    private Long purgedRows; // 已删除的关联数据行数
+    private Integer attempts; // 失败次数
+    private String lastError; // 最近一次失败原因
+    private LocalDateTime nextAttemptTime; // 下次可执行时间（失败后按指数退避推迟）
+    private LocalDateTime createTime; // 删除时间
+    private LocalDateTime updateTime;
+}
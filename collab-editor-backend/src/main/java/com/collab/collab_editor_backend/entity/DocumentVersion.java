@@ -1,8 +1,10 @@
 package com.collab.collab_editor_backend.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.collab.collab_editor_backend.util.CompressedTextTypeHandler;
 import lombok.Data;
 import java.time.LocalDateTime;
 
@@ -11,12 +13,13 @@ import java.time.LocalDateTime;
  * 用于存储文档的历史版本信息
  */
 @Data
-@TableName(value = "t_document_version") // 对应数据库表名
+@TableName(value = "t_document_version", autoResultMap = true) // 对应数据库表名
 public class DocumentVersion {
     @TableId(type = IdType.AUTO)
     private Long id;
     private Long docId; // 所属文档ID
-    private String content; // 文档版本内容
+    @TableField(typeHandler = CompressedTextTypeHandler.class)
+    private String content; // 文档版本内容（较长时压缩存储，读取时透明解压）
     private String versionName; // 版本名称
     private String description; // 版本描述
     private Long createdBy; // 创建者ID
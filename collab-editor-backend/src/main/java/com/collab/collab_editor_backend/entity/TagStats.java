@@ -0,0 +1,19 @@
+package com.collab.collab_editor_backend.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 标签统计（随文档创建、删除增量维护，侧边栏不再扫描文档表）
+ */
+@Data
+@TableName(value = "t_tag_stats")
+public class TagStats {
+    @TableId(type = IdType.INPUT)
+    private String name; // 标签名称
+    private Integer docCount; // 文档数
+    private LocalDateTime lastUpdated; // 最近一次有文档加入或移出的时间
+}
@@ -0,0 +1,267 @@
+package com.collab.collab_editor_backend.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 变更集
+ * 把一串顺序执行的插入/删除操作表示为一次从头到尾扫描文档的变更：保留n个字符、插入文本、删除文本，
+ * 末尾隐含保留剩余内容。多个操作先合并（compose）为一个变更集，再整体转换（transform），
+ * 长分支的转换只需线性扫描两边的分量，不再逐对转换操作
+ */
+public final class Changeset {
+
+    private static final byte RETAIN = 0;
+    private static final byte INSERT = 1;
+    private static final byte DELETE = 2;
+
+    /**
+     * 分量：RETAIN只用length，INSERT/DELETE的text为插入/删除的文本
+     */
+    private record Component(byte type, int length, String text) {
+    }
+
+    private final List<Component> components;
+
+    private Changeset(List<Component> components) {
+        this.components = components;
+    }
+
+    /**
+     * 单个操作对应的变更集
+     */
+    public static Changeset of(OTAlgorithm.Operation operation) {
+        String content = operation.getContent() != null ? operation.getContent() : "";
+        Builder builder = new Builder();
+        builder.retain(Math.max(0, operation.getPosition()));
+        if (operation.getType() == OTAlgorithm.OperationType.INSERT) {
+            builder.insert(content);
+        } else {
+            builder.delete(content);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 把顺序执行的操作合并为一个变更集
+     * 两两合并、逐层向上，每层的总分量数不超过操作数，整体为O(n log n)
+     */
+    public static Changeset composeAll(List<OTAlgorithm.Operation> operations) {
+        if (operations.isEmpty()) {
+            return new Changeset(new ArrayList<>());
+        }
+        List<Changeset> level = new ArrayList<>(operations.size());
+        for (OTAlgorithm.Operation operation : operations) {
+            level.add(of(operation));
+        }
+        while (level.size() > 1) {
+            List<Changeset> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i + 1 < level.size(); i += 2) {
+                next.add(level.get(i).compose(level.get(i + 1)));
+            }
+            if (level.size() % 2 == 1) {
+                next.add(level.get(level.size() - 1));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * 合并：先执行this，再执行other
+     */
+    public Changeset compose(Changeset other) {
+        Cursor a = new Cursor(components);
+        Cursor b = new Cursor(other.components);
+        Builder builder = new Builder();
+        while (true) {
+            // this删除的字符对other不可见，直接输出
+            if (a.type() == DELETE) {
+                builder.delete(a.take(a.remaining()).text);
+                continue;
+            }
+            // other插入的字符与this无关，直接输出
+            if (b.type() == INSERT) {
+                builder.insert(b.take(b.remaining()).text);
+                continue;
+            }
+            if (a.done() && b.done()) {
+                break;
+            }
+            int n = Math.min(a.remaining(), b.remaining());
+            Component left = a.take(n);
+            Component right = b.take(n);
+            if (left.type == RETAIN && right.type == RETAIN) {
+                builder.retain(n);
+            } else if (left.type == INSERT && right.type == RETAIN) {
+                builder.insert(left.text);
+            } else if (left.type == RETAIN && right.type == DELETE) {
+                builder.delete(right.text);
+            }
+            // this插入、other又删除的字符相互抵消
+        }
+        return builder.build();
+    }
+
+    /**
+     * 转换：把与applied并发（基于同一版本）的this转换为在applied之后执行
+     * 规则与OTAlgorithm.transform一致：同一位置的插入，已应用的一方在前；
+     * 落在被删除区间内的插入移到删除起点；双方都删除的字符只删除一次
+     */
+    public Changeset transform(Changeset applied) {
+        Cursor a = new Cursor(components);
+        Cursor b = new Cursor(applied.components);
+        Builder builder = new Builder();
+        while (true) {
+            if (b.type() == INSERT) {
+                builder.retain(b.take(b.remaining()).length);
+                continue;
+            }
+            if (a.type() == INSERT) {
+                builder.insert(a.take(a.remaining()).text);
+                continue;
+            }
+            if (a.done() && b.done()) {
+                break;
+            }
+            int n = Math.min(a.remaining(), b.remaining());
+            Component mine = a.take(n);
+            Component theirs = b.take(n);
+            if (mine.type == RETAIN && theirs.type == RETAIN) {
+                builder.retain(n);
+            } else if (mine.type == DELETE && theirs.type == RETAIN) {
+                builder.delete(mine.text);
+            }
+            // 已被applied删除的字符：this保留或删除都不再需要输出
+        }
+        return builder.build();
+    }
+
+    /**
+     * 拆回顺序执行的操作列表，版本号从startVersion起依次递增
+     */
+    public List<OTAlgorithm.Operation> toOperations(int startVersion) {
+        List<OTAlgorithm.Operation> operations = new ArrayList<>();
+        int position = 0;
+        int version = startVersion;
+        for (Component component : components) {
+            switch (component.type) {
+                case RETAIN -> position += component.length;
+                case INSERT -> {
+                    operations.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, position, component.text, version++));
+                    position += component.length;
+                }
+                default -> operations.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, position, component.text, version++));
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * 分量数（不含隐含的末尾保留）
+     */
+    public int size() {
+        return components.size();
+    }
+
+    /**
+     * 顺序读取分量，允许只取一个分量的前一部分；读完后视为无限长的保留
+     */
+    private static final class Cursor {
+        private final List<Component> components;
+        private int index;
+        private int offset;
+
+        private Cursor(List<Component> components) {
+            this.components = components;
+        }
+
+        boolean done() {
+            return index >= components.size();
+        }
+
+        byte type() {
+            return done() ? RETAIN : components.get(index).type;
+        }
+
+        int remaining() {
+            return done() ? Integer.MAX_VALUE : components.get(index).length - offset;
+        }
+
+        Component take(int n) {
+            if (done()) {
+                return new Component(RETAIN, n, null);
+            }
+            Component current = components.get(index);
+            Component part;
+            if (offset == 0 && n == current.length) {
+                part = current;
+            } else {
+                part = new Component(current.type, n,
+                        current.text != null ? current.text.substring(offset, offset + n) : null);
+            }
+            offset += n;
+            if (offset == current.length) {
+                index++;
+                offset = 0;
+            }
+            return part;
+        }
+    }
+
+    /**
+     * 构造变更集：相邻的同类分量合并为一个，末尾的保留省略
+     * 同一位置上插入和删除的先后顺序保持不变，它决定了与并发插入的相对位置
+     */
+    private static final class Builder {
+        private final List<Component> components = new ArrayList<>();
+        // 尚未输出的连续同类分量
+        private byte pendingType = RETAIN;
+        private int pendingLength;
+        private final StringBuilder pendingText = new StringBuilder();
+
+        void retain(int n) {
+            if (n > 0) {
+                append(RETAIN, n, null);
+            }
+        }
+
+        void insert(String text) {
+            if (text != null && !text.isEmpty()) {
+                append(INSERT, text.length(), text);
+            }
+        }
+
+        void delete(String text) {
+            if (text != null && !text.isEmpty()) {
+                append(DELETE, text.length(), text);
+            }
+        }
+
+        Changeset build() {
+            if (pendingType != RETAIN) {
+                flush();
+            }
+            return new Changeset(components);
+        }
+
+        private void append(byte type, int length, String text) {
+            if (type != pendingType) {
+                flush();
+                pendingType = type;
+            }
+            pendingLength += length;
+            if (text != null) {
+                pendingText.append(text);
+            }
+        }
+
+        private void flush() {
+            if (pendingLength > 0) {
+                components.add(new Component(pendingType, pendingLength, pendingType == RETAIN ? null : pendingText.toString()));
+            }
+            pendingLength = 0;
+            pendingText.setLength(0);
+        }
+    }
+}
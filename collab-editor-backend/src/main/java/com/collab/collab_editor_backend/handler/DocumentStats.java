@@ -0,0 +1,463 @@
+package com.collab.collab_editor_backend.handler;
+
+import com.collab.collab_editor_backend.util.OffHeapText;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文档统计与标题大纲
+ * 字数、字符数按区间累加：区间以'>'或换行结尾，区间之间不会有跨越的单词或标签，
+ * 每次操作只重新统计被修改的区间（减去旧值、加上新值），不扫描全文；
+ * 标题（&lt;h1&gt;~&lt;h6&gt;、Markdown的#标题）按起点排序保存，只重新解析修改点附近的标题；
+ * 修改点前后MAX_REGION_CHARS内找不到边界时（如没有换行的长段纯文本）不再逐次扫描，标记为过期，
+ * 到下次读取统计时整体重算一次
+ * 非线程安全，调用方需持有文档锁
+ */
+public class DocumentStats {
+
+    /**
+     * 标题
+     * @param position 标题起点
+     * @param level 级别（1~6）
+     * @param title 标题文本（已去掉标签）
+     */
+    public record Heading(int position, int level, String title) {
+    }
+
+    // 向前/向后查找区间边界时每次读取的字符数
+    private static final int WINDOW_CHARS = 512;
+    // 增量统计时向前/向后查找区间边界的最大距离，超出则改为读取时全量重算
+    private static final int MAX_REGION_CHARS = WINDOW_CHARS * 16;
+    // 解析单个标题时最多读取的字符数
+    private static final int MAX_HEADING_CHARS = 4096;
+    // 标题文本的最大长度
+    private static final int MAX_TITLE_CHARS = 100;
+
+    /**
+     * 可按范围读取的文本
+     */
+    private interface Source {
+        int length();
+
+        String substring(int start, int end);
+    }
+
+    /**
+     * 已解析的标题，start为起点
+     */
+    private static final class Entry {
+        private int start;
+        private final int level;
+        private final String title;
+
+        private Entry(int start, int level, String title) {
+            this.start = start;
+            this.level = level;
+            this.title = title;
+        }
+    }
+
+    private final OffHeapText text;
+    private final Source source;
+    // 标签外的字符数（含空白）
+    private long characters;
+    // 标签外的非空白字符数
+    private long charactersNoSpaces;
+    // 单词数：每个中日韩字符计一个，连续的字母/数字计一个
+    private long words;
+    private final List<Entry> headings = new ArrayList<>();
+    // 统计已过期，读取前需要全量重算
+    private boolean stale;
+
+    /**
+     * 跟踪堆外文本，修改需通过apply进行
+     */
+    public DocumentStats(OffHeapText text) {
+        this.text = text;
+        this.source = new Source() {
+            @Override
+            public int length() {
+                return text.length();
+            }
+
+            @Override
+            public String substring(int start, int end) {
+                return text.substring(start, end);
+            }
+        };
+        rebuild();
+    }
+
+    private DocumentStats(String content) {
+        this.text = null;
+        this.source = new Source() {
+            @Override
+            public int length() {
+                return content.length();
+            }
+
+            @Override
+            public String substring(int start, int end) {
+                return content.substring(Math.max(0, start), Math.min(end, content.length()));
+            }
+        };
+        rebuild();
+    }
+
+    /**
+     * 对一段静态内容（如数据库中的文档）做一次全量统计
+     */
+    public static Map<String, Object> summarize(String content) {
+        return new DocumentStats(content != null ? content : "").summary(0);
+    }
+
+    /**
+     * 全量重新统计（内容被整体替换后调用）
+     */
+    public void rebuild() {
+        stale = false;
+        characters = 0;
+        charactersNoSpaces = 0;
+        words = 0;
+        headings.clear();
+        int length = source.length();
+        int start = 0;
+        while (start < length) {
+            // 分块读取，块边界推到下一个区间边界，保证与增量统计的结果一致
+            int end = Math.min(length, start + WINDOW_CHARS * 16);
+            if (end < length) {
+                end = regionEnd(end, length);
+            }
+            count(source.substring(start, end), 1);
+            headings.addAll(scanHeadings(start, end));
+            start = end;
+        }
+    }
+
+    /**
+     * 应用操作并增量更新统计，越界处理与OTAlgorithm.applyOperation一致
+     * 只统计被修改的区间和与之重叠的标题，与全文长度无关；区间边界太远时只应用内容，统计留到读取时重算
+     */
+    public void apply(OTAlgorithm.Operation operation) {
+        if (stale) {
+            OTAlgorithm.applyOperation(text, operation);
+            return;
+        }
+        int length = source.length();
+        boolean insert = operation.getType() == OTAlgorithm.OperationType.INSERT;
+        String content = operation.getContent() != null ? operation.getContent() : "";
+        int position;
+        int deleteLength;
+        int insertLength;
+        if (insert) {
+            position = Math.max(0, Math.min(operation.getPosition(), length));
+            deleteLength = 0;
+            insertLength = content.length();
+        } else {
+            position = Math.max(0, operation.getPosition());
+            deleteLength = Math.max(0, Math.min(position + content.length(), length) - position);
+            insertLength = 0;
+        }
+        if (deleteLength == 0 && insertLength == 0) {
+            return;
+        }
+
+        // 1. 被修改的区间：从修改点之前最近的边界到修改范围之后最近的边界
+        int regionStart = regionStart(position);
+        int oldRegionEnd = regionStart < 0 ? -1 : regionEnd(position + deleteLength, MAX_REGION_CHARS);
+        if (oldRegionEnd < 0) {
+            stale = true;
+            OTAlgorithm.applyOperation(text, operation);
+            return;
+        }
+        count(source.substring(regionStart, oldRegionEnd), -1);
+
+        // 2. 移除可能受影响的标题，稍后重新解析：标题只取决于起点之后MAX_HEADING_CHARS内的内容，
+        // 起点在[修改区间起点 - MAX_HEADING_CHARS, 旧区间终点)之外的标题不受影响（包括可能因这次修改而闭合的&lt;hN&gt;）
+        int rescanStart = Math.max(0, regionStart - MAX_HEADING_CHARS);
+        int first = lowerBound(rescanStart);
+        headings.subList(first, lowerBound(oldRegionEnd)).clear();
+
+        // 3. 应用到内容
+        OTAlgorithm.applyOperation(text, operation);
+
+        // 4. 修改区间之后的标题整体平移
+        int delta = insertLength - deleteLength;
+        for (int i = first; i < headings.size(); i++) {
+            Entry entry = headings.get(i);
+            entry.start += delta;
+        }
+
+        // 5. 重新统计新区间并解析其中的标题
+        int newRegionEnd = oldRegionEnd + delta;
+        count(source.substring(regionStart, newRegionEnd), 1);
+        headings.addAll(first, scanHeadings(rescanStart, newRegionEnd));
+    }
+
+    /**
+     * 统计结果
+     * @param offset 标题位置的偏移量（分段文档中为分段起点）
+     */
+    public Map<String, Object> summary(int offset) {
+        refresh();
+        Map<String, Object> result = new HashMap<>();
+        result.put("length", source.length());
+        result.put("characters", characters);
+        result.put("charactersNoSpaces", charactersNoSpaces);
+        result.put("words", words);
+        result.put("headings", outline(offset));
+        return result;
+    }
+
+    /**
+     * 把另一个统计累加到summary的结果上（分段文档汇总各分段时使用）
+     * @param offset 该统计的标题位置偏移量
+     */
+    public void addTo(Map<String, Object> totals, int offset) {
+        refresh();
+        totals.merge("length", source.length(), (a, b) -> (Integer) a + (Integer) b);
+        totals.merge("characters", characters, (a, b) -> (Long) a + (Long) b);
+        totals.merge("charactersNoSpaces", charactersNoSpaces, (a, b) -> (Long) a + (Long) b);
+        totals.merge("words", words, (a, b) -> (Long) a + (Long) b);
+        List<Heading> outline = (List<Heading>) totals.computeIfAbsent("headings", k -> new ArrayList<Heading>());
+        outline.addAll(outline(offset));
+    }
+
+    /**
+     * 标题大纲
+     * @param offset 标题位置的偏移量
+     */
+    public List<Heading> outline(int offset) {
+        refresh();
+        List<Heading> result = new ArrayList<>(headings.size());
+        for (Entry entry : headings) {
+            result.add(new Heading(entry.start + offset, entry.level, entry.title));
+        }
+        return result;
+    }
+
+    public long words() {
+        refresh();
+        return words;
+    }
+
+    public long characters() {
+        refresh();
+        return characters;
+    }
+
+    /**
+     * 统计过期时全量重算
+     */
+    private void refresh() {
+        if (stale) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 区间起点：position之前最近的'>'或换行之后，没有时为0；
+     * 向前MAX_REGION_CHARS内没有边界且未到开头时返回-1
+     */
+    private int regionStart(int position) {
+        int limit = Math.max(0, position - MAX_REGION_CHARS);
+        int end = position;
+        while (end > limit) {
+            int start = Math.max(limit, end - WINDOW_CHARS);
+            String window = source.substring(start, end);
+            for (int i = window.length() - 1; i >= 0; i--) {
+                if (isBoundary(window.charAt(i))) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return limit == 0 ? 0 : -1;
+    }
+
+    /**
+     * 区间终点：position及之后第一个'>'或换行之后，没有时为内容末尾；
+     * 向后maxChars内没有边界且未到末尾时返回-1
+     */
+    private int regionEnd(int position, int maxChars) {
+        int length = source.length();
+        int limit = (int) Math.min(length, (long) position + maxChars);
+        int start = position;
+        while (start < limit) {
+            int end = Math.min(limit, start + WINDOW_CHARS);
+            String window = source.substring(start, end);
+            for (int i = 0; i < window.length(); i++) {
+                if (isBoundary(window.charAt(i))) {
+                    return start + i + 1;
+                }
+            }
+            start = end;
+        }
+        return limit == length ? length : -1;
+    }
+
+    private static boolean isBoundary(char c) {
+        return c == '>' || c == '\n';
+    }
+
+    /**
+     * 统计一个区间并按sign累加（区间起点总在标签之外；换行同时结束标签，与分区间统计保持一致）
+     */
+    private void count(String region, int sign) {
+        boolean inTag = false;
+        boolean inWord = false;
+        long chars = 0;
+        long nonSpace = 0;
+        long wordCount = 0;
+        for (int i = 0; i < region.length(); i++) {
+            char c = region.charAt(i);
+            if (inTag) {
+                if (c == '>' || c == '\n') {
+                    inTag = false;
+                }
+                continue;
+            }
+            if (c == '<') {
+                inTag = true;
+                inWord = false;
+                continue;
+            }
+            chars++;
+            if (!Character.isWhitespace(c)) {
+                nonSpace++;
+            }
+            if (isCjk(c)) {
+                wordCount++;
+                inWord = false;
+            } else if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    wordCount++;
+                }
+                inWord = true;
+            } else {
+                inWord = false;
+            }
+        }
+        characters += sign * chars;
+        charactersNoSpaces += sign * nonSpace;
+        words += sign * wordCount;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 解析起点在[start, end)内的标题，按位置排序返回
+     */
+    private List<Entry> scanHeadings(int start, int end) {
+        List<Entry> result = new ArrayList<>();
+        if (start >= end) {
+            return result;
+        }
+        int windowStart = Math.max(0, start - 1);
+        String window = source.substring(windowStart, end + MAX_HEADING_CHARS);
+        for (int i = start - windowStart; i < end - windowStart; i++) {
+            char c = window.charAt(i);
+            Entry entry = null;
+            if (c == '<' && i + 3 < window.length() && window.charAt(i + 1) == 'h') {
+                entry = parseHtmlHeading(window, i, windowStart);
+            } else if (c == '#' && (windowStart + i == 0 || window.charAt(i - 1) == '\n')) {
+                entry = parseMarkdownHeading(window, i, windowStart);
+            }
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 解析&lt;hN&gt;标题，只读取起点之后MAX_HEADING_CHARS内的内容
+     */
+    private static Entry parseHtmlHeading(String window, int i, int windowStart) {
+        char digit = window.charAt(i + 2);
+        char after = window.charAt(i + 3);
+        if (digit < '1' || digit > '6' || (after != '>' && after != ' ')) {
+            return null;
+        }
+        int limit = Math.min(window.length(), i + MAX_HEADING_CHARS);
+        int titleStart = indexOf(window, ">", i, limit);
+        int close = titleStart < 0 ? -1 : indexOf(window, "</h" + digit, titleStart, limit);
+        if (close < 0) {
+            return null;
+        }
+        String title = stripTags(window, titleStart + 1, close);
+        return new Entry(windowStart + i, digit - '0', title);
+    }
+
+    /**
+     * 在[from, limit)内查找，未找到返回-1
+     */
+    private static int indexOf(String window, String target, int from, int limit) {
+        return window.indexOf(target, from, limit);
+    }
+
+    /**
+     * 解析Markdown标题，标题行超过MAX_HEADING_CHARS时截断
+     */
+    private static Entry parseMarkdownHeading(String window, int i, int windowStart) {
+        int limit = Math.min(window.length(), i + MAX_HEADING_CHARS);
+        int level = 0;
+        while (i + level < limit && window.charAt(i + level) == '#') {
+            level++;
+        }
+        if (level > 6 || i + level >= limit || window.charAt(i + level) != ' ') {
+            return null;
+        }
+        int lineEnd = window.indexOf('\n', i);
+        int end = lineEnd < 0 || lineEnd > limit ? limit : lineEnd;
+        String title = truncate(window.substring(i + level + 1, end).trim());
+        return new Entry(windowStart + i, level, title);
+    }
+
+    /**
+     * 去掉[from, to)内的标签，跳过开头的空白，取够MAX_TITLE_CHARS个字符即停止
+     */
+    private static String stripTags(String html, int from, int to) {
+        StringBuilder sb = new StringBuilder();
+        boolean inTag = false;
+        for (int i = from; i < to && sb.length() < MAX_TITLE_CHARS; i++) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                inTag = true;
+            } else if (c == '>') {
+                inTag = false;
+            } else if (!inTag && (sb.length() > 0 || !Character.isWhitespace(c))) {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static String truncate(String title) {
+        return title.length() > MAX_TITLE_CHARS ? title.substring(0, MAX_TITLE_CHARS) : title;
+    }
+
+    /**
+     * 第一个起点不小于position的标题下标
+     */
+    private int lowerBound(int position) {
+        int low = 0;
+        int high = headings.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (headings.get(mid).start < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
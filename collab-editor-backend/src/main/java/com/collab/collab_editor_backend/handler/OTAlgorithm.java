@@ -1,5 +1,7 @@
 package com.collab.collab_editor_backend.handler;
 
+import com.collab.collab_editor_backend.util.OffHeapText;
+
 import java.util.List;
 import java.util.ArrayList;
 
@@ -168,30 +170,47 @@ public class OTAlgorithm {
         return content;
     }
 
+    /**
+     * 将操作原地应用到堆外文本缓冲区，越界处理与applyOperation(String, Operation)一致
+     * @param content 文档内容缓冲区
+     * @param operation 要应用的操作
+     */
+    public static void applyOperation(OffHeapText content, Operation operation) {
+        if (operation.getType() == OperationType.INSERT) {
+            content.insert(operation.getPosition(), operation.getContent());
+        } else if (operation.getType() == OperationType.DELETE) {
+            content.delete(operation.getPosition(), operation.getContent().length());
+        }
+    }
+
     /**
      * 批量转换操作列表
+     * 每个操作都基于已应用操作的起始版本、彼此独立；已应用操作先写入列式历史，
+     * 每个操作沿历史转换时不再逐对创建中间对象。顺序执行的长分支请使用Changeset整体转换
      * @param operations 要转换的操作列表
      * @param appliedOperations 已经应用的操作列表
-     * @return 转换后的操作列表
+     * @return 转换后的操作列表（被完全抵消的删除操作会被移除）
      */
     public static List<Operation> transformOperations(List<Operation> operations, List<Operation> appliedOperations) {
-        List<Operation> transformed = new ArrayList<>(operations);
-        
+        if (appliedOperations.isEmpty()) {
+            return new ArrayList<>(operations);
+        }
+        OperationHistory history = new OperationHistory(appliedOperations.get(0).getVersion());
         for (Operation appliedOp : appliedOperations) {
-            for (int i = 0; i < transformed.size(); i++) {
-                Operation op = transformed.get(i);
-                Operation transformedOp = transform(op, appliedOp);
-                
-                // 如果转换后的操作是空删除操作，移除它
-                if (transformedOp.getType() == OperationType.DELETE && transformedOp.getContent().isEmpty()) {
-                    transformed.remove(i);
-                    i--;
-                } else {
-                    transformed.set(i, transformedOp);
-                }
+            history.add(appliedOp);
+        }
+        int toVersion = history.baseVersion() + history.size();
+
+        List<Operation> transformed = new ArrayList<>(operations.size());
+        for (Operation op : operations) {
+            Operation transformedOp = history.transform(op, op.getVersion(), toVersion);
+            // 如果转换后的操作是空删除操作，丢弃它
+            if (transformedOp.getType() == OperationType.DELETE
+                    && (transformedOp.getContent() == null || transformedOp.getContent().isEmpty())) {
+                continue;
             }
+            transformed.add(transformedOp);
         }
-        
         return transformed;
     }
 }
\ No newline at end of file
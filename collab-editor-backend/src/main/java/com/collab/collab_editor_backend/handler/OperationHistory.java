@@ -0,0 +1,171 @@
+package com.collab.collab_editor_backend.handler;
+
+import java.util.Arrays;
+
+/**
+ * 列式存储的操作历史
+ * 类型、位置、版本按下标存放在基本类型数组中，操作内容连续存放在共享字符区，
+ * 只记录偏移和长度；转换时直接遍历数组，不为历史操作创建对象
+ * 下标从baseVersion开始计，即第i条操作的版本为baseVersion + i
+ * 非线程安全，调用方需持有文档锁
+ */
+public class OperationHistory {
+
+    private static final byte TYPE_INSERT = 0;
+    private static final byte TYPE_DELETE = 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_ARENA_CHARS = 1024;
+
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int[] versions = new int[INITIAL_CAPACITY];
+    private int[] contentOffsets = new int[INITIAL_CAPACITY];
+    private int[] contentLengths = new int[INITIAL_CAPACITY];
+    // 所有操作内容共用的字符区
+    private char[] arena = new char[INITIAL_ARENA_CHARS];
+    private int arenaSize;
+    private int size;
+    // 第一条操作对应的文档版本
+    private int baseVersion;
+
+    public OperationHistory() {
+    }
+
+    public OperationHistory(int baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    /**
+     * 清空历史，之后的操作从baseVersion开始记录（文档内容被整体替换时使用）
+     */
+    public void reset(int baseVersion) {
+        this.baseVersion = baseVersion;
+        this.size = 0;
+        this.arenaSize = 0;
+    }
+
+    /**
+     * 仍保留历史的最早版本，更早的操作无法再转换
+     */
+    public int baseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * 追加一条已应用的操作
+     */
+    public void add(OTAlgorithm.Operation operation) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            contentOffsets = Arrays.copyOf(contentOffsets, capacity);
+            contentLengths = Arrays.copyOf(contentLengths, capacity);
+        }
+        String content = operation.getContent();
+        int length = content != null ? content.length() : 0;
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+        if (length > 0) {
+            content.getChars(0, length, arena, arenaSize);
+        }
+
+        types[size] = operation.getType() == OTAlgorithm.OperationType.INSERT ? TYPE_INSERT : TYPE_DELETE;
+        positions[size] = operation.getPosition();
+        versions[size] = operation.getVersion();
+        contentOffsets[size] = arenaSize;
+        contentLengths[size] = length;
+        arenaSize += length;
+        size++;
+    }
+
+    /**
+     * 历史操作数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 取出第index条操作（会创建对象，仅在需要完整操作时使用）
+     * @param index 下标（从0开始，不是版本号）
+     */
+    public OTAlgorithm.Operation get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        OTAlgorithm.OperationType type = types[index] == TYPE_INSERT ? OTAlgorithm.OperationType.INSERT : OTAlgorithm.OperationType.DELETE;
+        String content = new String(arena, contentOffsets[index], contentLengths[index]);
+        return new OTAlgorithm.Operation(type, positions[index], content, versions[index]);
+    }
+
+    /**
+     * 依次对版本[fromVersion, toVersion)的历史操作转换操作，规则与OTAlgorithm.transform一致
+     * 转换过程只更新局部变量，最后创建一个结果对象
+     * @param operation 要转换的操作
+     * @param fromVersion 起始版本（含），不能早于baseVersion
+     * @param toVersion 结束版本（不含）
+     * @return 转换后的操作
+     */
+    public OTAlgorithm.Operation transform(OTAlgorithm.Operation operation, int fromVersion, int toVersion) {
+        if (fromVersion >= toVersion) {
+            return operation;
+        }
+        if (fromVersion < baseVersion) {
+            throw new IllegalArgumentException("History before version " + baseVersion + " is no longer available");
+        }
+        int from = fromVersion - baseVersion;
+        int to = toVersion - baseVersion;
+        boolean insert = operation.getType() == OTAlgorithm.OperationType.INSERT;
+        String content = operation.getContent();
+        int position = operation.getPosition();
+        int version = operation.getVersion();
+        // 删除内容可能被截掉前缀，只记录剩余部分在原内容中的起点和长度
+        int contentStart = 0;
+        int contentLength = content != null ? content.length() : 0;
+
+        for (int i = from; i < to; i++) {
+            if (version != versions[i]) {
+                throw new IllegalArgumentException("Operations must be on the same version");
+            }
+            int otherPosition = positions[i];
+            int otherLength = contentLengths[i];
+
+            if (types[i] == TYPE_INSERT) {
+                // 插入操作会影响后续操作的位置
+                if (otherPosition <= position) {
+                    position += otherLength;
+                }
+            } else {
+                int otherEnd = otherPosition + otherLength;
+                if (position < otherPosition) {
+                    // 当前操作在删除操作之前，位置不变
+                } else if (position >= otherEnd) {
+                    // 当前操作在删除操作之后，位置需要调整
+                    position -= otherLength;
+                } else if (insert) {
+                    // 插入位置落在被删除的区间内，调整到删除操作之前
+                    position = otherPosition;
+                } else if (position + contentLength <= otherEnd) {
+                    // 当前删除操作完全被包含，整个操作被抵消
+                    contentStart += contentLength;
+                    contentLength = 0;
+                } else {
+                    // 部分重叠，只保留不重叠的部分
+                    int overlap = otherEnd - position;
+                    contentStart += overlap;
+                    contentLength -= overlap;
+                    position = otherPosition;
+                }
+            }
+            version++;
+        }
+
+        String newContent = content == null || contentStart == 0 ? content
+                : content.substring(contentStart, contentStart + contentLength);
+        return new OTAlgorithm.Operation(operation.getType(), position, newContent, version);
+    }
+}
@@ -0,0 +1,322 @@
+package com.collab.collab_editor_backend.handler;
+
+import com.collab.collab_editor_backend.util.OffHeapText;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段文档
+ * 超大文档按标题/段落边界切分为多个分段，每个分段有独立的锁、版本号和操作历史，
+ * 不同分段的操作可以在不同线程上并行转换和应用；
+ * 跨分段的删除由协调步骤按分段顺序加锁后一次完成
+ */
+public class SectionedDocument {
+
+    /**
+     * 在某个分段上应用的操作（位置相对分段起点，版本为分段版本）
+     */
+    public record SectionOperation(int sectionId, OTAlgorithm.Operation operation) {
+    }
+
+    /**
+     * 整篇文档的一致快照
+     * @param content 拼接后的内容
+     * @param version 读取时的文档版本
+     * @param sections 分段布局：起点、长度和分段版本
+     */
+    public record Snapshot(String content, int version, List<Map<String, Object>> sections) {
+    }
+
+    /**
+     * 单个分段
+     */
+    private static class Section {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final OffHeapText content;
+        private final DocumentStats stats;
+        private final OperationHistory history = new OperationHistory();
+        private int version;
+
+        private Section(String content) {
+            this.content = new OffHeapText(content);
+            this.stats = new DocumentStats(this.content);
+        }
+    }
+
+    private final List<Section> sections;
+    // 分段模式关闭后所有操作都被拒绝，由调用方按整篇文档重新同步
+    private volatile boolean active = true;
+
+    /**
+     * @param content 文档内容
+     * @param targetSectionChars 分段的目标长度（字符数）
+     */
+    public SectionedDocument(String content, int targetSectionChars) {
+        List<Section> list = new ArrayList<>();
+        int start = 0;
+        for (int boundary : findBoundaries(content, targetSectionChars)) {
+            list.add(new Section(content.substring(start, boundary)));
+            start = boundary;
+        }
+        list.add(new Section(content.substring(start)));
+        this.sections = Collections.unmodifiableList(list);
+    }
+
+    public int sectionCount() {
+        return sections.size();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 在分段上应用操作：只持有该分段的锁，按分段历史转换后应用；
+     * 删除范围超出分段末尾时转入协调步骤
+     * @param sectionId 分段ID
+     * @param operation 操作（位置相对分段起点，版本为客户端所见的分段版本）
+     * @param baseVersions 跨分段删除时客户端所见的后续分段版本
+     * @param onApplied 已应用的操作，在持有分段锁时回调，保证同一分段的广播顺序与版本一致
+     * @return 是否已应用；分段模式已关闭或跨分段删除版本冲突时返回false
+     */
+    public boolean apply(int sectionId, OTAlgorithm.Operation operation, Map<Integer, Integer> baseVersions,
+                         Consumer<List<SectionOperation>> onApplied) {
+        if (sectionId < 0 || sectionId >= sections.size()) {
+            throw new IllegalArgumentException("无效的分段ID: " + sectionId);
+        }
+        Section section = sections.get(sectionId);
+        section.lock.lock();
+        try {
+            if (!active) {
+                return false;
+            }
+            OTAlgorithm.Operation transformed = operation.getVersion() < section.version
+                    ? section.history.transform(operation, operation.getVersion(), section.version)
+                    : operation;
+
+            int deleteLength = transformed.getType() == OTAlgorithm.OperationType.DELETE && transformed.getContent() != null
+                    ? transformed.getContent().length() : 0;
+            if (transformed.getPosition() + deleteLength > section.content.length() && sectionId + 1 < sections.size()) {
+                return applyAcrossSections(sectionId, transformed, baseVersions, onApplied);
+            }
+
+            OTAlgorithm.Operation applied = applyToSection(section, transformed);
+            onApplied.accept(List.of(new SectionOperation(sectionId, applied)));
+            return true;
+        } finally {
+            section.lock.unlock();
+        }
+    }
+
+    /**
+     * 协调步骤：跨分段删除
+     * 调用时已持有起始分段的锁，按分段顺序依次锁住后续分段（与关闭分段模式的加锁顺序一致，不会死锁）；
+     * 后续分段没有可用于转换的共同版本，要求客户端所见版本与当前版本一致，否则拒绝由客户端重试
+     */
+    private boolean applyAcrossSections(int sectionId, OTAlgorithm.Operation operation, Map<Integer, Integer> baseVersions,
+                                        Consumer<List<SectionOperation>> onApplied) {
+        String content = operation.getContent();
+        Section first = sections.get(sectionId);
+        int position = Math.max(0, operation.getPosition());
+        int firstPart = Math.max(0, first.content.length() - position);
+
+        // 依次锁住删除范围覆盖的后续分段并检查版本
+        List<Section> locked = new ArrayList<>();
+        try {
+            int remaining = content.length() - firstPart;
+            int next = sectionId + 1;
+            while (remaining > 0 && next < sections.size()) {
+                Section section = sections.get(next);
+                section.lock.lock();
+                locked.add(section);
+                Integer baseVersion = baseVersions != null ? baseVersions.get(next) : null;
+                if (baseVersion == null || baseVersion != section.version) {
+                    return false;
+                }
+                remaining -= section.content.length();
+                next++;
+            }
+
+            List<SectionOperation> applied = new ArrayList<>();
+            int offset = 0;
+            int take = Math.min(firstPart, content.length());
+            applied.add(new SectionOperation(sectionId, applyToSection(first, new OTAlgorithm.Operation(
+                    OTAlgorithm.OperationType.DELETE, position, content.substring(0, take), first.version))));
+            offset += take;
+            for (int i = 0; i < locked.size() && offset < content.length(); i++) {
+                Section section = locked.get(i);
+                take = Math.min(section.content.length(), content.length() - offset);
+                applied.add(new SectionOperation(sectionId + 1 + i, applyToSection(section, new OTAlgorithm.Operation(
+                        OTAlgorithm.OperationType.DELETE, 0, content.substring(offset, offset + take), section.version))));
+                offset += take;
+            }
+            onApplied.accept(applied);
+            return true;
+        } finally {
+            for (Section section : locked) {
+                section.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 应用到分段内容并记录历史，调用方持有分段锁
+     * @return 带新分段版本的操作
+     */
+    private OTAlgorithm.Operation applyToSection(Section section, OTAlgorithm.Operation operation) {
+        OTAlgorithm.Operation recorded = new OTAlgorithm.Operation(
+                operation.getType(), operation.getPosition(), operation.getContent(), section.version);
+        section.stats.apply(recorded);
+        section.history.add(recorded);
+        section.version++;
+        return new OTAlgorithm.Operation(operation.getType(), operation.getPosition(), operation.getContent(), section.version);
+    }
+
+    /**
+     * 分段布局：起点、长度和版本，按顺序锁住所有分段后读取
+     */
+    public List<Map<String, Object>> layout() {
+        lockAll();
+        try {
+            return buildLayout();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * 汇总各分段的统计，标题位置换算为整篇文档中的位置
+     */
+    public Map<String, Object> stats() {
+        lockAll();
+        try {
+            Map<String, Object> totals = DocumentStats.summarize("");
+            int start = 0;
+            for (Section section : sections) {
+                section.stats.addTo(totals, start);
+                start += section.content.length();
+            }
+            return totals;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * 拼接出整篇文档内容（不关闭分段模式）
+     * @param versionSupplier 文档版本，在持有全部分段锁时读取，与内容一致
+     */
+    public Snapshot snapshot(IntSupplier versionSupplier) {
+        lockAll();
+        try {
+            return new Snapshot(concat(), versionSupplier.getAsInt(), buildLayout());
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private List<Map<String, Object>> buildLayout() {
+        List<Map<String, Object>> result = new ArrayList<>(sections.size());
+        int start = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            Section section = sections.get(i);
+            Map<String, Object> item = new HashMap<>();
+            item.put("sectionId", i);
+            item.put("start", start);
+            item.put("length", section.content.length());
+            item.put("version", section.version);
+            result.add(item);
+            start += section.content.length();
+        }
+        return result;
+    }
+
+    /**
+     * 关闭分段模式：拼接出整篇文档内容并释放各分段的缓冲区，之后的分段操作都会被拒绝
+     */
+    public String close() {
+        lockAll();
+        try {
+            String content = active ? concat() : "";
+            active = false;
+            for (Section section : sections) {
+                section.content.release();
+            }
+            return content;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private String concat() {
+        StringBuilder sb = new StringBuilder();
+        for (Section section : sections) {
+            sb.append(section.content);
+        }
+        return sb.toString();
+    }
+
+    private void lockAll() {
+        for (Section section : sections) {
+            section.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = sections.size() - 1; i >= 0; i--) {
+            sections.get(i).lock.unlock();
+        }
+    }
+
+    /**
+     * 计算分段边界：优先在标题处切分，其次在段落/块元素处切分，过长时在任意块边界切分
+     * 同时识别富文本（&lt;h1&gt;、&lt;p&gt;等块元素）和纯文本/Markdown（换行、#标题）
+     */
+    private static List<Integer> findBoundaries(String content, int targetSectionChars) {
+        List<Integer> boundaries = new ArrayList<>();
+        int start = 0;
+        int minHeadingSection = Math.max(1, targetSectionChars / 4);
+        for (int i = 1; i < content.length(); i++) {
+            int kind = blockStart(content, i);
+            if (kind == 0) {
+                continue;
+            }
+            int current = i - start;
+            if ((kind == 2 && current >= minHeadingSection) || current >= targetSectionChars) {
+                boundaries.add(i);
+                start = i;
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * @return 2表示标题起点，1表示其他块起点，0表示不是块起点
+     */
+    private static int blockStart(String content, int i) {
+        char c = content.charAt(i);
+        if (c == '<' && i + 2 < content.length()) {
+            char n1 = content.charAt(i + 1);
+            char n2 = content.charAt(i + 2);
+            if (n1 == 'h' && n2 >= '1' && n2 <= '6') {
+                return 2;
+            }
+            if (content.startsWith("<p", i) || content.startsWith("<ol", i) || content.startsWith("<ul", i)
+                    || content.startsWith("<pre", i) || content.startsWith("<blockquote", i)) {
+                return 1;
+            }
+            return 0;
+        }
+        if (content.charAt(i - 1) == '\n') {
+            return c == '#' ? 2 : 1;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,35 @@
+package com.collab.collab_editor_backend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.collab.collab_editor_backend.entity.CategoryStats;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 分类统计Mapper接口
+ */
+public interface CategoryStatsMapper extends BaseMapper<CategoryStats> {
+
+    /**
+     * 调整分类的文档数，分类不存在时创建
+     * @param name 分类名称
+     * @param delta 文档数变化（+1/-1）
+     */
+    @Insert("INSERT INTO t_category_stats (name, doc_count, last_updated) VALUES (#{name}, #{delta}, NOW()) " +
+            "ON DUPLICATE KEY UPDATE doc_count = doc_count + #{delta}, last_updated = NOW()")
+    int adjust(@Param("name") String name, @Param("delta") int delta);
+
+    /**
+     * 删除已没有文档的分类
+     */
+    @Delete("DELETE FROM t_category_stats WHERE name = #{name} AND doc_count <= 0")
+    int deleteIfEmpty(@Param("name") String name);
+
+    /**
+     * 从文档表重建分类统计（仅在统计表为空时的首次回填使用）
+     */
+    @Insert("INSERT INTO t_category_stats (name, doc_count, last_updated) " +
+            "SELECT category, COUNT(*), MAX(update_time) FROM t_document WHERE category IS NOT NULL AND deleted = 0 GROUP BY category")
+    int rebuildFromDocuments();
+}
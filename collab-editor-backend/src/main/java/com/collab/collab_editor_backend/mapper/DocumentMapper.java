@@ -1,6 +1,9 @@
 package com.collab.collab_editor_backend.mapper;
 
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import com.collab.collab_editor_backend.dto.DocumentSummary;
 import com.collab.collab_editor_backend.entity.Document;
 import org.apache.ibatis.annotations.Param;
 import java.util.List;
@@ -8,4 +11,7 @@ import java.util.List;
 public interface DocumentMapper extends BaseMapper<Document> {
     // 按所有者ID查询文档列表（适配你的实体类字段）
     List<Document> selectByOwnerId(@Param("ownerId") Long ownerId);
+
+    // 按条件查询文档摘要（不读取正文），条件与排序由wrapper提供
+    List<DocumentSummary> selectSummaries(@Param(Constants.WRAPPER) Wrapper<Document> wrapper);
 }
\ No newline at end of file
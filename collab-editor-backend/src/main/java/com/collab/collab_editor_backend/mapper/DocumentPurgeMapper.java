@@ -0,0 +1,31 @@
+package com.collab.collab_editor_backend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.collab.collab_editor_backend.entity.DocumentPurge;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 文档清理任务Mapper接口
+ * 关联数据按doc_id分批删除，每批一个短事务，避免一次删除数万行长时间持有锁
+ */
+public interface DocumentPurgeMapper extends BaseMapper<DocumentPurge> {
+
+    @Delete("DELETE FROM t_document_version WHERE doc_id = #{docId} LIMIT #{limit}")
+    int deleteVersions(@Param("docId") Long docId, @Param("limit") int limit);
+
+    @Delete("DELETE FROM t_comment WHERE doc_id = #{docId} LIMIT #{limit}")
+    int deleteComments(@Param("docId") Long docId, @Param("limit") int limit);
+
+    @Delete("DELETE FROM t_task WHERE doc_id = #{docId} LIMIT #{limit}")
+    int deleteTasks(@Param("docId") Long docId, @Param("limit") int limit);
+
+    @Delete("DELETE FROM t_doc_permission WHERE doc_id = #{docId} LIMIT #{limit}")
+    int deletePermissions(@Param("docId") Long docId, @Param("limit") int limit);
+
+    /**
+     * 物理删除已标记删除的文档行
+     */
+    @Delete("DELETE FROM t_document WHERE id = #{docId} AND deleted = 1")
+    int deleteDocument(@Param("docId") Long docId);
+}
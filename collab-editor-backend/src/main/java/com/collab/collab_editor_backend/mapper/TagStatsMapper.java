@@ -0,0 +1,28 @@
+package com.collab.collab_editor_backend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.collab.collab_editor_backend.entity.TagStats;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 标签统计Mapper接口
+ */
+public interface TagStatsMapper extends BaseMapper<TagStats> {
+
+    /**
+     * 调整标签的文档数，标签不存在时创建
+     * @param name 标签名称
+     * @param delta 文档数变化（+1/-1）
+     */
+    @Insert("INSERT INTO t_tag_stats (name, doc_count, last_updated) VALUES (#{name}, #{delta}, NOW()) " +
+            "ON DUPLICATE KEY UPDATE doc_count = doc_count + #{delta}, last_updated = NOW()")
+    int adjust(@Param("name") String name, @Param("delta") int delta);
+
+    /**
+     * 删除已没有文档的标签
+     */
+    @Delete("DELETE FROM t_tag_stats WHERE name = #{name} AND doc_count <= 0")
+    int deleteIfEmpty(@Param("name") String name);
+}
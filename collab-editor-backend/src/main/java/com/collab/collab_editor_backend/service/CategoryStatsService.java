@@ -0,0 +1,41 @@
+package com.collab.collab_editor_backend.service;
+
+import com.collab.collab_editor_backend.entity.TagStats;
+import java.util.List;
+
+/**
+ * 分类/标签统计服务接口
+ */
+public interface CategoryStatsService {
+    /**
+     * 文档加入统计（创建、导入文档时调用，与文档写入在同一事务中）
+     * @param category 文档分类，可为null
+     * @param tags 文档标签（逗号分隔），可为null
+     */
+    void documentAdded(String category, String tags);
+
+    /**
+     * 文档移出统计（删除文档时调用，与文档删除在同一事务中）
+     */
+    void documentRemoved(String category, String tags);
+
+    /**
+     * 文档的分类或标签变化
+     */
+    void documentChanged(String oldCategory, String oldTags, String newCategory, String newTags);
+
+    /**
+     * 所有分类名称（按名称排序）
+     */
+    List<String> getCategoryNames();
+
+    /**
+     * 所有标签及文档数（按文档数倒序）
+     */
+    List<TagStats> getTags();
+
+    /**
+     * 统计表为空而文档表有数据时从文档表回填（首次部署时）
+     */
+    void backfillIfEmpty();
+}
@@ -0,0 +1,25 @@
+package com.collab.collab_editor_backend.service;
+
+import java.util.Map;
+
+/**
+ * 文档清理服务接口
+ */
+public interface DocumentPurgeService {
+    /**
+     * 登记文档清理任务（与文档的标记删除在同一事务中调用）
+     * @param docId 已标记删除的文档ID
+     */
+    void schedule(Long docId);
+
+    /**
+     * 执行一轮清理（后台定时调用）
+     * @return 本轮删除的行数
+     */
+    long purgeOnce();
+
+    /**
+     * 清理进度（监控接口使用）
+     */
+    Map<String, Object> status();
+}
@@ -1,36 +1,58 @@
 package com.collab.collab_editor_backend.service;
 
 import com.collab.collab_editor_backend.dto.DocCreateDTO;
+import com.collab.collab_editor_backend.dto.DocumentPage;
 import com.collab.collab_editor_backend.util.Result;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * 文档服务接口（与DocumentServiceImpl的实现方法匹配）
  */
 public interface DocumentService {
+
+    /**
+     * 导出目标：服务确定文件名后才打开输出流，打开之前的失败（不存在、无权限）仍可以返回错误响应
+     */
+    interface ExportTarget {
+        OutputStream open(String fileName) throws IOException;
+    }
+
     // 创建文档
     Result<?> create(DocCreateDTO dto, Long userId);
-    // 查询用户的文档列表
-    Result<?> getList(Long userId);
-    // 根据分类查询文档列表
-    Result<?> getListByCategory(Long userId, String category);
+    // 查询文档列表（游标分页，按更新时间倒序）
+    Result<DocumentPage> getList(Long userId, String cursor, Integer limit);
+    // 根据分类查询文档列表（游标分页，按更新时间倒序）
+    Result<DocumentPage> getListByCategory(Long userId, String category, String cursor, Integer limit);
     // 获取用户的所有文档分类
     Result<?> getCategories(Long userId);
+    // 获取所有标签及文档数
+    Result<?> getTags(Long userId);
     // 获取文档内容（从MinIO下载）
     Result<String> getContent(Long docId, Long userId);
+    // 获取文档内容的ETag（不读取内容，条件请求使用）
+    Result<String> getContentTag(Long docId, Long userId);
+    // 获取文档内容及版本（正在编辑的文档读取实时内容）
+    Result<Map<String, Object>> getContentWithVersion(Long docId, Long userId);
+    // 获取文档统计：字数、字符数和标题大纲（正在编辑的文档读取增量维护的统计）
+    Result<Map<String, Object>> getStats(Long docId, Long userId);
     // 保存文档内容（上传到MinIO）
     Result<?> saveContent(Long docId, String content, Long userId);
+    // 持久化在线文档的实时内容（系统调用，不做权限检查）
+    boolean persistLiveContent(Long docId, String content);
     // 导入Word文档
     Result<?> importWord(MultipartFile file, Long userId, String category);
     // 导入PDF文档
     Result<?> importPdf(MultipartFile file, Long userId, String category);
-    // 导出为Word文档
-    Result<?> exportWord(Long docId, Long userId);
-    // 导出为PDF文档
-    Result<?> exportPdf(Long docId, String content, Long userId);
-    // 搜索文档（支持分类与范围）
-    Result<?> search(Long userId, String keyword, String tags, String author, LocalDateTime startTime, LocalDateTime endTime, String sortField, String sortOrder, String category, String scope);
+    // 导出为Word文档，直接写入导出目标
+    Result<?> exportWord(Long docId, Long userId, ExportTarget target);
+    // 导出为PDF文档，直接写入导出目标
+    Result<?> exportPdf(Long docId, String content, Long userId, ExportTarget target);
+    // 搜索文档（支持分类与范围，游标分页）
+    Result<DocumentPage> search(Long userId, String keyword, String tags, String author, LocalDateTime startTime, LocalDateTime endTime, String sortField, String sortOrder, String category, String scope, String cursor, Integer limit);
     // 删除文档
     Result<?> deleteDocument(Long docId, Long userId);
 }
@@ -0,0 +1,193 @@
+package com.collab.collab_editor_backend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.collab.collab_editor_backend.entity.CategoryStats;
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.entity.TagStats;
+import com.collab.collab_editor_backend.mapper.CategoryStatsMapper;
+import com.collab.collab_editor_backend.mapper.DocumentMapper;
+import com.collab.collab_editor_backend.mapper.TagStatsMapper;
+import com.collab.collab_editor_backend.service.CategoryStatsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分类/标签统计服务实现类
+ * t_category_stats、t_tag_stats按名称保存文档数，随文档创建、删除增量维护；
+ * 读取走内存快照，统计变化的事务提交后丢弃快照，多实例部署时其他实例的快照在cache-ttl-ms内过期
+ */
+@Service
+public class CategoryStatsServiceImpl implements CategoryStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryStatsServiceImpl.class);
+
+    @Autowired
+    private CategoryStatsMapper categoryStatsMapper;
+
+    @Autowired
+    private TagStatsMapper tagStatsMapper;
+
+    @Autowired
+    private DocumentMapper documentMapper;
+
+    @Value("${collab.doc.category-stats.cache-ttl-ms:30000}")
+    private long cacheTtlMs;
+
+    private volatile Snapshot snapshot;
+    // 失效计数：重建快照期间发生过失效时不保存该快照
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void documentAdded(String category, String tags) {
+        adjust(category, tags, 1);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void documentRemoved(String category, String tags) {
+        adjust(category, tags, -1);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void documentChanged(String oldCategory, String oldTags, String newCategory, String newTags) {
+        if (Objects.equals(oldCategory, newCategory) && Objects.equals(oldTags, newTags)) {
+            return;
+        }
+        adjust(oldCategory, oldTags, -1);
+        adjust(newCategory, newTags, 1);
+    }
+
+    @Override
+    public List<String> getCategoryNames() {
+        return current().categories;
+    }
+
+    @Override
+    public List<TagStats> getTags() {
+        return current().tags;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void backfillIfEmpty() {
+        if (categoryStatsMapper.selectCount(null) == 0) {
+            int rows = categoryStatsMapper.rebuildFromDocuments();
+            if (rows > 0) {
+                logger.info("已从文档表回填分类统计，分类数: {}", rows);
+            }
+        }
+        if (tagStatsMapper.selectCount(null) == 0) {
+            LambdaQueryWrapper<Document> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(Document::getTags).isNotNull(Document::getTags);
+            Map<String, Integer> counts = new HashMap<>();
+            for (Object tags : documentMapper.selectObjs(queryWrapper)) {
+                for (String tag : splitTags(tags != null ? tags.toString() : null)) {
+                    counts.merge(tag, 1, Integer::sum);
+                }
+            }
+            counts.forEach(tagStatsMapper::adjust);
+            if (!counts.isEmpty()) {
+                logger.info("已从文档表回填标签统计，标签数: {}", counts.size());
+            }
+        }
+        afterCommit(this::invalidate);
+    }
+
+    private void adjust(String category, String tags, int delta) {
+        if (category != null) {
+            categoryStatsMapper.adjust(category, delta);
+            if (delta < 0) {
+                categoryStatsMapper.deleteIfEmpty(category);
+            }
+        }
+        for (String tag : splitTags(tags)) {
+            tagStatsMapper.adjust(tag, delta);
+            if (delta < 0) {
+                tagStatsMapper.deleteIfEmpty(tag);
+            }
+        }
+        // 提交后才丢弃快照，避免并发读取在提交前用旧数据重建快照
+        afterCommit(this::invalidate);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() < current.expiresAt) {
+            return current;
+        }
+        long seen = invalidations.get();
+        // 统计表的行数与分类/标签数相同，与文档数无关
+        LambdaQueryWrapper<CategoryStats> categoryQuery = new LambdaQueryWrapper<>();
+        categoryQuery.gt(CategoryStats::getDocCount, 0).orderByAsc(CategoryStats::getName);
+        List<String> categories = new ArrayList<>();
+        for (CategoryStats stats : categoryStatsMapper.selectList(categoryQuery)) {
+            categories.add(stats.getName());
+        }
+        LambdaQueryWrapper<TagStats> tagQuery = new LambdaQueryWrapper<>();
+        tagQuery.gt(TagStats::getDocCount, 0).orderByDesc(TagStats::getDocCount).orderByAsc(TagStats::getName);
+        List<TagStats> tags = tagStatsMapper.selectList(tagQuery);
+
+        current = new Snapshot(Collections.unmodifiableList(categories), Collections.unmodifiableList(tags),
+                System.currentTimeMillis() + cacheTtlMs);
+        if (invalidations.get() == seen) {
+            snapshot = current;
+        }
+        return current;
+    }
+
+    private void invalidate() {
+        invalidations.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * 拆分逗号分隔的标签（兼容中文逗号），去掉空白和重复
+     */
+    private static Set<String> splitTags(String tags) {
+        Set<String> result = new LinkedHashSet<>();
+        if (tags == null) {
+            return result;
+        }
+        for (String tag : tags.split("[,，]")) {
+            String trimmed = tag.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private record Snapshot(List<String> categories, List<TagStats> tags, long expiresAt) {
+    }
+}
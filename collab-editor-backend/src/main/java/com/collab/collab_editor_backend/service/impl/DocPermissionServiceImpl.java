@@ -3,10 +3,9 @@ package com.collab.collab_editor_backend.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.collab.collab_editor_backend.entity.DocPermission;
-import com.collab.collab_editor_backend.entity.Document;
 import com.collab.collab_editor_backend.mapper.DocPermissionMapper;
-import com.collab.collab_editor_backend.mapper.DocumentMapper;
 import com.collab.collab_editor_backend.service.DocPermissionService;
+import com.collab.collab_editor_backend.util.DocumentMetaCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,7 +23,7 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     private DocPermissionMapper docPermissionMapper;
 
     @Autowired
-    private DocumentMapper documentMapper;
+    private DocumentMetaCache documentMetaCache;
 
     /**
      * 为用户分配文档权限
@@ -37,7 +36,7 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Transactional(rollbackFor = Exception.class)
     public DocPermission assignPermission(Long docId, Long userId, Integer permissionType) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             throw new RuntimeException("文档不存在");
         }
@@ -76,13 +75,13 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Transactional(rollbackFor = Exception.class)
     public boolean removePermission(Long docId, Long userId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             throw new RuntimeException("文档不存在");
         }
 
         // 检查是否是文档所有者
-        if (document.getOwnerId().equals(userId)) {
+        if (document.ownerId().equals(userId)) {
             throw new RuntimeException("文档所有者不能移除自己的权限");
         }
 
@@ -104,7 +103,7 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Transactional(rollbackFor = Exception.class)
     public boolean updatePermission(Long docId, Long userId, Integer permissionType) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             throw new RuntimeException("文档不存在");
         }
@@ -133,7 +132,7 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Override
     public List<DocPermission> getPermissionsByDocId(Long docId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             throw new RuntimeException("文档不存在");
         }
@@ -150,13 +149,13 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Override
     public DocPermission getPermissionByDocIdAndUserId(Long docId, Long userId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             throw new RuntimeException("文档不存在");
         }
 
         // 文档所有者默认拥有所有权限
-        if (document.getOwnerId().equals(userId)) {
+        if (document.ownerId().equals(userId)) {
             DocPermission ownerPermission = new DocPermission();
             ownerPermission.setDocId(docId);
             ownerPermission.setUserId(userId);
@@ -178,13 +177,13 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Override
     public boolean hasViewPermission(Long docId, Long userId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             return false;
         }
 
         // 文档所有者默认有查看权限
-        if (document.getOwnerId().equals(userId)) {
+        if (document.ownerId().equals(userId)) {
             return true;
         }
 
@@ -202,13 +201,13 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Override
     public boolean hasEditPermission(Long docId, Long userId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             return false;
         }
 
         // 文档所有者默认有编辑权限
-        if (document.getOwnerId().equals(userId)) {
+        if (document.ownerId().equals(userId)) {
             return true;
         }
 
@@ -226,13 +225,13 @@ public class DocPermissionServiceImpl implements DocPermissionService {
     @Override
     public boolean hasAdminPermission(Long docId, Long userId) {
         // 检查文档是否存在
-        Document document = documentMapper.selectById(docId);
+        DocumentMetaCache.Meta document = documentMetaCache.get(docId);
         if (document == null) {
             return false;
         }
 
         // 文档所有者默认有管理员权限
-        if (document.getOwnerId().equals(userId)) {
+        if (document.ownerId().equals(userId)) {
             return true;
         }
 
@@ -0,0 +1,202 @@
+package com.collab.collab_editor_backend.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.collab.collab_editor_backend.entity.DocumentPurge;
+import com.collab.collab_editor_backend.mapper.DocumentPurgeMapper;
+import com.collab.collab_editor_backend.service.DocumentPurgeService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * 文档清理服务实现类
+ * 删除文档时只做标记删除并登记清理任务；后台线程按批删除关联数据，每批一个短事务，
+ * 每批之后记录进度，失败按指数退避重试。清理可重复执行，多个实例同时处理同一文档也不会出错
+ */
+@Service
+public class DocumentPurgeServiceImpl implements DocumentPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentPurgeServiceImpl.class);
+
+    private static final String STATUS_PENDING = "pending";
+    private static final String STATUS_FAILED = "failed";
+
+    @Autowired
+    private DocumentPurgeMapper documentPurgeMapper;
+
+    @Value("${collab.doc.purge.interval-ms:5000}")
+    private long intervalMs;
+    // 每批删除的行数
+    @Value("${collab.doc.purge.batch-size:500}")
+    private int batchSize;
+    // 每轮最多处理的文档数，以及每个文档每轮最多删除的批数，未删完的文档下一轮继续
+    @Value("${collab.doc.purge.docs-per-run:10}")
+    private int docsPerRun;
+    @Value("${collab.doc.purge.batches-per-doc:200}")
+    private int batchesPerDoc;
+    @Value("${collab.doc.purge.max-attempts:10}")
+    private int maxAttempts;
+    @Value("${collab.doc.purge.retry-base-ms:10000}")
+    private long retryBaseMs;
+    @Value("${collab.doc.purge.retry-max-ms:600000}")
+    private long retryMaxMs;
+
+    private final AtomicLong purgedRows = new AtomicLong();
+    private final AtomicLong purgedDocuments = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "doc-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void schedule(Long docId) {
+        DocumentPurge purge = new DocumentPurge();
+        purge.setDocId(docId);
+        purge.setStatus(STATUS_PENDING);
+        purge.setPurgedRows(0L);
+        purge.setAttempts(0);
+        purge.setNextAttemptTime(LocalDateTime.now());
+        purge.setCreateTime(LocalDateTime.now());
+        purge.setUpdateTime(LocalDateTime.now());
+        documentPurgeMapper.insert(purge);
+    }
+
+    @Override
+    public long purgeOnce() {
+        LambdaQueryWrapper<DocumentPurge> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(DocumentPurge::getStatus, STATUS_PENDING)
+                .le(DocumentPurge::getNextAttemptTime, LocalDateTime.now())
+                .orderByAsc(DocumentPurge::getCreateTime)
+                .last("LIMIT " + docsPerRun);
+        List<DocumentPurge> purges = documentPurgeMapper.selectList(queryWrapper);
+
+        long deleted = 0;
+        for (DocumentPurge purge : purges) {
+            try {
+                deleted += purge(purge);
+            } catch (Exception e) {
+                fail(purge, e);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pending", documentPurgeMapper.selectCount(
+                new LambdaQueryWrapper<DocumentPurge>().eq(DocumentPurge::getStatus, STATUS_PENDING)));
+        status.put("failed", documentPurgeMapper.selectCount(
+                new LambdaQueryWrapper<DocumentPurge>().eq(DocumentPurge::getStatus, STATUS_FAILED)));
+        status.put("purgedDocuments", purgedDocuments.get());
+        status.put("purgedRows", purgedRows.get());
+        status.put("failures", failures.get());
+        return status;
+    }
+
+    /**
+     * 清理一个文档，删完全部关联数据后删除文档行和清理任务
+     * @return 本次删除的行数
+     */
+    private long purge(DocumentPurge purge) {
+        Long docId = purge.getDocId();
+        List<BiFunction<Long, Integer, Integer>> steps = List.of(
+                documentPurgeMapper::deleteVersions,
+                documentPurgeMapper::deleteComments,
+                documentPurgeMapper::deleteTasks,
+                documentPurgeMapper::deletePermissions);
+
+        long deleted = 0;
+        int batches = 0;
+        for (BiFunction<Long, Integer, Integer> step : steps) {
+            while (true) {
+                if (batches++ >= batchesPerDoc) {
+                    // 本轮批数用完，记录进度，下一轮继续
+                    saveProgress(purge, deleted);
+                    return deleted;
+                }
+                int rows = step.apply(docId, batchSize);
+                deleted += rows;
+                purgedRows.addAndGet(rows);
+                if (rows < batchSize) {
+                    break;
+                }
+                saveProgress(purge, deleted);
+            }
+        }
+
+        documentPurgeMapper.deleteDocument(docId);
+        documentPurgeMapper.deleteById(docId);
+        purgedDocuments.incrementAndGet();
+        logger.info("文档清理完成，文档ID: {}，共删除关联数据{}行", docId, purge.getPurgedRows() + deleted);
+        return deleted;
+    }
+
+    private void saveProgress(DocumentPurge purge, long deletedThisRun) {
+        DocumentPurge update = new DocumentPurge();
+        update.setDocId(purge.getDocId());
+        update.setPurgedRows(purge.getPurgedRows() + deletedThisRun);
+        update.setUpdateTime(LocalDateTime.now());
+        documentPurgeMapper.updateById(update);
+    }
+
+    private void fail(DocumentPurge purge, Exception e) {
+        failures.incrementAndGet();
+        int attempts = (purge.getAttempts() != null ? purge.getAttempts() : 0) + 1;
+        long delay = Math.min(retryMaxMs, retryBaseMs << Math.min(attempts - 1, 20));
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+
+        DocumentPurge update = new DocumentPurge();
+        update.setDocId(purge.getDocId());
+        update.setAttempts(attempts);
+        update.setLastError(message.length() > 500 ? message.substring(0, 500) : message);
+        update.setNextAttemptTime(LocalDateTime.now().plus(Duration.ofMillis(delay)));
+        update.setStatus(attempts >= maxAttempts ? STATUS_FAILED : STATUS_PENDING);
+        update.setUpdateTime(LocalDateTime.now());
+        try {
+            documentPurgeMapper.updateById(update);
+        } catch (Exception ex) {
+            logger.error("记录文档清理失败状态失败，文档ID: {}", purge.getDocId(), ex);
+        }
+        logger.warn("文档清理失败，文档ID: {}，第{}次，{}", purge.getDocId(), attempts, message);
+    }
+
+    private void runSafely() {
+        try {
+            purgeOnce();
+        } catch (Exception e) {
+            logger.error("文档清理任务执行失败", e);
+        }
+    }
+}
@@ -1,24 +1,31 @@
 package com.collab.collab_editor_backend.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.support.SFunction;
 import com.collab.collab_editor_backend.dto.DocCreateDTO;
+import com.collab.collab_editor_backend.dto.DocumentPage;
+import com.collab.collab_editor_backend.dto.DocumentSummary;
 import com.collab.collab_editor_backend.entity.Document;
-import com.collab.collab_editor_backend.entity.DocumentVersion;
-import com.collab.collab_editor_backend.entity.Task;
-import com.collab.collab_editor_backend.entity.Comment;
+import com.collab.collab_editor_backend.handler.DocumentStats;
 import com.collab.collab_editor_backend.mapper.DocumentMapper;
-import com.collab.collab_editor_backend.mapper.DocPermissionMapper;
-import com.collab.collab_editor_backend.mapper.DocumentVersionMapper;
-import com.collab.collab_editor_backend.mapper.TaskMapper;
-import com.collab.collab_editor_backend.mapper.CommentMapper;
 import com.collab.collab_editor_backend.mapper.UserMapper;
 import com.collab.collab_editor_backend.entity.User;
+import com.collab.collab_editor_backend.service.CategoryStatsService;
+import com.collab.collab_editor_backend.service.DocumentPurgeService;
 import com.collab.collab_editor_backend.service.DocumentService;
 import com.collab.collab_editor_backend.service.DocumentVersionService;
 import com.collab.collab_editor_backend.service.DocPermissionService;
 import com.collab.collab_editor_backend.service.OperationLogService;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentLoader;
+import com.collab.collab_editor_backend.util.DocumentMetaCache;
+import com.collab.collab_editor_backend.util.PdfExporter;
 import com.collab.collab_editor_backend.util.Result;
+import com.collab.collab_editor_backend.websocket.DocumentWebSocketHandler;
+import com.collab.collab_editor_backend.websocket.LiveDocument;
+import com.collab.collab_editor_backend.websocket.LiveDocumentRegistry;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -36,18 +43,23 @@ import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -68,24 +80,49 @@ public class DocumentServiceImpl implements DocumentService {
     @Autowired
     private DocPermissionService docPermissionService;
     
-    // 注入DocPermissionMapper（文档权限数据库操作）
-    @Autowired
-    private DocPermissionMapper docPermissionMapper;
     
     @Autowired
-    private DocumentVersionMapper documentVersionMapper;
-    
+    private UserMapper userMapper;
+
     @Autowired
-    private TaskMapper taskMapper;
-    
+    private OperationLogService operationLogService;
+
+    // 在线文档注册表（正在编辑的文档的实时内容）
     @Autowired
-    private CommentMapper commentMapper;
-    
+    private LiveDocumentRegistry liveDocumentRegistry;
+
+    // 文档WebSocket处理器（REST写入内容时同步替换实时内容并通知在线用户）
     @Autowired
-    private UserMapper userMapper;
+    private DocumentWebSocketHandler documentWebSocketHandler;
 
+    // 文档加载器（合并同一文档的并发读取，只读场景使用）
     @Autowired
-    private OperationLogService operationLogService;
+    private DocumentLoader documentLoader;
+
+    // 文档内容分层存储（大内容外置到MinIO）
+    @Autowired
+    private DocumentContentStore contentStore;
+
+    @Autowired
+    private DocumentMetaCache documentMetaCache;
+
+    @Autowired
+    private PdfExporter pdfExporter;
+
+    @Autowired
+    private CategoryStatsService categoryStatsService;
+
+    @Autowired
+    private DocumentPurgeService documentPurgeService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    
+    // 列表分页：只传cursor不传limit时的每页数量，以及每页上限
+    @Value("${collab.doc.page.default-size:50}")
+    private int pageDefaultSize;
+    @Value("${collab.doc.page.max-size:200}")
+    private int pageMaxSize;
     
     // ObjectMapper用于将操作内容转换为JSON格式
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -98,6 +135,7 @@ public class DocumentServiceImpl implements DocumentService {
      * @param userId 文档所有者ID（当前登录用户）
      */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public Result<?> create(DocCreateDTO dto, Long userId) {
         try {
             // 0. 角色校验：仅管理员和编辑者可以创建文档
@@ -114,14 +152,15 @@ public class DocumentServiceImpl implements DocumentService {
             Document document = new Document();
             document.setTitle(dto.getTitle()); // 设置文档标题
             document.setOwnerId(userId); // 设置所有者ID
-            document.setContent(dto.getContent() != null ? dto.getContent() : ""); // 设置文档内容
+            contentStore.write(document, dto.getContent() != null ? dto.getContent() : ""); // 设置文档内容（大内容外置存储）
             document.setCategory(dto.getCategory()); // 设置文档分类
             document.setTags(dto.getTags()); // 设置文档标签
             document.setCreateTime(LocalDateTime.now()); // 设置创建时间
             document.setUpdateTime(LocalDateTime.now()); // 设置更新时间
 
-            // 2. 保存文档信息到数据库
+            // 2. 保存文档信息到数据库，并计入分类/标签统计
             documentMapper.insert(document);
+            categoryStatsService.documentAdded(document.getCategory(), document.getTags());
             
             // 3. 记录操作日志
             try {
@@ -148,21 +187,19 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     /**
-     * 查询所有文档列表（共享模式，所有用户可见）
+     * 查询所有文档列表（共享模式，所有用户可见），按更新时间倒序游标分页
      * @param userId 用户ID（当前登录用户，虽然在共享模式下不用于过滤，但可用于日志等）
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param limit 每页数量（超过上限时截断）；limit和cursor都为空时返回全部文档
      */
     @Override
-    public Result<?> getList(Long userId) {
+    public Result<DocumentPage> getList(Long userId, String cursor, Integer limit) {
         try {
             // 获取所有文档
             LambdaQueryWrapper<Document> queryWrapper = new LambdaQueryWrapper<>();
-            
-            // 按更新时间降序排序
-            queryWrapper.orderByDesc(Document::getUpdateTime);
-            
-            List<Document> allDocuments = documentMapper.selectList(queryWrapper);
-
-            return Result.success(allDocuments); // 返回文档列表
+            return Result.success(queryPage(queryWrapper, "updateTime", false, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return Result.error(400, e.getMessage());
         } catch (Exception e) {
             logger.error("获取文档列表失败，用户ID: {}", userId, e);
             return Result.error("获取文档列表失败：" + e.getMessage());
@@ -170,47 +207,148 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
-    public Result<?> getListByCategory(Long userId, String category) {
+    public Result<DocumentPage> getListByCategory(Long userId, String category, String cursor, Integer limit) {
         try {
             // 获取指定分类的所有文档
             LambdaQueryWrapper<Document> queryWrapper = new LambdaQueryWrapper<>();
             queryWrapper.eq(Document::getCategory, category);
-            
-            // 按更新时间降序排序
-            queryWrapper.orderByDesc(Document::getUpdateTime);
-            
-            List<Document> allDocuments = documentMapper.selectList(queryWrapper);
-
-            return Result.success(allDocuments); // 返回文档列表
+            return Result.success(queryPage(queryWrapper, "updateTime", false, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return Result.error(400, e.getMessage());
         } catch (Exception e) {
             logger.error("获取分类文档列表失败，用户ID: {}, 分类: {}", userId, category, e);
             return Result.error("获取分类文档列表失败：" + e.getMessage());
         }
     }
 
+    /**
+     * 游标分页查询文档摘要
+     * 按(排序字段, id)排序并从游标位置向后定位（seek），每页只读取limit+1行，与翻到第几页无关；
+     * 排序字段相同的文档按id区分，翻页时不会重复或遗漏
+     * limit和cursor都未传时不分页：不读取X-Next-Cursor的旧客户端仍能拿到全部结果，不会被静默截断
+     * 排序字段为NULL（如标题为空）的文档按MySQL的规则排在升序最前、降序最后，游标显式记录NULL
+     * @param sortField updateTime、createTime或title
+     * @param asc 是否升序
+     * @param cursor 上一页返回的游标，必须与本次的排序方式一致
+     * @throws IllegalArgumentException 游标无效
+     */
+    private DocumentPage queryPage(LambdaQueryWrapper<Document> queryWrapper, String sortField, boolean asc,
+                                   String cursor, Integer limit) {
+        boolean paged = limit != null || StringUtils.hasText(cursor);
+        int pageSize = limit == null || limit <= 0 ? pageDefaultSize : Math.min(limit, pageMaxSize);
+        // 自定义查询不会自动加逻辑删除条件
+        queryWrapper.eq(Document::getDeleted, 0);
+        SFunction<Document, ?> column = sortColumn(sortField);
+
+        if (StringUtils.hasText(cursor)) {
+            Map<String, String> position = decodeCursor(cursor);
+            if (!sortField.equals(position.get("s")) || asc != "asc".equals(position.get("o"))) {
+                throw new IllegalArgumentException("分页游标与排序方式不一致");
+            }
+            Long id;
+            Object value;
+            try {
+                id = Long.valueOf(position.get("id"));
+                value = "1".equals(position.get("n")) ? null
+                        : "title".equals(sortField) ? position.get("v") : LocalDateTime.parse(position.get("v"));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+            // (排序字段, id) 严格位于游标之后；NULL在升序时最前、降序时最后
+            if (asc && value == null) {
+                queryWrapper.and(w -> w.isNotNull(column).or(o -> o.isNull(column).gt(Document::getId, id)));
+            } else if (asc) {
+                queryWrapper.and(w -> w.gt(column, value).or(o -> o.eq(column, value).gt(Document::getId, id)));
+            } else if (value == null) {
+                queryWrapper.and(w -> w.isNull(column).lt(Document::getId, id));
+            } else {
+                queryWrapper.and(w -> w.lt(column, value).or(o -> o.eq(column, value).lt(Document::getId, id))
+                        .or(o -> o.isNull(column)));
+            }
+        }
+        queryWrapper.orderBy(true, asc, column).orderBy(true, asc, Document::getId);
+        if (paged) {
+            queryWrapper.last("LIMIT " + (pageSize + 1));
+        }
+
+        // 只查询摘要，不读取正文；分页时多取一行判断是否还有下一页
+        List<DocumentSummary> items = documentMapper.selectSummaries(queryWrapper);
+        String nextCursor = null;
+        if (paged && items.size() > pageSize) {
+            items = new ArrayList<>(items.subList(0, pageSize));
+            nextCursor = encodeCursor(sortField, asc, items.get(pageSize - 1));
+        }
+        return new DocumentPage(items, nextCursor);
+    }
+
+    private static SFunction<Document, ?> sortColumn(String sortField) {
+        if ("createTime".equals(sortField)) {
+            return Document::getCreateTime;
+        }
+        if ("title".equals(sortField)) {
+            return Document::getTitle;
+        }
+        return Document::getUpdateTime;
+    }
+
+    /**
+     * 游标：排序方式和本页最后一条的(排序字段值, id)，JSON后Base64URL编码，对客户端不透明
+     * 排序字段值为NULL时记录n=1，不能用String.valueOf写成字符串"null"（会与标题为"null"的文档混淆）
+     */
+    private String encodeCursor(String sortField, boolean asc, DocumentSummary last) {
+        Object value = "createTime".equals(sortField) ? last.getCreateTime()
+                : "title".equals(sortField) ? last.getTitle() : last.getUpdateTime();
+        Map<String, String> position = new HashMap<>();
+        position.put("s", sortField);
+        position.put("o", asc ? "asc" : "desc");
+        if (value == null) {
+            position.put("v", "");
+            position.put("n", "1");
+        } else {
+            position.put("v", String.valueOf(value));
+        }
+        position.put("id", String.valueOf(last.getId()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(position));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, String> decodeCursor(String cursor) {
+        try {
+            Map<String, String> position = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor),
+                    new TypeReference<Map<String, String>>() {});
+            if (position.get("s") == null || position.get("v") == null || position.get("id") == null) {
+                throw new IllegalArgumentException("无效的分页游标");
+            }
+            return position;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
     @Override
     public Result<?> getCategories(Long userId) {
         try {
-            // 获取所有文档的分类
-            LambdaQueryWrapper<Document> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.select(Document::getCategory)
-                    .groupBy(Document::getCategory);
-                    
-            List<String> categories = documentMapper.selectObjs(queryWrapper).stream()
-                    .filter(Objects::nonNull)
-                    .map(Object::toString)
-                    .collect(Collectors.toList());
-
-            // 按分类名称排序
-            categories.sort(String::compareTo);
-
-            return Result.success(categories); // 返回分类列表
+            // 读取维护好的分类统计（按分类名称排序），不再扫描文档表
+            return Result.success(categoryStatsService.getCategoryNames()); // 返回分类列表
         } catch (Exception e) {
             logger.error("获取文档分类失败，用户ID: {}", userId, e);
             return Result.error("获取文档分类失败：" + e.getMessage());
         }
     }
 
+    @Override
+    public Result<?> getTags(Long userId) {
+        try {
+            return Result.success(categoryStatsService.getTags());
+        } catch (Exception e) {
+            logger.error("获取文档标签失败，用户ID: {}", userId, e);
+            return Result.error("获取文档标签失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 获取文档内容（从数据库读取）
      * @param docId 文档ID
@@ -218,14 +356,61 @@ public class DocumentServiceImpl implements DocumentService {
      */
     @Override
     public Result<String> getContent(Long docId, Long userId) {
+        Result<Map<String, Object>> result = getContentWithVersion(docId, userId);
+        if (result.getCode() != 200) {
+            return Result.error(result.getCode(), result.getMessage());
+        }
+        return Result.success((String) result.getData().get("content"));
+    }
+
+    /**
+     * 获取文档内容的ETag，不读取内容（条件请求使用）
+     * 正在编辑的文档使用实时版本，冷文档使用保存时维护的内容哈希
+     * @return ETag，旧数据尚无内容哈希时为null（此时应返回完整内容）
+     */
+    @Override
+    public Result<String> getContentTag(Long docId, Long userId) {
         try {
-            logger.debug("获取文档内容，docId: {}, userId: {}", docId, userId);
-            // 1. 查询文档信息（验证文档是否存在）
-            Document document = documentMapper.selectById(docId);
-            if (document == null) {
-                logger.debug("文档不存在或已被删除，docId: {}", docId);
+            LiveDocument liveDocument = liveDocumentRegistry.get(docId);
+            String liveTag = liveDocument != null ? liveDocument.etag() : null;
+            DocumentMetaCache.Meta meta = documentMetaCache.get(docId);
+            if (meta == null) {
                 return Result.error(404, "文档不存在或已被删除");
             }
+            if (!docPermissionService.hasViewPermission(docId, userId)) {
+                return Result.error(403, "您没有权限查看此文档");
+            }
+            if (liveTag != null) {
+                return Result.success(liveTag);
+            }
+            return Result.success(meta.contentHash() != null ? "\"" + meta.contentHash() + "\"" : null);
+        } catch (Exception e) {
+            logger.error("获取文档ETag失败，文档ID: {}", docId, e);
+            return Result.error("获取文档ETag失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取文档内容及版本
+     * 正在编辑的文档直接读取在线文档的实时内容和版本，只有冷文档才从数据库读取（版本为0）
+     * @param docId 文档ID
+     * @param userId 用户ID
+     * @return content、version，以及表示是否为实时内容的live
+     */
+    @Override
+    public Result<Map<String, Object>> getContentWithVersion(Long docId, Long userId) {
+        try {
+            logger.debug("获取文档内容，docId: {}, userId: {}", docId, userId);
+            // 1. 正在编辑的文档读取实时内容，否则查询文档信息（验证文档是否存在）
+            LiveDocument.Snapshot live = liveDocumentRegistry.snapshot(docId);
+            Document document = null;
+            if (live == null) {
+                document = documentLoader.load(docId);
+                if (document == null) {
+                    logger.debug("文档不存在或已被删除，docId: {}", docId);
+                    return Result.error(404, "文档不存在或已被删除");
+                }
+            }
             
             // 2. 检查查看权限
             if (!docPermissionService.hasViewPermission(docId, userId)) {
@@ -233,12 +418,23 @@ public class DocumentServiceImpl implements DocumentService {
                 return Result.error(403, "您没有权限查看此文档");
             }
 
-            logger.debug("获取到文档对象：{}", document);
-            logger.debug("文档ID: {}, 标题: {}, content: {}", document.getId(), document.getTitle(), document.getContent());
-
-            // 3. 直接从数据库读取文档内容（暂时不使用MinIO）
-            String content = document.getContent();
-            logger.debug("从文档对象中获取到的content: {}", content);
+            // 3. 实时内容优先，冷文档直接从数据库读取（暂时不使用MinIO）
+            Map<String, Object> data = new HashMap<>();
+            if (live != null) {
+                data.put("content", live.content());
+                data.put("version", live.version());
+                data.put("live", true);
+                data.put("etag", live.etag());
+            } else {
+                String content = contentStore.get(document);
+                data.put("content", content);
+                data.put("version", 0);
+                data.put("live", false);
+                // 旧数据尚未保存content_hash时按内容计算，格式一致
+                String hash = document.getContentHash() != null ? document.getContentHash()
+                        : DocumentContentStore.sha256(content.getBytes(StandardCharsets.UTF_8));
+                data.put("etag", "\"" + hash + "\"");
+            }
             
             // 4. 记录操作日志
             try {
@@ -257,17 +453,60 @@ public class DocumentServiceImpl implements DocumentService {
                 logger.error("记录操作日志失败: {}", e.getMessage());
             }
 
-            Result<String> result = Result.success(content);
-            logger.debug("返回的Result对象：{}", result);
-            logger.debug("Result对象的data字段：{}", result.getData());
-
-            return result; // 返回文档内容
+            return Result.success(data); // 返回文档内容
         } catch (Exception e) {
             logger.error("获取文档内容失败：", e);
             return Result.error("获取文档内容失败：" + e.getMessage());
         }
     }
 
+    /**
+     * 获取文档统计
+     * 正在编辑的文档直接读取随每次修改增量维护的统计，只有冷文档才读取数据库内容全量统计一次（版本为0）
+     * @param docId 文档ID
+     * @param userId 用户ID
+     * @return length、characters、charactersNoSpaces、words、headings、version和live
+     */
+    @Override
+    public Result<Map<String, Object>> getStats(Long docId, Long userId) {
+        try {
+            LiveDocument live = liveDocumentRegistry.get(docId);
+            Map<String, Object> stats = live != null ? live.stats() : null;
+            Document document = null;
+            if (stats == null) {
+                document = documentLoader.load(docId);
+                if (document == null) {
+                    return Result.error(404, "文档不存在或已被删除");
+                }
+            }
+
+            if (!docPermissionService.hasViewPermission(docId, userId)) {
+                return Result.error(403, "您没有权限查看此文档");
+            }
+
+            if (stats != null) {
+                stats.put("live", true);
+            } else {
+                stats = DocumentStats.summarize(contentStore.get(document));
+                stats.put("version", 0);
+                stats.put("live", false);
+            }
+            return Result.success(stats);
+        } catch (Exception e) {
+            logger.error("获取文档统计失败，docId: {}", docId, e);
+            return Result.error("获取文档统计失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 读取用于导出的文档内容：正在编辑的文档使用实时内容
+     */
+    private String resolveContent(Document document) {
+        LiveDocument.Snapshot live = liveDocumentRegistry.snapshot(document.getId());
+        return live != null ? live.content() : contentStore.get(document);
+    }
+
+
     /**
      * 保存文档内容（直接保存在数据库中）
      * @param docId 文档ID
@@ -277,9 +516,9 @@ public class DocumentServiceImpl implements DocumentService {
     @Override
     public Result<?> saveContent(Long docId, String content, Long userId) {
         try {
-            // 1. 验证文档是否存在
-            Document document = documentMapper.selectById(docId);
-            if (document == null) {
+            // 1. 验证文档是否存在（读取元数据缓存，不读取正文）
+            DocumentMetaCache.Meta meta = documentMetaCache.get(docId);
+            if (meta == null) {
                 return Result.error(404, "文档不存在或已被删除");
             }
 
@@ -288,13 +527,19 @@ public class DocumentServiceImpl implements DocumentService {
                 return Result.error(403, "您没有权限修改此文档");
             }
 
-            // 3. 直接将内容保存在数据库中（暂时不使用MinIO）
-            document.setContent(content);
-            document.setUpdateTime(LocalDateTime.now());
-            documentMapper.updateById(document);
+            // 3. 保存内容：小内容内联在数据库中，大内容外置到MinIO；只更新内容相关字段
+            // 文档正在编辑时同时替换实时内容并通知在线用户，否则内容接口和导出仍返回旧的实时内容
+            documentWebSocketHandler.replaceStoredContent(docId, content, userId, () -> {
+                Document document = new Document();
+                document.setId(docId);
+                contentStore.write(document, content);
+                document.setUpdateTime(LocalDateTime.now());
+                documentMapper.updateById(document);
+                eventPublisher.publishEvent(new DocumentMetaCache.DocumentChanged(docId));
+            });
             
             // 4. 自动创建文档版本（使用默认版本名称）
-            documentVersionService.createVersion(docId, content, null, "自动保存版本", document.getOwnerId());
+            documentVersionService.createVersion(docId, content, null, "自动保存版本", meta.ownerId());
             
             // 5. 记录操作日志
             try {
@@ -319,7 +564,27 @@ public class DocumentServiceImpl implements DocumentService {
         }
     }
 
+    /**
+     * 持久化在线文档的实时内容（停机排空等系统流程调用，不做权限检查、不创建版本）
+     * 只更新内容和更新时间，不先查询文档
+     * 内容会整体覆盖数据库中的正文，只能传入LiveDocument.takeDirtySnapshot()取出的已初始化内容
+     * @param docId 文档ID
+     * @param content 实时内容
+     * @return 是否更新成功（文档已被删除时返回false）
+     */
+    @Override
+    public boolean persistLiveContent(Long docId, String content) {
+        Document document = new Document();
+        document.setId(docId);
+        contentStore.write(document, content);
+        document.setUpdateTime(LocalDateTime.now());
+        boolean updated = documentMapper.updateById(document) > 0;
+        eventPublisher.publishEvent(new DocumentMetaCache.DocumentChanged(docId));
+        return updated;
+    }
+
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public Result<?> importWord(MultipartFile file, Long userId, String category) {
         try {
             String content = "";
@@ -349,9 +614,10 @@ public class DocumentServiceImpl implements DocumentService {
             Document document = new Document();
             document.setTitle(fileName.replaceFirst(".[^.]+$", ""));
             document.setOwnerId(userId);
-            document.setContent(content);
+            contentStore.write(document, content);
             document.setCategory(category);
             documentMapper.insert(document);
+            categoryStatsService.documentAdded(category, null);
             
             return Result.success(document);
         } catch (Exception e) {
@@ -360,6 +626,7 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public Result<?> importPdf(MultipartFile file, Long userId, String category) {
         try {
             // 使用PDFBox提取PDF内容
@@ -372,13 +639,14 @@ public class DocumentServiceImpl implements DocumentService {
                 // 创建新文档
                 Document doc = new Document();
                 doc.setTitle(file.getOriginalFilename().replaceFirst(".[^.]+$", ""));
-                doc.setContent(content);
+                contentStore.write(doc, content);
                 doc.setOwnerId(userId);
                 doc.setCategory(category);
                 doc.setCreateTime(LocalDateTime.now());
                 doc.setUpdateTime(LocalDateTime.now());
                 
                 documentMapper.insert(doc);
+                categoryStatsService.documentAdded(category, null);
                 
                 return Result.success(doc);
             } finally {
@@ -392,37 +660,29 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
-    public Result<?> exportWord(Long docId, Long userId) {
-        try {
-            // 共享模式下，所有用户都有权限导出
-            // if (!docPermissionService.hasViewPermission(docId, userId)) {
-            //     logger.error("导出失败：用户无权限查看该文档，文档ID: {}, 用户ID: {}", docId, userId);
-            //     return Result.error("无权限查看该文档");
-            // }
-            
-            // 获取文档信息
-            Document document = documentMapper.selectById(docId);
-            if (document == null) {
-                return Result.error("文档不存在或已被删除");
-            }
-            
-            // 创建Word文档
-            XWPFDocument doc = new XWPFDocument();
-            
-            // 添加内容
+    public Result<?> exportWord(Long docId, Long userId, ExportTarget target) {
+        // 共享模式下，所有用户都有权限导出
+        // if (!docPermissionService.hasViewPermission(docId, userId)) {
+        //     logger.error("导出失败：用户无权限查看该文档，文档ID: {}, 用户ID: {}", docId, userId);
+        //     return Result.error("无权限查看该文档");
+        // }
+
+        // 获取文档信息
+        Document document = documentLoader.load(docId);
+        if (document == null) {
+            return Result.error(404, "文档不存在或已被删除");
+        }
+
+        // 创建Word文档并直接写入输出流，不再经过字节数组中转
+        try (XWPFDocument doc = new XWPFDocument()) {
             XWPFParagraph paragraph = doc.createParagraph();
             XWPFRun run = paragraph.createRun();
-            run.setText(document.getContent());
-            
-            // 将文档转换为字节数组
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            run.setText(resolveContent(document));
+
+            OutputStream out = target.open(document.getTitle() + ".docx");
             doc.write(out);
-            out.close();
-            doc.close();
-            
-            // 构建结果
-            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
-            return Result.successWithMessage(document.getTitle() + ".docx", in);
+            out.flush();
+            return Result.success();
         } catch (Exception e) {
             logger.error("Word文档导出失败，文档ID: {}", docId, e);
             return Result.error("Word文档导出失败：" + e.getMessage());
@@ -430,34 +690,30 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
-    public Result<?> exportPdf(Long docId, String content, Long userId) {
+    public Result<?> exportPdf(Long docId, String content, Long userId, ExportTarget target) {
+        // 检查用户是否有查看权限
+        if (!docPermissionService.hasViewPermission(docId, userId)) {
+            logger.error("导出失败：用户无权限查看该文档，文档ID: {}, 用户ID: {}", docId, userId);
+            return Result.error(403, "无权限查看该文档");
+        }
+
+        // 获取文档信息
+        Document document = documentLoader.load(docId);
+        if (document == null) {
+            return Result.error(404, "文档不存在或已被删除");
+        }
+
         try {
-            // 检查用户是否有查看权限
-            if (!docPermissionService.hasViewPermission(docId, userId)) {
-                logger.error("导出失败：用户无权限查看该文档，文档ID: {}, 用户ID: {}", docId, userId);
-                return Result.error("无权限查看该文档");
-            }
-            
-            // 获取文档信息
-            Document document = documentMapper.selectById(docId);
-            if (document == null) {
-                return Result.error("文档不存在或已被删除");
-            }
-            
-            // 如果没有提供内容，使用文档当前内容
+            // 如果没有提供内容，使用文档当前内容（正在编辑时为实时内容）
             if (content == null) {
-                content = document.getContent();
+                content = resolveContent(document);
             }
-            
-            // 由于PDFBox 3.0 API变化较大，这里简化实现
-            // 直接返回文本内容，前端可以使用更适合的库来生成PDF
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            out.write(content.getBytes());
-            out.close();
-            
-            // 构建结果
-            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
-            return Result.successWithMessage(document.getTitle() + ".pdf", in);
+
+            // 排版生成PDF并直接写入输出流
+            OutputStream out = target.open(document.getTitle() + ".pdf");
+            pdfExporter.write(document.getTitle(), content, out);
+            out.flush();
+            return Result.success();
         } catch (Exception e) {
             logger.error("PDF文档导出失败，文档ID: {}", docId, e);
             return Result.error("PDF文档导出失败：" + e.getMessage());
@@ -479,7 +735,7 @@ public class DocumentServiceImpl implements DocumentService {
             }
 
             // 1. 验证文档是否存在
-            Document document = documentMapper.selectById(docId);
+            DocumentMetaCache.Meta document = documentMetaCache.get(docId);
             if (document == null) {
                 return Result.error("文档不存在或已被删除");
             }
@@ -489,23 +745,14 @@ public class DocumentServiceImpl implements DocumentService {
             //     return Result.error("您没有权限删除此文档，只有文档所有者可以删除");
             // }
 
-            LambdaQueryWrapper<DocumentVersion> vq = new LambdaQueryWrapper<>();
-            vq.eq(DocumentVersion::getDocId, docId);
-            documentVersionMapper.delete(vq);
-            
-            LambdaQueryWrapper<com.collab.collab_editor_backend.entity.DocPermission> pq = new LambdaQueryWrapper<>();
-            pq.eq(com.collab.collab_editor_backend.entity.DocPermission::getDocId, docId);
-            docPermissionMapper.delete(pq);
-            
-            LambdaQueryWrapper<Task> tq = new LambdaQueryWrapper<>();
-            tq.eq(Task::getDocId, docId);
-            taskMapper.delete(tq);
-            
-            LambdaQueryWrapper<Comment> cq = new LambdaQueryWrapper<>();
-            cq.eq(Comment::getDocId, docId);
-            commentMapper.delete(cq);
-            
-            documentMapper.deleteById(docId);
+            // 3. 标记删除：文档立即从所有查询中消失；版本、权限、任务和评论由后台任务分批清理，
+            //    避免数万个自动保存版本在一个事务里删除时长时间持有锁
+            if (documentMapper.deleteById(docId) == 0) {
+                return Result.error("文档不存在或已被删除");
+            }
+            documentPurgeService.schedule(docId);
+            categoryStatsService.documentRemoved(document.category(), document.tags());
+            eventPublisher.publishEvent(new DocumentMetaCache.DocumentChanged(docId));
             
             // 4. 记录操作日志
             try {
@@ -542,7 +789,7 @@ public class DocumentServiceImpl implements DocumentService {
      * @param sortOrder 排序顺序
      */
     @Override
-    public Result<?> search(Long userId, String keyword, String tags, String author, LocalDateTime startTime, LocalDateTime endTime, String sortField, String sortOrder, String category, String scope) {
+    public Result<DocumentPage> search(Long userId, String keyword, String tags, String author, LocalDateTime startTime, LocalDateTime endTime, String sortField, String sortOrder, String category, String scope, String cursor, Integer limit) {
         try {
             // 共享模式下，不需要过滤权限
             // 获取用户有权限访问的所有文档ID列表
@@ -574,6 +821,7 @@ public class DocumentServiceImpl implements DocumentService {
             */
 
             // 添加关键字搜索条件（支持范围）
+            // 外置存储的大内容content列为空，内容搜索同时匹配search_text列中的纯文本副本
             if (StringUtils.hasText(keyword)) {
                 final String searchKeyword = keyword.trim();
                 String useScope = (scope != null ? scope : "all").toLowerCase();
@@ -585,12 +833,16 @@ public class DocumentServiceImpl implements DocumentService {
                         queryWrapper.like(Document::getTitle, searchKeyword);
                         break;
                     case "content":
-                        queryWrapper.like(Document::getContent, searchKeyword);
+                        queryWrapper.and(wrapper ->
+                            wrapper.like(Document::getContent, searchKeyword)
+                                   .or().like(Document::getSearchText, searchKeyword)
+                        );
                         break;
                     default:
                         queryWrapper.and(wrapper ->
                             wrapper.like(Document::getTitle, searchKeyword)
                                    .or().like(Document::getContent, searchKeyword)
+                                   .or().like(Document::getSearchText, searchKeyword)
                         );
                         break;
                 }
@@ -608,7 +860,7 @@ public class DocumentServiceImpl implements DocumentService {
                 userQuery.like(User::getUsername, author.trim());
                 List<User> users = userMapper.selectList(userQuery);
                 if (users.isEmpty()) {
-                    return Result.success(new ArrayList<>()); // 找不到作者，直接返回空
+                    return Result.success(new DocumentPage(new ArrayList<>(), null)); // 找不到作者，直接返回空
                 }
                 List<Long> authorIds = users.stream().map(User::getId).collect(Collectors.toList());
                 queryWrapper.in(Document::getOwnerId, authorIds);
@@ -637,21 +889,14 @@ public class DocumentServiceImpl implements DocumentService {
                 );
             }
 
-            // 排序处理
+            // 排序处理：支持updateTime（默认）、createTime、title，按(排序字段, id)游标分页
             boolean isAsc = "asc".equalsIgnoreCase(sortOrder);
-            if ("createTime".equals(sortField)) {
-                queryWrapper.orderBy(true, isAsc, Document::getCreateTime);
-            } else if ("title".equals(sortField)) {
-                queryWrapper.orderBy(true, isAsc, Document::getTitle);
-            } else {
-                // 默认按更新时间排序
-                queryWrapper.orderBy(true, isAsc, Document::getUpdateTime);
-            }
-
-            // 执行查询
-            List<Document> documentList = documentMapper.selectList(queryWrapper);
+            String useSortField = "createTime".equals(sortField) || "title".equals(sortField) ? sortField : "updateTime";
 
-            return Result.success(documentList);
+            // 执行查询（只查询摘要，不读取正文）
+            return Result.success(queryPage(queryWrapper, useSortField, isAsc, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return Result.error(400, e.getMessage());
         } catch (Exception e) {
             return Result.error("文档搜索失败：" + e.getMessage());
         }
@@ -7,8 +7,14 @@ import com.collab.collab_editor_backend.mapper.DocumentMapper;
 import com.collab.collab_editor_backend.mapper.DocumentVersionMapper;
 import com.collab.collab_editor_backend.service.DocPermissionService;
 import com.collab.collab_editor_backend.service.DocumentVersionService;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentMetaCache;
 import com.collab.collab_editor_backend.util.Result;
+import com.collab.collab_editor_backend.websocket.DocumentWebSocketHandler;
+import com.collab.collab_editor_backend.websocket.LiveDocument;
+import com.collab.collab_editor_backend.websocket.LiveDocumentRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,6 +35,21 @@ public class DocumentVersionServiceImpl implements DocumentVersionService {
     
     @Autowired
     private DocPermissionService docPermissionService;
+
+    @Autowired
+    private DocumentContentStore contentStore;
+
+    @Autowired
+    private DocumentMetaCache documentMetaCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private LiveDocumentRegistry liveDocumentRegistry;
+
+    @Autowired
+    private DocumentWebSocketHandler documentWebSocketHandler;
     
     /**
      * 创建文档版本
@@ -39,7 +60,7 @@ public class DocumentVersionServiceImpl implements DocumentVersionService {
     public Result<?> createVersion(Long docId, String content, String versionName, String description, Long userId) {
         try {
             // 验证文档是否存在
-            Document document = documentMapper.selectById(docId);
+            DocumentMetaCache.Meta document = documentMetaCache.get(docId);
             if (document == null) {
                 return Result.error("文档不存在或已被删除");
             }
@@ -91,13 +112,13 @@ public class DocumentVersionServiceImpl implements DocumentVersionService {
     public Result<List<DocumentVersion>> getVersionsByDocId(Long docId) {
         try {
             // 验证文档是否存在
-            Document document = documentMapper.selectById(docId);
+            DocumentMetaCache.Meta document = documentMetaCache.get(docId);
             if (document == null) {
                 return Result.error("文档不存在或已被删除");
             }
             
             // 检查用户是否有查看权限
-            if (!docPermissionService.hasViewPermission(docId, document.getOwnerId())) {
+            if (!docPermissionService.hasViewPermission(docId, document.ownerId())) {
                 return Result.error("您没有权限查看此文档的版本");
             }
             
@@ -156,13 +177,18 @@ public class DocumentVersionServiceImpl implements DocumentVersionService {
                 return Result.error("您没有权限回滚文档版本");
             }
             
-            // 3. 保存当前文档内容为新版本（回滚前的版本）
-            createVersion(docId, document.getContent(), "回滚前版本", "在回滚到版本 " + targetVersion.getVersionNumber() + " 前创建", userId);
-            
-            // 4. 更新文档内容为指定版本的内容
-            document.setContent(targetVersion.getContent());
-            document.setUpdateTime(LocalDateTime.now());
-            documentMapper.updateById(document);
+            // 3、4. 在文档锁内保存当前内容为新版本（回滚前的版本），再把文档内容更新为指定版本的内容；
+            // 文档正在编辑时回滚前版本取实时内容（含尚未保存的修改），回滚后实时内容同步替换并通知在线用户
+            documentWebSocketHandler.replaceStoredContent(docId, targetVersion.getContent(), userId, () -> {
+                LiveDocument.Snapshot live = liveDocumentRegistry.snapshot(docId);
+                String current = live != null ? live.content() : contentStore.get(document);
+                createVersion(docId, current, "回滚前版本", "在回滚到版本 " + targetVersion.getVersionNumber() + " 前创建", userId);
+
+                contentStore.write(document, targetVersion.getContent());
+                document.setUpdateTime(LocalDateTime.now());
+                documentMapper.updateById(document);
+                eventPublisher.publishEvent(new DocumentMetaCache.DocumentChanged(docId));
+            });
             
             // 5. 创建回滚后的新版本记录
             createVersion(docId, targetVersion.getContent(), "回滚到版本 " + targetVersion.getVersionNumber(), "从版本 " + targetVersion.getVersionNumber() + " 回滚", userId);
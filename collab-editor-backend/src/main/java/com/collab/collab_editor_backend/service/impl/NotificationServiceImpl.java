@@ -222,8 +222,8 @@ public class NotificationServiceImpl extends ServiceImpl<NotificationMapper, Not
         try {
             // 构建通知消息
             String notificationJson = objectMapper.writeValueAsString(notification);
-            // 使用ChatWebSocketHandler的sendMessageToUser方法发送通知
-            ChatWebSocketHandler.sendMessageToUser(notification.getUserId(), notificationJson);
+            // 推送到notifications通道（兼容仍通过聊天连接接收通知的旧版客户端）
+            ChatWebSocketHandler.sendNotificationToUser(notification.getUserId(), notificationJson);
             logger.info("向用户 {} 推送通知成功", notification.getUserId());
         } catch (Exception e) {
             logger.error("向用户 {} 推送通知失败: {}", notification.getUserId(), notification, e);
@@ -0,0 +1,140 @@
+package com.collab.collab_editor_backend.util;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 文本压缩类型处理器
+ * 写入时把不少于MIN_CHARS个字符的正文用Deflate（最快级别）压缩，加格式头后Base64编码存入原TEXT列，
+ * 压缩后节省不到10%时保持原文；读取时按格式头透明解压，没有格式头的旧数据原样返回。
+ * 格式头以控制字符\u0001开头，正常文本不会以它开头
+ */
+public class CompressedTextTypeHandler extends BaseTypeHandler<String> {
+
+    // 格式头：D表示Deflate，1为格式版本
+    static final String HEADER = "\u0001D1:";
+    private static final int MIN_CHARS = 512;
+
+    // 统计（监控接口使用）
+    private static final AtomicLong COMPRESSED_WRITES = new AtomicLong();
+    private static final AtomicLong RAW_WRITES = new AtomicLong();
+    private static final AtomicLong ORIGINAL_BYTES = new AtomicLong();
+    private static final AtomicLong STORED_BYTES = new AtomicLong();
+    private static final AtomicLong DECODES = new AtomicLong();
+    private static final AtomicLong DECODE_NANOS = new AtomicLong();
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) throws SQLException {
+        ps.setString(i, encode(parameter));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return decode(rs.getString(columnName));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return decode(rs.getString(columnIndex));
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return decode(cs.getString(columnIndex));
+    }
+
+    /**
+     * 编码：足够长且压缩有效时返回带格式头的压缩文本，否则返回原文
+     */
+    public static String encode(String text) {
+        if (text == null || text.length() < MIN_CHARS || text.startsWith(HEADER)) {
+            return text;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3 + 64);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        String encoded = HEADER + Base64.getEncoder().encodeToString(out.toByteArray());
+        ORIGINAL_BYTES.addAndGet(raw.length);
+        if (encoded.length() > raw.length * 0.9) {
+            RAW_WRITES.incrementAndGet();
+            STORED_BYTES.addAndGet(raw.length);
+            return text;
+        }
+        COMPRESSED_WRITES.incrementAndGet();
+        STORED_BYTES.addAndGet(encoded.length());
+        return encoded;
+    }
+
+    /**
+     * 解码：带格式头的解压，其余原样返回
+     */
+    public static String decode(String stored) {
+        if (stored == null || !stored.startsWith(HEADER)) {
+            return stored;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = Base64.getDecoder().decode(stored.substring(HEADER.length()));
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 4);
+        try {
+            inflater.setInput(compressed);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("压缩内容已损坏");
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩内容已损坏", e);
+        } finally {
+            inflater.end();
+        }
+        String text = out.toString(StandardCharsets.UTF_8);
+        DECODES.incrementAndGet();
+        DECODE_NANOS.addAndGet(System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * 压缩统计：写入时的原始字节数与实际存储字节数、解压次数与平均耗时
+     */
+    public static Map<String, Object> status() {
+        long original = ORIGINAL_BYTES.get();
+        long decodes = DECODES.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("compressedWrites", COMPRESSED_WRITES.get());
+        status.put("rawWrites", RAW_WRITES.get());
+        status.put("originalBytes", original);
+        status.put("storedBytes", STORED_BYTES.get());
+        status.put("ratio", original == 0 ? 1.0 : (double) STORED_BYTES.get() / original);
+        status.put("decodes", decodes);
+        status.put("avgDecodeMicros", decodes == 0 ? 0.0 : DECODE_NANOS.get() / 1000.0 / decodes);
+        return status;
+    }
+}
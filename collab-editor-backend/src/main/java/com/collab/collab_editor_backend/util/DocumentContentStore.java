@@ -0,0 +1,261 @@
+package com.collab.collab_editor_backend.util;
+
+import com.collab.collab_editor_backend.entity.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文档内容分层存储
+ * 不超过inline-max-bytes（UTF-8字节数）的内容直接存在t_document.content中；更大的内容按SHA-256内容寻址
+ * 存入MinIO（MinIO不可用或配置为local时存到本地目录），content置空、minio_key记录存储位置，
+ * 避免数MB的大字段挤占数据库缓冲池。读取经过按字节数限制的LRU缓存，同一key的并发未命中只读取一次
+ * 内容寻址的对象不可变，缓存无需失效；相同内容的文档共享同一对象
+ */
+@Component
+public class DocumentContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentContentStore.class);
+
+    // 本地存储的key前缀，其余key都在MinIO中
+    private static final String LOCAL_PREFIX = "local:";
+    private static final String KEY_PREFIX = "docs/sha256/";
+    // 列表预览的最大字符数
+    private static final int PREVIEW_CHARS = 100;
+
+    /**
+     * 写入结果：两个字段都不为null（MyBatis-Plus的updateById会跳过null字段），
+     * 内联时key为空串，外置时content为空串
+     * @param content 写入content列的内容
+     * @param key 写入minio_key列的存储位置
+     */
+    public record Stored(String content, String key) {
+    }
+
+    @Autowired
+    private MinIOUtil minIOUtil;
+
+    @Value("${collab.content.inline-max-bytes:16384}")
+    private int inlineMaxBytes;
+    // minio：外置内容存MinIO，失败时回退到本地目录；local：只使用本地目录
+    @Value("${collab.content.backend:minio}")
+    private String backend;
+    @Value("${collab.content.local-dir:uploads/doc-content}")
+    private String localDir;
+    @Value("${collab.content.cache-max-bytes:67108864}")
+    private long cacheMaxBytes;
+    // 外置内容写入search_text列的纯文本最大字符数，超出部分搜索不到
+    @Value("${collab.content.search-text-max-chars:262144}")
+    private int searchTextMaxChars;
+
+    // 按访问顺序排列的缓存（key -> 内容），权重为内容的字符数*2
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private final SingleFlight<String, String> reads = new SingleFlight<>();
+
+    /**
+     * 写入内容，返回应保存到文档行的content和minio_key
+     */
+    public Stored put(String content) {
+        String value = content != null ? content : "";
+        // 每个字符的UTF-8编码最多3字节，明显很小的内容不必编码
+        if ((long) value.length() * 3 <= inlineMaxBytes) {
+            return new Stored(value, "");
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return put(value, bytes, sha256(bytes));
+    }
+
+    private Stored put(String value, byte[] bytes, String hash) {
+        if (bytes.length <= inlineMaxBytes) {
+            return new Stored(value, "");
+        }
+
+        String objectKey = KEY_PREFIX + hash + ".txt";
+        String key = writeExternal(objectKey, bytes);
+        cachePut(key, value);
+        return new Stored("", key);
+    }
+
+    /**
+     * 设置文档行的内容相关字段：content、minio_key，列表使用的content_size和preview，用作ETag的content_hash，
+     * 以及内容搜索使用的search_text（外置内容的content列为空，搜索改查这一列）
+     */
+    public void write(Document document, String content) {
+        String value = content != null ? content : "";
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        String hash = sha256(bytes);
+        Stored stored = put(value, bytes, hash);
+        document.setContent(stored.content());
+        document.setMinioKey(stored.key());
+        document.setContentHash(hash);
+        document.setContentSize(value.length());
+        document.setPreview(plainText(value, PREVIEW_CHARS));
+        document.setSearchText(stored.key().isEmpty() ? "" : searchText(value));
+    }
+
+    /**
+     * 外置内容写入search_text列的纯文本：去掉标签、合并空白，最多searchTextMaxChars个字符
+     */
+    public String searchText(String content) {
+        return plainText(content != null ? content : "", searchTextMaxChars);
+    }
+
+    /**
+     * 读取文档内容：minio_key为空时返回content列
+     */
+    public String get(Document document) {
+        return get(document.getContent(), document.getMinioKey());
+    }
+
+    /**
+     * 读取内容
+     * @param inline content列
+     * @param key minio_key列
+     */
+    public String get(String inline, String key) {
+        if (key == null || key.isEmpty()) {
+            return inline;
+        }
+        String cached = cacheGet(key);
+        if (cached != null) {
+            return cached;
+        }
+        return reads.load(key, () -> {
+            String value = readExternal(key);
+            cachePut(key, value);
+            return value;
+        });
+    }
+
+    /**
+     * 缓存情况（监控接口使用）
+     */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("cachedEntries", cache.size());
+        status.put("cachedBytes", cachedBytes);
+        status.put("cacheMaxBytes", cacheMaxBytes);
+        status.put("externalReads", reads.executions());
+        status.put("coalescedReads", reads.shared());
+        return status;
+    }
+
+    /**
+     * 写入外部存储，返回带位置前缀的key；内容寻址的对象已存在时不重复上传
+     */
+    private String writeExternal(String objectKey, byte[] bytes) {
+        if (!"local".equalsIgnoreCase(backend)) {
+            try {
+                if (!minIOUtil.exists(objectKey)) {
+                    minIOUtil.putDocContent(objectKey, bytes);
+                }
+                return objectKey;
+            } catch (MinIOUtil.MinioException e) {
+                logger.warn("文档内容上传MinIO失败，将使用本地存储: {}", e.getMessage());
+            }
+        }
+        try {
+            Path path = localPath(objectKey);
+            if (!Files.exists(path)) {
+                Files.createDirectories(path.getParent());
+                // 先写临时文件再原子改名，并发写入相同内容时读取方不会读到半个文件
+                Path temp = Files.createTempFile(path.getParent(), "content", ".tmp");
+                Files.write(temp, bytes);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return LOCAL_PREFIX + objectKey;
+        } catch (IOException e) {
+            throw new UncheckedIOException("文档内容写入本地存储失败", e);
+        }
+    }
+
+    private String readExternal(String key) {
+        try {
+            if (key.startsWith(LOCAL_PREFIX)) {
+                return Files.readString(localPath(key.substring(LOCAL_PREFIX.length())), StandardCharsets.UTF_8);
+            }
+            return minIOUtil.downloadDocContent(key);
+        } catch (IOException | MinIOUtil.MinioException e) {
+            throw new IllegalStateException("文档内容读取失败: " + key, e);
+        }
+    }
+
+    private Path localPath(String objectKey) {
+        return Paths.get(localDir).resolve(objectKey);
+    }
+
+    private synchronized String cacheGet(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void cachePut(String key, String value) {
+        long weight = (long) value.length() * 2;
+        if (weight > cacheMaxBytes || cache.containsKey(key)) {
+            return;
+        }
+        cache.put(key, value);
+        cachedBytes += weight;
+        Iterator<Map.Entry<String, String>> iterator = cache.entrySet().iterator();
+        while (cachedBytes > cacheMaxBytes && iterator.hasNext()) {
+            cachedBytes -= (long) iterator.next().getValue().length() * 2;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 纯文本：去掉标签、合并空白后的前maxChars个字符（预览和搜索共用）
+     */
+    private static String plainText(String content, int maxChars) {
+        StringBuilder sb = new StringBuilder();
+        boolean inTag = false;
+        boolean space = false;
+        for (int i = 0; i < content.length() && sb.length() < maxChars; i++) {
+            char c = content.charAt(i);
+            if (c == '<') {
+                inTag = true;
+            } else if (c == '>' && inTag) {
+                inTag = false;
+                space = sb.length() > 0;
+            } else if (!inTag) {
+                if (Character.isWhitespace(c)) {
+                    space = sb.length() > 0;
+                    continue;
+                }
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.length() > maxChars ? sb.substring(0, maxChars) : sb.toString();
+    }
+
+    /**
+     * 内容的SHA-256（UTF-8编码，十六进制），与content_hash列一致
+     */
+    public static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.collab.collab_editor_backend.util;
+
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.mapper.DocumentMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文档加载器
+ * 按文档ID合并并发的数据库读取：很多人同时打开同一篇冷文档时，内容接口、导出和权限检查
+ * （REST与WebSocket共用）只查询一次数据库，其余请求共享结果
+ * 返回的对象由并发调用方共享，只能读取；需要修改后写回的场景仍应直接查询
+ */
+@Component
+public class DocumentLoader {
+
+    @Autowired
+    private DocumentMapper documentMapper;
+
+    private final SingleFlight<Long, Document> flight = new SingleFlight<>();
+
+    /**
+     * 读取文档，不存在时返回null
+     */
+    public Document load(Long docId) {
+        return flight.load(docId, () -> documentMapper.selectById(docId));
+    }
+
+    /**
+     * 合并情况统计（监控接口使用）
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("loads", flight.executions());
+        status.put("coalesced", flight.shared());
+        status.put("inFlight", flight.inFlight());
+        return status;
+    }
+}
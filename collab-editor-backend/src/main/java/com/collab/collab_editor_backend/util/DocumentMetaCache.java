@@ -0,0 +1,275 @@
+package com.collab.collab_editor_backend.util;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.mapper.DocumentMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文档元数据缓存（读穿透）
+ * 权限检查、保存、建版本、ETag校验等流程只需要文档的所有者、标题、分类、大小、内容位置和哈希，不需要正文；
+ * 这里按文档ID缓存这些字段，一次保存请求不再重复查询同一行。
+ * 第一层是本进程内按条目数限制、带过期时间的LRU；可选第二层Redis，多实例共享并通过频道广播失效。
+ * 文档更新或删除后发布DocumentChanged事件，事务提交后失效对应条目
+ */
+@Component
+public class DocumentMetaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentMetaCache.class);
+
+    private static final String REDIS_KEY_PREFIX = "collab:doc-meta:";
+    private static final String INVALIDATE_CHANNEL = "collab:doc-meta:invalidate";
+
+    /**
+     * 文档元数据
+     * @param contentKey 内容存储位置（minio_key），为空表示内容内联在数据库中
+     * @param contentHash 内容的SHA-256，旧数据尚未计算时为null
+     */
+    public record Meta(Long id, String title, Long ownerId, String category, String tags,
+                       Integer contentSize, String contentKey, String contentHash, LocalDateTime updateTime) {
+    }
+
+    /**
+     * 文档元数据变化事件：更新、回滚、删除文档后发布
+     */
+    public record DocumentChanged(Long docId) {
+    }
+
+    @Autowired
+    private DocumentMapper documentMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+
+    @Autowired
+    private ObjectProvider<RedisConnectionFactory> redisConnectionFactoryProvider;
+
+    @Value("${collab.doc.meta.max-entries:10000}")
+    private int maxEntries;
+    @Value("${collab.doc.meta.ttl-ms:300000}")
+    private long ttlMs;
+    // 是否启用Redis第二层缓存（多实例部署时开启）
+    @Value("${collab.doc.meta.redis-enabled:false}")
+    private boolean redisEnabled;
+    @Value("${collab.doc.meta.redis-ttl-ms:600000}")
+    private long redisTtlMs;
+
+    // 按访问顺序排列（文档ID -> 条目）
+    private final LinkedHashMap<Long, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final SingleFlight<Long, Meta> loads = new SingleFlight<>();
+    // 失效计数：加载期间发生过失效时不缓存加载结果，避免把失效前读到的旧数据放回缓存
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong dbLoads = new AtomicLong();
+
+    private StringRedisTemplate redisTemplate;
+    private RedisMessageListenerContainer listenerContainer;
+
+    @PostConstruct
+    public void init() {
+        if (!redisEnabled) {
+            return;
+        }
+        redisTemplate = redisTemplateProvider.getIfAvailable();
+        RedisConnectionFactory connectionFactory = redisConnectionFactoryProvider.getIfAvailable();
+        if (redisTemplate == null || connectionFactory == null) {
+            logger.warn("未找到Redis配置，文档元数据缓存只使用本地缓存");
+            redisTemplate = null;
+            return;
+        }
+        // 其他实例更新文档后通过频道通知本实例丢弃本地条目
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                evictLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+            } catch (NumberFormatException e) {
+                logger.warn("无效的文档元数据失效消息");
+            }
+        }, new ChannelTopic(INVALIDATE_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * 读取文档元数据，文档不存在时返回null（不存在的结果不缓存）
+     */
+    public Meta get(Long docId) {
+        if (docId == null) {
+            return null;
+        }
+        Meta cached = getLocal(docId);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return loads.load(docId, () -> {
+            long seen = invalidations.get();
+            Meta meta = getRedis(docId);
+            if (meta != null) {
+                redisHits.incrementAndGet();
+            } else {
+                meta = loadFromDb(docId);
+                if (meta != null && invalidations.get() == seen) {
+                    putRedis(meta);
+                }
+            }
+            if (meta != null && invalidations.get() == seen) {
+                putLocal(meta);
+            }
+            return meta;
+        });
+    }
+
+    /**
+     * 文档变化事件：在事务提交后失效（不在事务中发布时立即失效），
+     * 避免并发读取在提交前把旧数据重新放回缓存
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDocumentChanged(DocumentChanged event) {
+        invalidate(event.docId());
+    }
+
+    /**
+     * 失效文档元数据（本地、Redis，并通知其他实例）
+     */
+    public void invalidate(Long docId) {
+        evictLocal(docId);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.delete(REDIS_KEY_PREFIX + docId);
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, String.valueOf(docId));
+        } catch (Exception e) {
+            logger.warn("Redis文档元数据失效失败，文档ID: {}，{}", docId, e.getMessage());
+        }
+    }
+
+    /**
+     * 命中率和数据库读取次数（监控接口使用）
+     */
+    public Map<String, Object> status() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        synchronized (this) {
+            status.put("entries", cache.size());
+        }
+        status.put("maxEntries", maxEntries);
+        status.put("hits", hitCount);
+        status.put("misses", missCount);
+        status.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        status.put("redisEnabled", redisTemplate != null);
+        status.put("redisHits", redisHits.get());
+        status.put("dbLoads", dbLoads.get());
+        status.put("coalescedLoads", loads.shared());
+        status.put("invalidations", invalidations.get());
+        return status;
+    }
+
+    private Meta loadFromDb(Long docId) {
+        dbLoads.incrementAndGet();
+        // 只查询元数据列，不读取正文
+        LambdaQueryWrapper<Document> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Document::getId, Document::getTitle, Document::getOwnerId, Document::getCategory,
+                        Document::getTags, Document::getContentSize, Document::getMinioKey, Document::getContentHash,
+                        Document::getUpdateTime)
+                .eq(Document::getId, docId);
+        Document document = documentMapper.selectOne(queryWrapper);
+        if (document == null) {
+            return null;
+        }
+        return new Meta(document.getId(), document.getTitle(), document.getOwnerId(), document.getCategory(),
+                document.getTags(), document.getContentSize(), document.getMinioKey(), document.getContentHash(),
+                document.getUpdateTime());
+    }
+
+    private synchronized Meta getLocal(Long docId) {
+        Entry entry = cache.get(docId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            cache.remove(docId);
+            return null;
+        }
+        return entry.meta;
+    }
+
+    private synchronized void putLocal(Meta meta) {
+        cache.put(meta.id(), new Entry(meta, System.currentTimeMillis() + ttlMs));
+        if (cache.size() > maxEntries) {
+            cache.remove(cache.keySet().iterator().next());
+        }
+    }
+
+    private void evictLocal(Long docId) {
+        invalidations.incrementAndGet();
+        synchronized (this) {
+            cache.remove(docId);
+        }
+    }
+
+    private Meta getRedis(Long docId) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + docId);
+            return json != null ? objectMapper.readValue(json, Meta.class) : null;
+        } catch (Exception e) {
+            // Redis不可用时退回数据库
+            logger.warn("读取Redis文档元数据失败，文档ID: {}，{}", docId, e.getMessage());
+            return null;
+        }
+    }
+
+    private void putRedis(Meta meta) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + meta.id(), objectMapper.writeValueAsString(meta),
+                    Duration.ofMillis(redisTtlMs));
+        } catch (Exception e) {
+            logger.warn("写入Redis文档元数据失败，文档ID: {}，{}", meta.id(), e.getMessage());
+        }
+    }
+
+    private record Entry(Meta meta, long expiresAt) {
+    }
+}
@@ -8,6 +8,7 @@ import io.minio.MinioClient;
 import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
 import io.minio.GetObjectArgs;
+import io.minio.StatObjectArgs;
 import java.util.UUID;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
@@ -183,6 +184,36 @@ public class MinIOUtil {
         }
     }
 
+    /**
+     * 按指定key上传文档内容（内容寻址存储使用，同一key的内容总是相同）
+     */
+    public void putDocContent(String key, byte[] contentBytes) throws MinioException {
+        try (InputStream inputStream = new ByteArrayInputStream(contentBytes)) {
+            minioClient.putObject(
+                    PutObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(key)
+                            .stream(inputStream, contentBytes.length, -1)
+                            .contentType("text/plain;charset=UTF-8")
+                            .build()
+            );
+        } catch (Exception e) {
+            throw new MinioException("文档内容上传失败", e);
+        }
+    }
+
+    /**
+     * 判断对象是否已存在
+     */
+    public boolean exists(String key) {
+        try {
+            minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(key).build());
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     // 自定义异常类，便于统一处理
     public static class MinioException extends Exception {
         public MinioException(String message, Throwable cause) {
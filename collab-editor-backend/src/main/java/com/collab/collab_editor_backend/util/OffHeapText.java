@@ -0,0 +1,301 @@
+package com.collab.collab_editor_backend.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 堆外文本缓冲区
+ * 文档内容按UTF-16分块存放在直接内存中，堆上只保留块句柄；插入/删除在块内原地移动，
+ * 块由全局池复用，文档关闭时调用release()归还
+ */
+public final class OffHeapText {
+
+    // 每块容量（字符数），即8KB直接内存
+    private static final int CHUNK_CHARS = 4096;
+    // 池中最多保留的空闲块数，超出的块交由GC回收
+    private static final int MAX_POOLED_CHUNKS = 4096;
+
+    private static final Queue<CharBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+    // 已申请的直接内存字节数（含池中空闲块）
+    private static final AtomicLong RESERVED_BYTES = new AtomicLong();
+    // 移动块内数据用的临时数组：前半段存放被移动的尾部，后半段存放待写入的文本
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[CHUNK_CHARS * 2]);
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private int length;
+    private boolean released;
+
+    public OffHeapText() {
+    }
+
+    public OffHeapText(String content) {
+        insert(0, content);
+    }
+
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * 在指定位置插入文本，位置超出范围时截断到内容两端
+     */
+    public synchronized void insert(int position, String text) {
+        if (released || text == null || text.isEmpty()) {
+            return;
+        }
+        int pos = Math.max(0, Math.min(position, length));
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(acquireChunk()));
+        }
+
+        // 定位插入点所在的块（位于块边界时取前一块的末尾）
+        int index = 0;
+        int offset = pos;
+        while (index < chunks.size() - 1 && offset > chunks.get(index).length) {
+            offset -= chunks.get(index).length;
+            index++;
+        }
+
+        Chunk chunk = chunks.get(index);
+        char[] scratch = SCRATCH.get();
+        int n = text.length();
+        int tail = chunk.length - offset;
+        chunk.buffer.get(offset, scratch, 0, tail);
+
+        if (chunk.length + n <= CHUNK_CHARS) {
+            // 块内放得下：尾部后移，原地写入
+            text.getChars(0, n, scratch, CHUNK_CHARS);
+            chunk.buffer.put(offset, scratch, CHUNK_CHARS, n);
+            chunk.buffer.put(offset + n, scratch, 0, tail);
+            chunk.length += n;
+        } else {
+            // 放不下：截断当前块，依次写入文本和原尾部，写满的块后面插入新块
+            chunk.length = offset;
+            for (int src = 0; src < n; src += CHUNK_CHARS) {
+                int piece = Math.min(CHUNK_CHARS, n - src);
+                text.getChars(src, src + piece, scratch, CHUNK_CHARS);
+                index = write(index, scratch, CHUNK_CHARS, piece);
+            }
+            index = write(index, scratch, 0, tail);
+            mergeWithNext(index);
+        }
+        length += n;
+    }
+
+    /**
+     * 删除从指定位置开始的count个字符，超出内容的部分忽略
+     */
+    public synchronized void delete(int position, int count) {
+        int start = Math.max(0, position);
+        int end = Math.min(position + count, length);
+        if (released || start >= end) {
+            return;
+        }
+
+        int index = 0;
+        int chunkStart = 0;
+        int firstTouched = -1;
+        while (index < chunks.size() && chunkStart < end) {
+            Chunk chunk = chunks.get(index);
+            int originalLength = chunk.length;
+            int from = Math.max(start, chunkStart) - chunkStart;
+            int to = Math.min(end, chunkStart + originalLength) - chunkStart;
+            chunkStart += originalLength;
+            if (from >= to) {
+                index++;
+                continue;
+            }
+            if (firstTouched < 0) {
+                firstTouched = index;
+            }
+            removeRange(chunk, from, to);
+            if (chunk.length == 0) {
+                releaseChunk(chunks.remove(index).buffer);
+            } else {
+                index++;
+            }
+        }
+        length -= end - start;
+
+        // 删除后与相邻块合并，避免碎片化
+        if (firstTouched >= 0) {
+            int next = Math.min(firstTouched, chunks.size() - 1);
+            mergeWithNext(next);
+            mergeWithNext(next - 1);
+        }
+    }
+
+    /**
+     * 整体替换内容
+     */
+    public synchronized void replace(String content) {
+        if (released) {
+            return;
+        }
+        releaseChunks();
+        insert(0, content);
+    }
+
+    /**
+     * 复制出内容字符串（发送快照、持久化时使用）
+     */
+    @Override
+    public synchronized String toString() {
+        if (length == 0) {
+            return "";
+        }
+        char[] out = new char[length];
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            chunk.buffer.get(0, out, pos, chunk.length);
+            pos += chunk.length;
+        }
+        return new String(out);
+    }
+
+    /**
+     * 复制出[start, end)范围的内容，范围超出时截断到内容两端
+     */
+    public synchronized String substring(int start, int end) {
+        int from = Math.max(0, start);
+        int to = Math.min(end, length);
+        if (from >= to) {
+            return "";
+        }
+        char[] out = new char[to - from];
+        int chunkStart = 0;
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            int chunkEnd = chunkStart + chunk.length;
+            if (chunkEnd > from) {
+                int begin = Math.max(from, chunkStart) - chunkStart;
+                int count = Math.min(to, chunkEnd) - chunkStart - begin;
+                chunk.buffer.get(begin, out, pos, count);
+                pos += count;
+            }
+            chunkStart = chunkEnd;
+            if (chunkStart >= to) {
+                break;
+            }
+        }
+        return new String(out);
+    }
+
+    /**
+     * 释放全部块，之后的读写均为空操作
+     */
+    public synchronized void release() {
+        releaseChunks();
+        released = true;
+    }
+
+    /**
+     * 已申请的直接内存字节数
+     */
+    public static long reservedBytes() {
+        return RESERVED_BYTES.get();
+    }
+
+    /**
+     * 池中空闲块数
+     */
+    public static int pooledChunks() {
+        return POOLED.get();
+    }
+
+    /**
+     * 从index块的末尾开始写入，写满则在其后插入新块
+     * @return 最后写入的块下标
+     */
+    private int write(int index, char[] src, int srcOffset, int count) {
+        while (count > 0) {
+            Chunk chunk = chunks.get(index);
+            if (chunk.length == CHUNK_CHARS) {
+                chunks.add(++index, new Chunk(acquireChunk()));
+                continue;
+            }
+            int piece = Math.min(CHUNK_CHARS - chunk.length, count);
+            chunk.buffer.put(chunk.length, src, srcOffset, piece);
+            chunk.length += piece;
+            srcOffset += piece;
+            count -= piece;
+        }
+        return index;
+    }
+
+    private void removeRange(Chunk chunk, int from, int to) {
+        int tail = chunk.length - to;
+        if (tail > 0) {
+            char[] scratch = SCRATCH.get();
+            chunk.buffer.get(to, scratch, 0, tail);
+            chunk.buffer.put(from, scratch, 0, tail);
+        }
+        chunk.length -= to - from;
+    }
+
+    /**
+     * 两块合计放得下时把后一块并入前一块
+     */
+    private void mergeWithNext(int index) {
+        if (index < 0 || index + 1 >= chunks.size()) {
+            return;
+        }
+        Chunk chunk = chunks.get(index);
+        Chunk next = chunks.get(index + 1);
+        if (chunk.length + next.length > CHUNK_CHARS) {
+            return;
+        }
+        char[] scratch = SCRATCH.get();
+        next.buffer.get(0, scratch, 0, next.length);
+        chunk.buffer.put(chunk.length, scratch, 0, next.length);
+        chunk.length += next.length;
+        releaseChunk(chunks.remove(index + 1).buffer);
+    }
+
+    private void releaseChunks() {
+        for (Chunk chunk : chunks) {
+            releaseChunk(chunk.buffer);
+        }
+        chunks.clear();
+        length = 0;
+    }
+
+    private static CharBuffer acquireChunk() {
+        CharBuffer buffer = POOL.poll();
+        if (buffer != null) {
+            POOLED.decrementAndGet();
+            return buffer;
+        }
+        RESERVED_BYTES.addAndGet(CHUNK_CHARS * 2L);
+        return ByteBuffer.allocateDirect(CHUNK_CHARS * 2).order(ByteOrder.nativeOrder()).asCharBuffer();
+    }
+
+    private static void releaseChunk(CharBuffer buffer) {
+        if (POOLED.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+            RESERVED_BYTES.addAndGet(-CHUNK_CHARS * 2L);
+        }
+    }
+
+    /**
+     * 一块直接内存及其已用长度
+     */
+    private static final class Chunk {
+        private final CharBuffer buffer;
+        private int length;
+
+        private Chunk(CharBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
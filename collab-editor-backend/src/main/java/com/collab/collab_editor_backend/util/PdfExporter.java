@@ -0,0 +1,537 @@
+package com.collab.collab_editor_backend.util;
+
+import org.apache.fontbox.ttf.CmapLookup;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeCollection;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF导出
+ * 把文档内容（编辑器产生的HTML或纯文本）排版成A4页面：段落、标题、列表项按块分段，
+ * 英文在空格处折行、中日韩字符可在任意字符间折行，写满一页后开始下一页
+ * 嵌入字体在本进程内只解析一次（优先选择支持中文的TrueType字体），每次导出只嵌入用到的字形子集；
+ * 字符宽度按字体缓存，字体缺少的字符替换为'?'
+ * 内容按字符顺序逐个处理，不预先拆分全文；页面内容流超过memory-bytes后写入临时文件，
+ * 导出占用的堆内存不随页数增长
+ */
+@Component
+public class PdfExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfExporter.class);
+
+    private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+    // 页边距（磅），约2厘米
+    private static final float MARGIN = 56f;
+    private static final float LINE_SPACING = 1.5f;
+    private static final float PAGE_NUMBER_SIZE = 9f;
+    // <h1>~<h6>相对正文字号的倍数
+    private static final float[] HEADING_SCALE = {2.0f, 1.6f, 1.35f, 1.2f, 1.1f, 1.0f};
+    // 实体（&...;）的最大长度
+    private static final int MAX_ENTITY_CHARS = 10;
+    private static final String BULLET = "• ";
+
+    @Value("${collab.doc.export.pdf.font-paths:}")
+    private String fontPaths;
+    @Value("${collab.doc.export.pdf.font-size:11}")
+    private float fontSize;
+    // 每次导出在堆内存中保留的页面数据上限（字节），超出部分写入临时文件
+    @Value("${collab.doc.export.pdf.memory-bytes:4194304}")
+    private long memoryBytes;
+
+    // 进程内只加载一次的嵌入字体，null表示尚未加载
+    private volatile EmbeddedFont embeddedFont;
+
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong characters = new AtomicLong();
+    private final AtomicLong replacedCharacters = new AtomicLong();
+    private final AtomicLong exportNanos = new AtomicLong();
+
+    /**
+     * 排版并写出PDF
+     * @param title 文档标题（写入PDF属性）
+     * @param content 文档内容
+     * @param out 输出流，不会被关闭
+     */
+    public void write(String title, String content, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        EmbeddedFont embedded = font();
+        try (PDDocument document = new PDDocument(MemoryUsageSetting.setupMixed(memoryBytes).streamCache)) {
+            document.getDocumentInformation().setTitle(title);
+            PDFont font = embedded.ttf != null
+                    ? PDType0Font.load(document, embedded.ttf, true)
+                    : new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            Layout layout = new Layout(document, font, embedded);
+            parse(content != null ? content : "", layout);
+            layout.finish();
+            document.save(out);
+
+            exports.incrementAndGet();
+            pages.addAndGet(layout.pageNumber);
+            characters.addAndGet(layout.characters);
+            replacedCharacters.addAndGet(layout.replaced);
+        } finally {
+            exportNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 导出统计与使用的字体（监控接口使用）
+     */
+    public Map<String, Object> status() {
+        EmbeddedFont embedded = embeddedFont;
+        long count = exports.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("font", embedded != null ? embedded.name : null);
+        status.put("cjk", embedded != null && embedded.cjk);
+        status.put("cachedWidths", embedded != null ? embedded.widths.size() : 0);
+        status.put("exports", count);
+        status.put("pages", pages.get());
+        status.put("characters", characters.get());
+        status.put("replacedCharacters", replacedCharacters.get());
+        status.put("avgMillis", count == 0 ? 0.0 : exportNanos.get() / 1_000_000.0 / count);
+        return status;
+    }
+
+    /**
+     * 逐个字符解析内容并交给排版：块级标签结束当前段落，其他标签忽略，实体解码；
+     * 不含标签的纯文本按换行分段
+     */
+    private void parse(String content, Layout layout) throws IOException {
+        int length = content.length();
+        int i = 0;
+        while (i < length) {
+            char c = content.charAt(i);
+            if (c == '<' && i + 1 < length && isTagStart(content.charAt(i + 1))) {
+                int end = content.indexOf('>', i);
+                if (end < 0) {
+                    break;
+                }
+                handleTag(content, i + 1, end, layout);
+                i = end + 1;
+            } else if (c == '&') {
+                int end = content.indexOf(';', i);
+                if (end > i && end - i <= MAX_ENTITY_CHARS) {
+                    int decoded = decodeEntity(content.substring(i + 1, end));
+                    if (decoded >= 0) {
+                        layout.append(decoded);
+                        i = end + 1;
+                        continue;
+                    }
+                }
+                layout.append(c);
+                i++;
+            } else if (c == '\n') {
+                layout.endParagraph();
+                i++;
+            } else if (c == '\r') {
+                i++;
+            } else {
+                int codePoint = content.codePointAt(i);
+                layout.append(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+        layout.endParagraph();
+    }
+
+    private static boolean isTagStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '/' || c == '!';
+    }
+
+    private void handleTag(String content, int from, int to, Layout layout) throws IOException {
+        boolean closing = from < to && content.charAt(from) == '/';
+        int nameStart = closing ? from + 1 : from;
+        int nameEnd = nameStart;
+        while (nameEnd < to && Character.isLetterOrDigit(content.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        String name = content.substring(nameStart, nameEnd).toLowerCase();
+        switch (name) {
+            case "br" -> layout.lineBreak();
+            case "p", "div", "pre", "blockquote", "tr", "ul", "ol" -> layout.endParagraph();
+            case "li" -> {
+                layout.endParagraph();
+                if (!closing) {
+                    layout.appendText(BULLET);
+                }
+            }
+            case "h1", "h2", "h3", "h4", "h5", "h6" -> {
+                layout.endParagraph();
+                layout.setScale(closing ? 1.0f : HEADING_SCALE[name.charAt(1) - '1']);
+            }
+            default -> {
+                // 行内标签（加粗、链接等）不影响排版
+            }
+        }
+    }
+
+    private static int decodeEntity(String entity) {
+        switch (entity) {
+            case "nbsp":
+                return ' ';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "amp":
+                return '&';
+            case "quot":
+                return '"';
+            case "apos":
+                return '\'';
+            default:
+                break;
+        }
+        try {
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                return Integer.parseInt(entity.substring(2), 16);
+            }
+            if (entity.startsWith("#")) {
+                return Integer.parseInt(entity.substring(1));
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * 排版状态：当前行的文字和宽度、当前页的内容流与纵向位置
+     * 行内记录最后一个可折行位置，超出行宽时在该位置折行，没有可折行位置时强制折断
+     */
+    private final class Layout {
+        private final PDDocument document;
+        private final PDFont font;
+        private final EmbeddedFont embedded;
+        private final float width = PAGE_SIZE.getWidth() - 2 * MARGIN;
+
+        private final StringBuilder line = new StringBuilder();
+        // 当前行每个字符（码点）的宽度，单位为字体的1/1000
+        private float[] lineWidths = new float[256];
+        private int lineCount;
+        private float lineWidth;
+        // 最后一个可折行位置（码点下标），0表示没有
+        private int breakIndex;
+        private float scale = 1.0f;
+
+        private PDPageContentStream stream;
+        private float y;
+        private int pageNumber;
+        private long characters;
+        private long replaced;
+
+        private Layout(PDDocument document, PDFont font, EmbeddedFont embedded) {
+            this.document = document;
+            this.font = font;
+            this.embedded = embedded;
+        }
+
+        private void appendText(String text) throws IOException {
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                append(codePoint);
+                i += Character.charCount(codePoint);
+            }
+        }
+
+        private void append(int codePoint) throws IOException {
+            if (codePoint == '\t' || Character.isWhitespace(codePoint)) {
+                codePoint = ' ';
+                // 行首和连续的空白只保留一个
+                if (line.isEmpty() || line.charAt(line.length() - 1) == ' ') {
+                    return;
+                }
+            } else if (Character.isISOControl(codePoint)) {
+                return;
+            }
+            characters++;
+            float glyphWidth = width(codePoint);
+            if (glyphWidth < 0) {
+                replaced++;
+                codePoint = '?';
+                glyphWidth = width('?');
+            }
+            boolean cjk = isCjk(codePoint);
+            if (cjk && lineCount > 0) {
+                breakIndex = lineCount;
+            }
+            if ((lineWidth + glyphWidth) / 1000 * size() > width && lineCount > 0) {
+                if (codePoint == ' ') {
+                    flushLine(lineCount);
+                    return;
+                }
+                flushLine(breakIndex > 0 ? breakIndex : lineCount);
+            }
+            line.appendCodePoint(codePoint);
+            if (lineCount == lineWidths.length) {
+                lineWidths = Arrays.copyOf(lineWidths, lineCount * 2);
+            }
+            lineWidths[lineCount++] = glyphWidth;
+            lineWidth += glyphWidth;
+            if (codePoint == ' ' || cjk) {
+                breakIndex = lineCount;
+            }
+        }
+
+        private void lineBreak() throws IOException {
+            flushLine(lineCount);
+        }
+
+        private void endParagraph() throws IOException {
+            if (lineCount > 0) {
+                flushLine(lineCount);
+                // 段落间距
+                y -= size() * (LINE_SPACING - 1);
+            }
+        }
+
+        private void setScale(float scale) {
+            this.scale = scale;
+        }
+
+        private void finish() throws IOException {
+            endParagraph();
+            if (stream == null) {
+                newPage();
+            }
+            closePage();
+        }
+
+        /**
+         * 输出当前行的前count个码点，剩余部分留作下一行的开头
+         */
+        private void flushLine(int count) throws IOException {
+            int splitAt = line.offsetByCodePoints(0, count);
+            String text = line.substring(0, splitAt).stripTrailing();
+            String rest = line.substring(splitAt);
+
+            float lineHeight = size() * LINE_SPACING;
+            if (stream == null || y - lineHeight < MARGIN) {
+                newPage();
+            }
+            y -= lineHeight;
+            if (!text.isEmpty()) {
+                stream.beginText();
+                stream.setFont(font, size());
+                stream.newLineAtOffset(MARGIN, y);
+                stream.showText(text);
+                stream.endText();
+            }
+
+            // 下一行去掉开头的空格
+            int skip = rest.startsWith(" ") ? 1 : 0;
+            line.setLength(0);
+            line.append(rest, skip, rest.length());
+            int restCount = lineCount - count - skip;
+            System.arraycopy(lineWidths, count + skip, lineWidths, 0, restCount);
+            lineCount = restCount;
+            lineWidth = 0;
+            for (int i = 0; i < lineCount; i++) {
+                lineWidth += lineWidths[i];
+            }
+            breakIndex = 0;
+        }
+
+        private void newPage() throws IOException {
+            closePage();
+            PDPage page = new PDPage(PAGE_SIZE);
+            document.addPage(page);
+            stream = new PDPageContentStream(document, page);
+            pageNumber++;
+            y = PAGE_SIZE.getHeight() - MARGIN;
+        }
+
+        /**
+         * 写页码并关闭当前页的内容流，内容流写入文档的页面存储后不再占用排版缓冲
+         */
+        private void closePage() throws IOException {
+            if (stream == null) {
+                return;
+            }
+            String number = String.valueOf(pageNumber);
+            stream.beginText();
+            stream.setFont(font, PAGE_NUMBER_SIZE);
+            stream.newLineAtOffset((PAGE_SIZE.getWidth() - font.getStringWidth(number) / 1000 * PAGE_NUMBER_SIZE) / 2,
+                    MARGIN / 2);
+            stream.showText(number);
+            stream.endText();
+            stream.close();
+            stream = null;
+        }
+
+        private float size() {
+            return fontSize * scale;
+        }
+
+        /**
+         * 字符宽度（字体的1/1000），字体中没有该字符时返回-1
+         */
+        private float width(int codePoint) throws IOException {
+            Float cached = embedded.widths.get(codePoint);
+            if (cached != null) {
+                return cached;
+            }
+            String text = new String(Character.toChars(codePoint));
+            float glyphWidth;
+            if (embedded.cmap != null && (Character.isSupplementaryCodePoint(codePoint) || embedded.cmap.getGlyphId(codePoint) == 0)) {
+                // 嵌入字体写出时按UTF-16字符逐个查Unicode映射表，没有字形的字符和代理对（表情等）都会失败
+                glyphWidth = -1;
+            } else {
+                try {
+                    // 内置字体无法编码的字符抛IllegalArgumentException
+                    font.encode(text);
+                    glyphWidth = font.getStringWidth(text);
+                } catch (IllegalArgumentException e) {
+                    glyphWidth = -1;
+                }
+            }
+            embedded.widths.put(codePoint, glyphWidth);
+            return glyphWidth;
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL
+                || (codePoint >= 0x3000 && codePoint <= 0x303F)
+                || (codePoint >= 0xFF00 && codePoint <= 0xFFEF);
+    }
+
+    /**
+     * 首次导出时加载字体：按配置顺序优先使用第一个支持中文的TrueType字体，
+     * 都不支持中文时使用第一个可用的字体，没有可用字体时使用内置的Helvetica（中文会显示为'?'）
+     */
+    private EmbeddedFont font() {
+        EmbeddedFont loaded = embeddedFont;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (embeddedFont == null) {
+                embeddedFont = loadFont();
+            }
+            return embeddedFont;
+        }
+    }
+
+    private EmbeddedFont loadFont() {
+        EmbeddedFont fallback = null;
+        for (String path : fontPaths.split(",")) {
+            path = path.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            try {
+                TrueTypeFont ttf = parseFont(path);
+                if (ttf == null) {
+                    continue;
+                }
+                // 试嵌入一次，排除不允许嵌入或不是TrueType轮廓的字体
+                try (PDDocument probe = new PDDocument()) {
+                    PDType0Font.load(probe, ttf, true);
+                }
+                CmapLookup cmap = ttf.getUnicodeCmapLookup();
+                boolean cjk = cmap.getGlyphId('中') > 0;
+                EmbeddedFont font = new EmbeddedFont(path + " (" + ttf.getName() + ")", ttf, cmap, cjk);
+                if (cjk) {
+                    logger.info("PDF导出使用字体: {}", font.name);
+                    return font;
+                }
+                if (fallback == null) {
+                    fallback = font;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("PDF导出字体不可用: {}，{}", path, e.getMessage());
+            }
+        }
+        if (fallback != null) {
+            logger.warn("未找到支持中文的字体，PDF导出使用: {}，中文将显示为'?'", fallback.name);
+            return fallback;
+        }
+        logger.warn("未找到可嵌入的字体，PDF导出使用Helvetica，非拉丁字符将显示为'?'");
+        return new EmbeddedFont("Helvetica", null, null, false);
+    }
+
+    /**
+     * 读取字体文件（支持classpath:前缀），字体集合（.ttc）取第一个字体；文件不存在时返回null
+     * 字体数据整体读入内存，之后按需解析的表和字形都从内存读取
+     */
+    private static TrueTypeFont parseFont(String path) throws IOException {
+        byte[] data;
+        if (path.startsWith("classpath:")) {
+            try (InputStream in = PdfExporter.class.getClassLoader().getResourceAsStream(path.substring("classpath:".length()))) {
+                if (in == null) {
+                    return null;
+                }
+                data = in.readAllBytes();
+            }
+        } else {
+            Path file = Paths.get(path);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            data = Files.readAllBytes(file);
+        }
+        if (data.length > 4 && data[0] == 't' && data[1] == 't' && data[2] == 'c' && data[3] == 'f') {
+            TrueTypeFont[] first = new TrueTypeFont[1];
+            TrueTypeCollection collection = new TrueTypeCollection(new ByteArrayInputStream(data));
+            collection.processAllFonts(ttf -> {
+                if (first[0] == null) {
+                    first[0] = ttf;
+                }
+            });
+            return first[0];
+        }
+        return new TTFParser().parse(new RandomAccessReadBuffer(data));
+    }
+
+    /**
+     * 进程内共享的字体：解析后的TrueType字体及其Unicode映射表（都为null表示内置Helvetica）、
+     * 字符宽度缓存（-1表示字体中没有该字符）
+     */
+    private static final class EmbeddedFont {
+        private final String name;
+        private final TrueTypeFont ttf;
+        private final CmapLookup cmap;
+        private final boolean cjk;
+        private final Map<Integer, Float> widths = new ConcurrentHashMap<>();
+
+        private EmbeddedFont(String name, TrueTypeFont ttf, CmapLookup cmap, boolean cjk) {
+            this.name = name;
+            this.ttf = ttf;
+            this.cmap = cmap;
+            this.cjk = cjk;
+        }
+    }
+}
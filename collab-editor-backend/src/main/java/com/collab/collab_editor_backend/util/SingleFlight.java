@@ -0,0 +1,79 @@
+package com.collab.collab_editor_backend.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * 同一个键同时只执行一次加载：第一个调用方在自己的线程上执行加载，其余并发调用方等待并共享同一结果（包括异常）；
+ * 加载结束即移除，之后的调用重新加载，不做缓存。线程安全
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    // 实际执行的加载次数
+    private final AtomicLong executions = new AtomicLong();
+    // 通过等待共享结果而省下的加载次数
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * 加载键对应的值，已有同键的加载正在进行时等待其结果
+     * @param loader 加载函数，允许返回null
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            shared.incrementAndGet();
+            return await(existing);
+        }
+
+        executions.incrementAndGet();
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            // 先移除再完成：完成之后到达的调用方会重新加载，不会拿到开始于其调用之前的结果
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, created);
+        created.complete(value);
+        return value;
+    }
+
+    public long executions() {
+        return executions.get();
+    }
+
+    public long shared() {
+        return shared.get();
+    }
+
+    /**
+     * 正在进行的加载数
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.collab.collab_editor_backend.util;
+
+/**
+ * 令牌桶限流器
+ * 按固定速率补充令牌，桶容量决定允许的突发量，线程安全
+ */
+public class TokenBucket {
+
+    // 桶容量（允许的最大突发量）
+    private final double capacity;
+    // 每纳秒补充的令牌数
+    private final double refillPerNanos;
+    // 当前令牌数
+    private double tokens;
+    // 上次补充令牌的时间
+    private long lastRefillNanos;
+
+    /**
+     * @param capacity 桶容量
+     * @param refillPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNanos = refillPerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1d) {
+            tokens -= 1d;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距离下一个令牌可用还需等待的毫秒数（用于回退提示）
+     */
+    public synchronized long millisUntilAvailable() {
+        refill();
+        if (tokens >= 1d) {
+            return 0;
+        }
+        return (long) Math.ceil((1d - tokens) / refillPerNanos / 1_000_000d);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * refillPerNanos);
+        lastRefillNanos = now;
+    }
+}
@@ -11,11 +11,18 @@ public class WebSocketUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketUtils.class);
 
+    // 会话属性键：多路复用连接握手时已认证的用户信息，逻辑通道直接复用
+    public static final String ATTR_USER_ID = "userId";
+    public static final String ATTR_USERNAME = "username";
+
     /**
      * 从WebSocket会话中获取用户ID
-     * 支持从 query string 中提取 userId (不安全，仅限调试) 或 token (推荐)
+     * 优先使用会话属性中已认证的用户ID，否则从 query string 中提取 userId (不安全，仅限调试) 或 token (推荐)
      */
     public static Long getUserIdFromSession(WebSocketSession session, JwtUtil jwtUtil) {
+        if (session.getAttributes().get(ATTR_USER_ID) instanceof Long userId) {
+            return userId;
+        }
         try {
             String uri = session.getUri().toString();
             int queryIndex = uri.indexOf("?");
@@ -66,4 +73,42 @@ public class WebSocketUtils {
 
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * 从WebSocket会话中获取用户名
+     * 优先使用会话属性中已认证的用户名，否则解析 query string 中的 token
+     * @return 用户名，无法获取时返回null
+     */
+    public static String getUsernameFromSession(WebSocketSession session, JwtUtil jwtUtil) {
+        if (session.getAttributes().get(ATTR_USERNAME) instanceof String username) {
+            return username;
+        }
+        String token = getTokenFromSession(session);
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return jwtUtil.getUsernameFromToken(token);
+        } catch (Exception e) {
+            logger.warn("解析用户名失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从 query string 中提取 token
+     */
+    private static String getTokenFromSession(WebSocketSession session) {
+        String query = session.getUri() != null ? session.getUri().getRawQuery() : null;
+        if (query == null) {
+            return null;
+        }
+        for (String param : query.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            if (keyValue.length == 2 && "token".equals(URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8))) {
+                return URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+package com.collab.collab_editor_backend.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文档会话准入控制
+ * 按文档和节点的会话数，以及堆占用（GC后）、调度延迟和发送队列积压判断节点负载：
+ * 轻度过载时新会话降级为只读，严重过载时拒绝并提示客户端稍后重试，已建立的会话不受影响
+ */
+@Component
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    /**
+     * 准入结果
+     */
+    public enum Decision {
+        // 正常接入
+        ADMIT,
+        // 只读接入：只接收文档更新，不能编辑，不参与在线状态
+        READ_ONLY,
+        // 拒绝，客户端需在retryAfterMs后重连
+        REJECT
+    }
+
+    // 采样间隔
+    private static final long SAMPLE_INTERVAL_MS = 100;
+
+    @Value("${collab.ws.admission.max-sessions-per-document:200}")
+    private int maxSessionsPerDocument;
+    @Value("${collab.ws.admission.max-read-only-per-document:500}")
+    private int maxReadOnlyPerDocument;
+    @Value("${collab.ws.admission.max-sessions-per-node:5000}")
+    private int maxSessionsPerNode;
+    @Value("${collab.ws.admission.heap-soft-ratio:0.75}")
+    private double heapSoftRatio;
+    @Value("${collab.ws.admission.heap-hard-ratio:0.90}")
+    private double heapHardRatio;
+    @Value("${collab.ws.admission.lag-soft-ms:200}")
+    private long lagSoftMs;
+    @Value("${collab.ws.admission.lag-hard-ms:1000}")
+    private long lagHardMs;
+    @Value("${collab.ws.admission.queue-soft:50000}")
+    private long queueSoft;
+    @Value("${collab.ws.admission.queue-hard:200000}")
+    private long queueHard;
+    @Value("${collab.ws.admission.retry-after-ms:5000}")
+    private long retryAfterMs;
+
+    // 最近一次GC后的堆占用比例
+    private volatile double heapRatio;
+    // 调度延迟：采样任务实际执行时间比预期晚的毫秒数，按半衰衰减保留峰值
+    private volatile long lagMs;
+    // 所有会话发送队列的积压消息总数（由文档处理器定时上报）
+    private volatile long queueDepth;
+
+    private ScheduledExecutorService sampler;
+    private long expectedAt;
+
+    @PostConstruct
+    public void start() {
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ws-admission-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        expectedAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS);
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+
+    /**
+     * 判断新会话能否接入
+     * @param documentSessions 文档当前的会话数
+     * @param nodeSessions 节点当前的文档会话总数
+     */
+    public Decision decide(int documentSessions, int nodeSessions) {
+        if (nodeSessions >= maxSessionsPerNode || heapRatio >= heapHardRatio || lagMs >= lagHardMs || queueDepth >= queueHard
+                || documentSessions >= maxSessionsPerDocument + maxReadOnlyPerDocument) {
+            return Decision.REJECT;
+        }
+        if (documentSessions >= maxSessionsPerDocument || heapRatio >= heapSoftRatio || lagMs >= lagSoftMs || queueDepth >= queueSoft) {
+            return Decision.READ_ONLY;
+        }
+        return Decision.ADMIT;
+    }
+
+    /**
+     * 上报发送队列积压总数
+     */
+    public void recordQueueDepth(long depth) {
+        queueDepth = depth;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * 当前负载指标（监控接口使用）
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("heapAfterGcPercentage", Math.round(heapRatio * 100));
+        status.put("schedulingLagMs", lagMs);
+        status.put("outboundQueueDepth", queueDepth);
+        status.put("decision", decide(0, 0).name());
+        return status;
+    }
+
+    /**
+     * 采样堆占用和调度延迟
+     */
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            long lag = Math.max(0, TimeUnit.NANOSECONDS.toMillis(now - expectedAt));
+            expectedAt = now + TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL_MS);
+            lagMs = Math.max(lag, lagMs / 2);
+            heapRatio = heapAfterGc();
+        } catch (Exception e) {
+            logger.warn("负载采样失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * GC后仍存活的堆占用比例：只看各堆内存池最近一次回收后的用量，避免把待回收的垃圾算作负载
+     */
+    private static double heapAfterGc() {
+        long used = 0;
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            MemoryUsage usage = pool.getCollectionUsage();
+            used += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return max > 0 ? (double) used / max : 0;
+    }
+}
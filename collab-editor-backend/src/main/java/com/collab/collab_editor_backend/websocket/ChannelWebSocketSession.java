@@ -0,0 +1,163 @@
+package com.collab.collab_editor_backend.websocket;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 多路复用连接上的逻辑通道会话
+ * 对文档/聊天处理器表现为一个独立会话，发送的消息自动加上channel字段后写入共享的物理连接
+ */
+public class ChannelWebSocketSession implements WebSocketSession {
+
+    private final WebSocketSession delegate;
+    private final String channel;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    // 通道被处理器关闭时的回调（通知客户端并清理通道）
+    private final BiConsumer<ChannelWebSocketSession, CloseStatus> onClose;
+    private volatile boolean closed;
+
+    public ChannelWebSocketSession(WebSocketSession delegate, String channel, Map<String, Object> attributes,
+                                   BiConsumer<ChannelWebSocketSession, CloseStatus> onClose) {
+        this.delegate = delegate;
+        this.channel = channel;
+        this.attributes.putAll(attributes);
+        this.attributes.put("channel", channel);
+        this.onClose = onClose;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public WebSocketSession getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 标记通道已关闭（由多路复用处理器在退订或物理连接断开时调用）
+     */
+    void markClosed() {
+        closed = true;
+    }
+
+    @Override
+    public String getId() {
+        return delegate.getId() + ":" + channel;
+    }
+
+    @Override
+    public URI getUri() {
+        return delegate.getUri();
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return delegate.getHandshakeHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return delegate.getPrincipal();
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return delegate.getLocalAddress();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return delegate.getRemoteAddress();
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return delegate.getAcceptedProtocol();
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+        delegate.setTextMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return delegate.getTextMessageSizeLimit();
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        delegate.setBinaryMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return delegate.getBinaryMessageSizeLimit();
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return delegate.getExtensions();
+    }
+
+    /**
+     * 给JSON对象消息加上channel字段后写入物理连接，多个通道共用连接时串行写入
+     */
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        WebSocketMessage<?> tagged = message;
+        if (message instanceof TextMessage textMessage) {
+            String payload = textMessage.getPayload();
+            if (payload.startsWith("{")) {
+                String prefix = "{\"channel\":\"" + channel + "\"";
+                tagged = new TextMessage(payload.length() > 2 ? prefix + "," + payload.substring(1) : prefix + "}");
+            }
+        }
+        synchronized (delegate) {
+            delegate.sendMessage(tagged);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    /**
+     * 只关闭逻辑通道，物理连接保持
+     */
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        onClose.accept(this, status);
+    }
+}
@@ -12,8 +12,6 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,6 +36,10 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
      */
     private static final Map<Long, CopyOnWriteArraySet<WebSocketSession>> userSessionMap = new ConcurrentHashMap<>();
     private static final Map<Long, String> userInfoMap = new ConcurrentHashMap<>();
+    /**
+     * 保存用户ID与多路复用连接上notifications通道的映射
+     */
+    private static final Map<Long, CopyOnWriteArraySet<WebSocketSession>> notificationSessionMap = new ConcurrentHashMap<>();
 
     /**
      * 连接建立时的处理
@@ -55,26 +57,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 // 保存用户ID与WebSocketSession的映射
                 userSessionMap.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>()).add(session);
                 
-                String username = null;
-                try {
-                    String query = session.getUri().getQuery();
-                    if (query != null) {
-                        String[] params = query.split("&");
-                        for (String p : params) {
-                            String[] kv = p.split("=", 2);
-                            if (kv.length == 2) {
-                                String key = URLDecoder.decode(kv[0], StandardCharsets.UTF_8);
-                                if ("token".equals(key)) {
-                                    String token = URLDecoder.decode(kv[1], StandardCharsets.UTF_8);
-                                    username = jwtUtil.getUsernameFromToken(token);
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.warn("解析聊天用户名失败: {}", e.getMessage());
-                }
+                String username = WebSocketUtils.getUsernameFromSession(session, jwtUtil);
                 if (username == null) {
                     try {
                         User u = userMapper.selectById(userId);
@@ -157,6 +140,58 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 发送通知给指定用户
+     * 推送到多路复用连接的notifications通道，以及仍使用独立聊天连接的旧版客户端
+     * @param userId 用户ID
+     * @param message 通知内容
+     */
+    public static void sendNotificationToUser(Long userId, String message) {
+        TextMessage textMessage = new TextMessage(message);
+        CopyOnWriteArraySet<WebSocketSession> notificationSessions = notificationSessionMap.get(userId);
+        if (notificationSessions != null) {
+            for (WebSocketSession session : notificationSessions) {
+                sendQuietly(session, textMessage);
+            }
+        }
+        CopyOnWriteArraySet<WebSocketSession> chatSessions = userSessionMap.get(userId);
+        if (chatSessions != null) {
+            for (WebSocketSession session : chatSessions) {
+                // 多路复用连接的chat通道不重复推送通知
+                if (!(session instanceof ChannelWebSocketSession)) {
+                    sendQuietly(session, textMessage);
+                }
+            }
+        }
+    }
+
+    /**
+     * 注册多路复用连接的notifications通道
+     */
+    public static void registerNotificationSession(Long userId, WebSocketSession session) {
+        notificationSessionMap.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>()).add(session);
+    }
+
+    /**
+     * 注销多路复用连接的notifications通道
+     */
+    public static void unregisterNotificationSession(Long userId, WebSocketSession session) {
+        notificationSessionMap.computeIfPresent(userId, (k, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+    private static void sendQuietly(WebSocketSession session, TextMessage message) {
+        if (session.isOpen()) {
+            try {
+                session.sendMessage(message);
+            } catch (Exception e) {
+                logger.warn("推送通知失败, sessionId: {}, 错误: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
     /**
      * 发送消息给所有用户
      * @param message 消息内容
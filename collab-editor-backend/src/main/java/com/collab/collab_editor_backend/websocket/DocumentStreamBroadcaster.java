@@ -0,0 +1,366 @@
+package com.collab.collab_editor_backend.websocket;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 只读文档流广播器（Server-Sent Events）
+ * 面向大量只读观众：编辑操作先在内存中累积，按较低频率编码一次，
+ * 同一份字节写给该文档的所有观众，不占用WebSocket会话资源
+ * 写出采用非阻塞IO：每个观众有自己的有界发送队列，连接可写时由容器回调继续写出，
+ * 推送线程只入队不等待网络；积压超过上限的观众被断开，不会拖慢其他观众和心跳
+ */
+@Component
+public class DocumentStreamBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentStreamBroadcaster.class);
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // 观众推送间隔（毫秒），低于编辑者的实时广播频率
+    @Value("${collab.stream.flush-interval-ms:500}")
+    private long flushIntervalMs;
+
+    // 心跳间隔（毫秒），用于及时发现断开的观众
+    @Value("${collab.stream.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs;
+
+    // 单个观众发送队列的最大积压字节数，超过时断开该观众
+    @Value("${collab.stream.viewer-max-queued-bytes:4194304}")
+    private long viewerMaxQueuedBytes;
+
+    // 文档ID到观众的映射
+    private final Map<Long, Set<Viewer>> viewers = new ConcurrentHashMap<>();
+    // 文档ID到待推送内容的映射
+    private final Map<Long, PendingStream> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "doc-stream-broadcaster");
+            t.setDaemon(true);
+            // 观众流的优先级低于编辑者
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        for (Set<Viewer> set : viewers.values()) {
+            for (Viewer viewer : set) {
+                viewer.close();
+            }
+        }
+        viewers.clear();
+    }
+
+    /**
+     * 注册观众：先发送文档快照，之后接收批量操作
+     * 观众在获取快照之前登记，期间推送的内容先留在该观众的队列中，快照写入队首后再一起发出
+     * @param docId 文档ID
+     * @param context 已开启的异步上下文
+     * @param snapshotSupplier 文档快照（document_content消息），在观众登记之后获取，
+     *                         客户端应忽略版本号不大于快照版本的操作
+     */
+    public void subscribe(Long docId, AsyncContext context, Supplier<String> snapshotSupplier) throws IOException {
+        context.setTimeout(0);
+        Viewer viewer = new Viewer(docId, context);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                unsubscribe(viewer);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                unsubscribe(viewer);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                unsubscribe(viewer);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        // 先登记观众，保证获取快照之后接受的操作都会进入它的队列（与退订的移除在同一个compute中原子完成）
+        Set<Viewer> set = viewers.compute(docId, (k, existing) -> {
+            Set<Viewer> result = existing != null ? existing : ConcurrentHashMap.newKeySet();
+            result.add(viewer);
+            return result;
+        });
+        String snapshotJson;
+        try {
+            viewer.out.setWriteListener(viewer);
+            snapshotJson = snapshotSupplier.get();
+        } catch (RuntimeException e) {
+            viewer.close();
+            throw e;
+        }
+        viewer.sendSnapshot(encode("document_content", snapshotJson));
+        logger.info("只读观众订阅文档流, docId: {}, 当前观众数: {}", docId, set.size());
+    }
+
+    /**
+     * 记录一条已接受的操作，下个推送周期随批量消息发送
+     */
+    public void publishOperation(Long docId, String operationJson, int version) {
+        if (!viewers.containsKey(docId)) {
+            return;
+        }
+        PendingStream stream = pending.computeIfAbsent(docId, k -> new PendingStream());
+        synchronized (stream) {
+            stream.operations.add(operationJson);
+            stream.version = version;
+        }
+    }
+
+    /**
+     * 记录一次全量内容更新，覆盖之前尚未推送的操作
+     */
+    public void publishSnapshot(Long docId, String snapshotJson) {
+        if (!viewers.containsKey(docId)) {
+            return;
+        }
+        PendingStream stream = pending.computeIfAbsent(docId, k -> new PendingStream());
+        synchronized (stream) {
+            stream.snapshotJson = snapshotJson;
+            stream.operations.clear();
+        }
+    }
+
+    /**
+     * 当前观众总数
+     */
+    public int viewerCount() {
+        return viewers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * 移除观众，文档的最后一个观众离开时一并移除文档和待推送内容
+     */
+    private void unsubscribe(Viewer viewer) {
+        viewers.computeIfPresent(viewer.docId, (k, set) -> {
+            set.remove(viewer);
+            if (set.isEmpty()) {
+                pending.remove(k);
+                return null;
+            }
+            return set;
+        });
+    }
+
+    /**
+     * 推送周期到达：每个文档编码一次，同一份字节写给全部观众
+     */
+    private void flush() {
+        for (Map.Entry<Long, PendingStream> entry : pending.entrySet()) {
+            Long docId = entry.getKey();
+            PendingStream stream = entry.getValue();
+            String snapshotJson;
+            List<String> operations;
+            int version;
+            synchronized (stream) {
+                if (stream.snapshotJson == null && stream.operations.isEmpty()) {
+                    continue;
+                }
+                snapshotJson = stream.snapshotJson;
+                operations = stream.operations;
+                version = stream.version;
+                stream.snapshotJson = null;
+                stream.operations = new ArrayList<>();
+            }
+
+            StringBuilder sb = new StringBuilder();
+            if (snapshotJson != null) {
+                appendEvent(sb, "document_content", snapshotJson);
+            }
+            if (!operations.isEmpty()) {
+                StringBuilder json = new StringBuilder(64 + operations.size() * 128);
+                json.append("{\"type\":\"operations\",\"docId\":").append(docId)
+                    .append(",\"version\":").append(version)
+                    .append(",\"operations\":[");
+                for (int i = 0; i < operations.size(); i++) {
+                    if (i > 0) {
+                        json.append(',');
+                    }
+                    json.append(operations.get(i));
+                }
+                json.append("]}");
+                appendEvent(sb, "operations", json);
+            }
+            writeAll(docId, sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void heartbeat() {
+        for (Long docId : viewers.keySet()) {
+            writeAll(docId, HEARTBEAT);
+        }
+    }
+
+    /**
+     * 放入该文档所有观众的发送队列，不等待网络
+     */
+    private void writeAll(Long docId, byte[] bytes) {
+        Set<Viewer> set = viewers.get(docId);
+        if (set == null) {
+            return;
+        }
+        for (Viewer viewer : set) {
+            viewer.send(bytes);
+        }
+    }
+
+    /**
+     * 按SSE格式编码事件（JSON不含换行，可直接作为单行data）
+     */
+    private static byte[] encode(String event, String json) {
+        return appendEvent(new StringBuilder(), event, json).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static StringBuilder appendEvent(StringBuilder sb, String event, CharSequence json) {
+        return sb.append("event: ").append(event).append("\ndata: ").append(json).append("\n\n");
+    }
+
+    /**
+     * 一个观众连接：有界发送队列 + 非阻塞写出
+     * 快照写出之前只缓存不发送；连接不可写时停止写出，由容器在可写时回调onWritePossible继续
+     */
+    private class Viewer implements WriteListener {
+        private final Long docId;
+        private final AsyncContext context;
+        private final ServletOutputStream out;
+        private final Deque<byte[]> queue = new ArrayDeque<>();
+        private long queuedBytes;
+        private boolean snapshotSent;
+        private boolean closed;
+
+        private Viewer(Long docId, AsyncContext context) throws IOException {
+            this.docId = docId;
+            this.context = context;
+            this.out = context.getResponse().getOutputStream();
+        }
+
+        /**
+         * 快照放在队首（先于登记后缓存的操作），之后开始写出
+         */
+        private synchronized void sendSnapshot(byte[] bytes) {
+            if (closed) {
+                return;
+            }
+            queue.addFirst(bytes);
+            queuedBytes += bytes.length;
+            snapshotSent = true;
+            drain();
+        }
+
+        private synchronized void send(byte[] bytes) {
+            if (closed) {
+                return;
+            }
+            if (queuedBytes + bytes.length > viewerMaxQueuedBytes) {
+                logger.warn("只读观众接收过慢，断开连接, docId: {}, 积压字节数: {}", docId, queuedBytes);
+                close();
+                return;
+            }
+            queue.addLast(bytes);
+            queuedBytes += bytes.length;
+            if (snapshotSent) {
+                drain();
+            }
+        }
+
+        /**
+         * 在连接可写时尽量写出队列，不可写时立即返回
+         */
+        private synchronized void drain() {
+            if (closed || !snapshotSent) {
+                return;
+            }
+            try {
+                while (!queue.isEmpty() && out.isReady()) {
+                    byte[] bytes = queue.pollFirst();
+                    queuedBytes -= bytes.length;
+                    out.write(bytes);
+                }
+                // 队列写完后把容器缓冲区中的事件推给客户端
+                if (queue.isEmpty() && out.isReady()) {
+                    out.flush();
+                }
+            } catch (Exception e) {
+                logger.debug("观众连接已断开, docId: {}, 错误: {}", docId, e.getMessage());
+                close();
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.debug("观众连接写出失败, docId: {}, 错误: {}", docId, t.getMessage());
+            close();
+        }
+
+        private void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                queue.clear();
+                queuedBytes = 0;
+            }
+            unsubscribe(this);
+            try {
+                context.complete();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * 单个文档待推送的内容
+     */
+    private static class PendingStream {
+        private String snapshotJson;
+        private List<String> operations = new ArrayList<>();
+        private int version;
+    }
+}
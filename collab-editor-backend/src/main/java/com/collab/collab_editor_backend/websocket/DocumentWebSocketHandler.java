@@ -5,9 +5,18 @@ import org.slf4j.LoggerFactory;
 import com.collab.collab_editor_backend.service.DocPermissionService;
 import com.collab.collab_editor_backend.util.JwtUtil;
 import com.collab.collab_editor_backend.util.WebSocketUtils;
+import com.collab.collab_editor_backend.handler.Changeset;
+import com.collab.collab_editor_backend.handler.DocumentStats;
 import com.collab.collab_editor_backend.handler.OTAlgorithm;
+import com.collab.collab_editor_backend.handler.OperationHistory;
+import com.collab.collab_editor_backend.handler.SectionedDocument;
+import com.collab.collab_editor_backend.util.OffHeapText;
+import com.collab.collab_editor_backend.util.TokenBucket;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
@@ -16,6 +25,11 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -32,22 +46,150 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
     
     @Autowired
     private JwtUtil jwtUtil;
-    
+
+    @Autowired
+    private DocumentStreamBroadcaster streamBroadcaster;
+
+    @Autowired
+    private LiveDocumentRegistry liveDocumentRegistry;
+
+    @Autowired
+    private AdmissionController admissionController;
+
+    // 限流配置：单会话消息总量（解析前检查，防止刷屏拖垮节点）
+    @Value("${collab.ws.rate-limit.session-frames-per-second:200}")
+    private double sessionFramesPerSecond;
+    @Value("${collab.ws.rate-limit.session-frames-burst:400}")
+    private double sessionFramesBurst;
+    // 限流配置：单会话编辑操作（operation / content_update）
+    @Value("${collab.ws.rate-limit.session-edits-per-second:50}")
+    private double sessionEditsPerSecond;
+    @Value("${collab.ws.rate-limit.session-edits-burst:100}")
+    private double sessionEditsBurst;
+    // 限流配置：单文档编辑操作（所有会话合计）
+    @Value("${collab.ws.rate-limit.document-edits-per-second:300}")
+    private double documentEditsPerSecond;
+    @Value("${collab.ws.rate-limit.document-edits-burst:600}")
+    private double documentEditsBurst;
+    // 限流配置：单会话光标更新
+    @Value("${collab.ws.rate-limit.session-cursors-per-second:20}")
+    private double sessionCursorsPerSecond;
+    @Value("${collab.ws.rate-limit.session-cursors-burst:20}")
+    private double sessionCursorsBurst;
+    // 被合并的光标更新的刷新间隔（毫秒）
+    @Value("${collab.ws.rate-limit.cursor-flush-interval-ms:50}")
+    private long cursorFlushIntervalMs;
+    // 连续超限多少条消息后断开会话
+    @Value("${collab.ws.rate-limit.flood-close-threshold:1000}")
+    private int floodCloseThreshold;
+
+    // 批量广播（tick模式）配置：操作频率超过阈值的文档按固定间隔合并广播
+    @Value("${collab.ws.tick.enable-ops-per-second:30}")
+    private int tickEnableOpsPerSecond;
+    @Value("${collab.ws.tick.disable-ops-per-second:10}")
+    private int tickDisableOpsPerSecond;
+    @Value("${collab.ws.tick.interval-ms:25}")
+    private long tickIntervalMs;
+
+    // 发送队列配置：编辑/控制消息积压上限、在线状态消息合并键上限
+    @Value("${collab.ws.outbox.max-queued:1000}")
+    private int outboxMaxQueued;
+    @Value("${collab.ws.outbox.max-presence:256}")
+    private int outboxMaxPresence;
+    // 发送队列配置：积压字符数上限（需大于collab.ws.max-message-chars）、单条消息发送耗时上限、发送线程数
+    @Value("${collab.ws.outbox.buffer-size-limit:16777216}")
+    private long outboxBufferSizeLimit;
+    @Value("${collab.ws.outbox.send-time-limit-ms:10000}")
+    private long outboxSendTimeLimitMs;
+    @Value("${collab.ws.outbox.sender-threads:8}")
+    private int outboxSenderThreads;
+
+    // 分段模式配置：文档长度达到阈值才允许开启，以及每个分段的目标长度（字符数）
+    @Value("${collab.ws.sections.min-length:200000}")
+    private int sectionsMinLength;
+    @Value("${collab.ws.sections.target-chars:20000}")
+    private int sectionsTargetChars;
+
+    // 消息大小上限：单条消息（拼装分片后）的最大字符数，超过时以1009关闭连接
+    @Value("${collab.ws.max-message-chars:4194304}")
+    private int maxMessageChars;
+    // 分块插入：单次insert_chunk上传的总字符数上限
+    @Value("${collab.ws.chunk.max-total-chars:20971520}")
+    private long chunkMaxTotalChars;
+    // 批量操作：单条operation_batch最多包含的操作数
+    @Value("${collab.ws.batch.max-operations:10000}")
+    private int batchMaxOperations;
+
+    // 会话属性键：限流器与超限计数
+    private static final String ATTR_FRAME_BUCKET = "frameBucket";
+    private static final String ATTR_EDIT_BUCKET = "editBucket";
+    private static final String ATTR_CURSOR_BUCKET = "cursorBucket";
+    private static final String ATTR_FLOOD_STRIKES = "floodStrikes";
+    // 会话属性键：优先级发送队列
+    private static final String ATTR_OUTBOX = "outbox";
+    // 会话属性键：多路复用连接的文档通道所订阅的文档ID
+    static final String ATTR_DOC_ID = "docId";
+    // 会话属性键：进行中的分块插入
+    private static final String ATTR_CHUNK_UPLOAD = "chunkUpload";
+    // 会话属性键：过载时降级为只读的会话
+    private static final String ATTR_READ_ONLY = "readOnly";
+    // 文档内容加载失败时，要求客户端重发编辑的等待时间（毫秒）
+    private static final long SEED_RETRY_MS = 1000;
+
     // 文档ID到会话列表的映射，使用并发安全的集合
     private static final Map<Long, Set<WebSocketSession>> DOCUMENT_SESSIONS = new ConcurrentHashMap<>();
     // 用户会话到文档ID的映射
     private static final Map<WebSocketSession, Long> SESSION_DOCUMENTS = new ConcurrentHashMap<>();
     // 文档ID到在线用户列表的映射
     private static final Map<Long, Set<Map<String, Object>>> DOCUMENT_USERS = new ConcurrentHashMap<>();
-    // 文档ID到当前版本的映射
-    private static final Map<Long, AtomicInteger> DOCUMENT_VERSIONS = new ConcurrentHashMap<>();
-    // 文档ID到操作历史的映射
-    private static final Map<Long, List<OTAlgorithm.Operation>> DOCUMENT_OPERATIONS = new ConcurrentHashMap<>();
-    // 文档ID到当前内容的映射
-    private static final Map<Long, String> DOCUMENT_CONTENTS = new ConcurrentHashMap<>();
+    // 文档ID到文档级编辑限流器的映射
+    private static final Map<Long, TokenBucket> DOCUMENT_EDIT_BUCKETS = new ConcurrentHashMap<>();
+    // 超限后被合并的光标更新：每个会话只保留最新一条，不排队
+    private static final Map<WebSocketSession, Map<String, Object>> PENDING_CURSORS = new ConcurrentHashMap<>();
+    // 文档ID到最近一秒内已接受编辑数的映射（operation及批量、分块拆出的操作和content_update，用于判断是否进入tick模式）
+    private static final Map<Long, AtomicInteger> DOCUMENT_OP_COUNTERS = new ConcurrentHashMap<>();
+    // 处于tick模式的文档ID到本周期待广播操作的映射（按接受顺序排列）
+    private static final Map<Long, List<PendingOperation>> TICK_BATCHES = new ConcurrentHashMap<>();
+    // 处于tick模式的文档ID到本周期待广播的整篇内容更新（只保留最新一条，早于TICK_BATCHES中的操作）
+    private static final Map<Long, PendingContentUpdate> TICK_CONTENT_UPDATES = new ConcurrentHashMap<>();
+    // 定时任务线程（刷新被合并的光标更新、tick批量广播）
+    private ScheduledExecutorService scheduler;
+    // 发送线程池：各会话发送队列的实际写出在这里执行，不占用持有文档锁的处理线程
+    private ExecutorService sender;
+    // 停机排空中：不再接受新会话和编辑
+    private volatile boolean draining;
     // JSON序列化/反序列化工具
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @PostConstruct
+    public void startScheduler() {
+        AtomicInteger senderIndex = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(Math.max(1, outboxSenderThreads), r -> {
+            Thread t = new Thread(r, "doc-ws-sender-" + senderIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "doc-ws-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushPendingCursors, cursorFlushIntervalMs, cursorFlushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::flushTickBatches, tickIntervalMs, tickIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::updateTickModes, 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::reportQueueDepth, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopScheduler() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (sender != null) {
+            sender.shutdownNow();
+        }
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         // 获取文档ID
@@ -58,6 +200,14 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             return;
         }
         
+        // 停机排空中：提示客户端连接其他节点
+        // 会话还没有发送队列，随后立即关闭，提示直接写出（与准入拒绝相同），否则队列发送前连接已关闭
+        if (draining) {
+            session.sendMessage(reconnectMessage(docId, 0));
+            session.close(CloseStatus.SERVICE_RESTARTED);
+            return;
+        }
+
         // 获取用户ID
         Long userId = WebSocketUtils.getUserIdFromSession(session, jwtUtil);
         if (userId == null) {
@@ -73,38 +223,54 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
+        // 准入控制：过载时拒绝（提示稍后重试）或降级为只读
+        Set<WebSocketSession> existing = DOCUMENT_SESSIONS.get(docId);
+        AdmissionController.Decision decision = admissionController.decide(
+                existing != null ? existing.size() : 0, SESSION_DOCUMENTS.size());
+        if (decision == AdmissionController.Decision.REJECT) {
+            logger.warn("节点负载过高，拒绝文档连接, docId: {}, userId: {}", docId, userId);
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "overloaded");
+            response.put("docId", docId);
+            response.put("retryAfterMs", admissionController.getRetryAfterMs());
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason("服务器繁忙，请稍后重试"));
+            return;
+        }
+        boolean readOnly = decision == AdmissionController.Decision.READ_ONLY;
+        if (readOnly) {
+            session.getAttributes().put(ATTR_READ_ONLY, Boolean.TRUE);
+        }
+
+        // 初始化会话级限流器
+        session.getAttributes().put(ATTR_FRAME_BUCKET, new TokenBucket(sessionFramesBurst, sessionFramesPerSecond));
+        session.getAttributes().put(ATTR_EDIT_BUCKET, new TokenBucket(sessionEditsBurst, sessionEditsPerSecond));
+        session.getAttributes().put(ATTR_CURSOR_BUCKET, new TokenBucket(sessionCursorsBurst, sessionCursorsPerSecond));
+        session.getAttributes().put(ATTR_FLOOD_STRIKES, new AtomicInteger(0));
+        session.getAttributes().put(ATTR_OUTBOX, newOutbox(session));
+
         // 将会话添加到文档会话列表
         DOCUMENT_SESSIONS.computeIfAbsent(docId, k -> ConcurrentHashMap.newKeySet()).add(session);
         SESSION_DOCUMENTS.put(session, docId);
         
-        // 初始化文档版本和操作历史
-        DOCUMENT_VERSIONS.computeIfAbsent(docId, k -> new AtomicInteger(0));
-        DOCUMENT_OPERATIONS.computeIfAbsent(docId, k -> Collections.synchronizedList(new ArrayList<>()));
+        // 登记在线文档（内容、版本和操作历史），冷文档此时从数据库加载内容
+        liveDocumentRegistry.open(docId);
+
+        if (readOnly) {
+            // 只读会话不参与在线状态，只接收文档更新
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "admission");
+            response.put("docId", docId);
+            response.put("mode", "read_only");
+            response.put("retryAfterMs", admissionController.getRetryAfterMs());
+            send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+            logger.info("节点负载较高，文档连接降级为只读, docId: {}, userId: {}", docId, userId);
+            return;
+        }
 
         // 自动加入在线用户列表并广播
         try {
-            String uri = session.getUri().toString();
-            String token = null;
-            int qIdx = uri.indexOf("?");
-            if (qIdx != -1) {
-                String qs = uri.substring(qIdx + 1);
-                String[] params = qs.split("&");
-                for (String p : params) {
-                    String[] kv = p.split("=", 2);
-                    if (kv.length == 2 && "token".equals(java.net.URLDecoder.decode(kv[0], java.nio.charset.StandardCharsets.UTF_8))) {
-                        token = java.net.URLDecoder.decode(kv[1], java.nio.charset.StandardCharsets.UTF_8);
-                        break;
-                    }
-                }
-            }
-            String username = null;
-            if (token != null && !token.isEmpty()) {
-                try {
-                    username = jwtUtil.getUsernameFromToken(token);
-                } catch (Exception e) {
-                    logger.warn("解析用户名失败: {}", e.getMessage());
-                }
-            }
+            String username = WebSocketUtils.getUsernameFromSession(session, jwtUtil);
             if (username == null) {
                 username = "用户" + userId;
             }
@@ -132,10 +298,46 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         logger.info("用户连接到文档: {}, 用户ID: {}, 当前连接数: {}", docId, userId, DOCUMENT_SESSIONS.get(docId).size());
     }
 
+    /**
+     * 大消息（粘贴、导入）由容器按分片投递，在池化缓冲区中拼装，避免整条消息的大块临时分配
+     */
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-        // 解析接收到的消息
-        Map<String, Object> messageMap = objectMapper.readValue(message.getPayload(), Map.class);
+        // 解析前先做会话级总量限流，刷屏的消息直接丢弃，连续超限过多则断开
+        // 分片消息在收到最后一片时计一次，被丢弃时已缓存的分片一并释放
+        if (message.isLast() && !admitFrame(session)) {
+            FragmentAssembler.discard(session);
+            return;
+        }
+
+        // 解析接收到的消息（分片先拼装，未收齐时返回null）
+        Map<String, Object> messageMap = FragmentAssembler.read(session, message, objectMapper, maxMessageChars);
+        if (messageMap != null) {
+            dispatchMessage(session, messageMap);
+        }
+    }
+
+    /**
+     * 处理多路复用连接上文档通道的消息（消息已由多路复用处理器解析）
+     * 文档ID以通道订阅的文档为准
+     */
+    void handleChannelMessage(WebSocketSession session, Map<String, Object> messageMap) throws IOException {
+        if (!admitFrame(session)) {
+            return;
+        }
+        messageMap.put("docId", session.getAttributes().get(ATTR_DOC_ID));
+        dispatchMessage(session, messageMap);
+    }
+
+    /**
+     * 按消息类型分发
+     */
+    private void dispatchMessage(WebSocketSession session, Map<String, Object> messageMap) throws IOException {
         String type = (String) messageMap.get("type");
         Long docId = messageMap.get("docId") instanceof Number ? ((Number) messageMap.get("docId")).longValue() : null;
 
@@ -143,29 +345,69 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
+        // 停机排空中不再接受编辑，客户端重连后重新提交
+        if (draining && isEditType(type)) {
+            sendReconnect(session, docId, 0);
+            return;
+        }
+
+        // 只读会话只能读取文档
+        if (Boolean.TRUE.equals(session.getAttributes().get(ATTR_READ_ONLY))
+                && !"get_document".equals(type) && !"get_stats".equals(type)) {
+            rejectReadOnly(session, docId, type);
+            return;
+        }
+
         switch (type) {
             case "join":
             case "user_join":  // 同时支持两种消息类型，兼容旧版和新版前端
                 handleUserJoin(session, messageMap, docId);
                 break;
             case "content_update":
-                handleContentUpdate(session, messageMap, docId);
+                if (admitEdit(session, docId, type, messageMap)) {
+                    handleContentUpdate(session, messageMap, docId);
+                }
                 break;
             case "operation":
-                handleOperation(session, messageMap, docId);
+                if (admitEdit(session, docId, type, messageMap)) {
+                    handleOperation(session, messageMap, docId);
+                }
                 break;
             case "get_document":
                 handleGetDocument(session, docId);
                 break;
+            case "get_stats":
+                handleGetStats(session, docId);
+                break;
             case "cursor_position":
                 handleCursorPosition(session, messageMap, docId);
                 break;
+            case "enable_sections":
+                handleEnableSections(session, docId);
+                break;
+            case "section_operation":
+                if (admitEdit(session, docId, type, messageMap)) {
+                    handleSectionOperation(session, messageMap, docId);
+                }
+                break;
+            case "insert_chunk":
+                if (admitEdit(session, docId, type, messageMap)) {
+                    handleInsertChunk(session, messageMap, docId);
+                }
+                break;
+            case "operation_batch":
+                if (admitEdit(session, docId, type, messageMap)) {
+                    handleOperationBatch(session, messageMap, docId);
+                }
+                break;
             // 可以添加更多消息类型处理
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        PENDING_CURSORS.remove(session);
+        FragmentAssembler.discard(session);
         Long docId = SESSION_DOCUMENTS.remove(session);
         if (docId == null) {
             return;
@@ -180,9 +422,11 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             if (sessions.isEmpty()) {
                 DOCUMENT_SESSIONS.remove(docId);
                 DOCUMENT_USERS.remove(docId);
-                DOCUMENT_VERSIONS.remove(docId);
-                DOCUMENT_OPERATIONS.remove(docId);
-                DOCUMENT_CONTENTS.remove(docId);
+                liveDocumentRegistry.close(docId);
+                DOCUMENT_EDIT_BUCKETS.remove(docId);
+                DOCUMENT_OP_COUNTERS.remove(docId);
+                TICK_BATCHES.remove(docId);
+                TICK_CONTENT_UPDATES.remove(docId);
             } else {
                 // 从用户列表中移除用户并通知其他用户
                 removeUserFromDocument(session, docId);
@@ -237,6 +481,8 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
 
     /**
      * 处理内容更新事件
+     * 替换、tick批次的处理和广播都在文档锁内完成，与commitOperation的顺序一致：
+     * 替换前已接受、尚未广播的操作先发出，其他客户端不会在整篇内容之后再收到更早的操作
      */
     private void handleContentUpdate(WebSocketSession session, Map<String, Object> messageMap, Long docId) throws IOException {
         String content = (String) messageMap.get("content");
@@ -244,29 +490,103 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             return;
         }
 
-        // 更新文档内容
-        DOCUMENT_CONTENTS.put(docId, content);
-        
-        // 广播内容更新给文档的所有其他用户
-        Set<WebSocketSession> sessions = DOCUMENT_SESSIONS.get(docId);
-        if (sessions != null) {
-            for (WebSocketSession otherSession : sessions) {
-                if (!otherSession.equals(session)) {
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("type", "content_update");
-                    response.put("docId", docId);
-                    response.put("content", content);
-                    response.put("userId", messageMap.get("userId"));
-                    response.put("username", messageMap.get("username"));
-
-                    synchronized (otherSession) {
-                        otherSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
-                    }
-                }
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null) {
+            return;
+        }
+
+        synchronized (live) {
+            replaceLiveContent(live, docId, content, false, session, messageMap.get("userId"), messageMap.get("username"));
+        }
+    }
+
+    /**
+     * REST保存、版本回滚等直接写数据库的内容替换
+     * 文档正在编辑时，数据库写入和实时内容替换在文档锁内一起完成并广播content_update，
+     * 排空持久化同样持有文档锁，不会把替换前的实时内容写回覆盖这次写入；
+     * 实时内容尚未从数据库初始化时只写数据库，之后初始化时读取的就是新内容
+     * @param write 写数据库的动作（在文档锁内执行）
+     */
+    public void replaceStoredContent(Long docId, String content, Long userId, Runnable write) {
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null) {
+            write.run();
+            return;
+        }
+        synchronized (live) {
+            write.run();
+            if (!live.isSeeded()) {
+                return;
+            }
+            try {
+                replaceLiveContent(live, docId, content, true, null, userId, null);
+            } catch (IOException e) {
+                logger.warn("广播外部内容更新失败, docId: {}, 错误: {}", docId, e.getMessage());
             }
         }
     }
 
+    /**
+     * 整篇替换实时内容并广播，调用方持有文档锁
+     * @param stored 内容是否已写入数据库（是则清除修改标记，否则标记待持久化）
+     * @param exclude 不接收广播的会话（发起替换的会话），没有时为null
+     */
+    private void replaceLiveContent(LiveDocument live, Long docId, String content, boolean stored,
+                                    WebSocketSession exclude, Object userId, Object username) throws IOException {
+        // 整篇替换前先退出分段模式
+        closeSections(live);
+
+        // tick模式下本周期尚未广播的操作（连同之前的整篇更新）先发出，文档仍留在tick模式；
+        // 没有待发操作时，尚未发出的整篇更新被这次替换覆盖，不再发送
+        List<PendingOperation> pending = TICK_BATCHES.get(docId);
+        if (pending != null && !pending.isEmpty()) {
+            flushTick(docId);
+        } else {
+            TICK_CONTENT_UPDATES.remove(docId);
+        }
+
+        // 更新文档内容并重新统计；替换前版本的操作无法再转换，客户端需要重新同步
+        if (stored) {
+            live.replaceWithStored(content);
+        } else {
+            live.replaceContent(content);
+        }
+        live.getHistory().reset(live.getVersion().get());
+        if (!stored) {
+            live.markDirty();
+        }
+
+        // 只读观众收到的是新的全量快照
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("type", "document_content");
+        snapshot.put("docId", docId);
+        snapshot.put("content", content);
+        snapshot.put("version", live.getVersion().get());
+        streamBroadcaster.publishSnapshot(docId, objectMapper.writeValueAsString(snapshot));
+
+        // 广播内容更新给文档的所有其他用户
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "content_update");
+        response.put("docId", docId);
+        response.put("content", content);
+        response.put("userId", userId);
+        response.put("username", username);
+        String responseJson = objectMapper.writeValueAsString(response);
+        if (stored) {
+            broadcast(docId, exclude, SessionOutbox.Lane.OPS, null, responseJson);
+            return;
+        }
+
+        // 客户端的整篇更新计入文档编辑频率（前端只发送content_update），高频时进入tick模式；
+        // tick模式下每个周期只广播最新的一条
+        DOCUMENT_OP_COUNTERS.computeIfAbsent(docId, k -> new AtomicInteger()).incrementAndGet();
+        if (TICK_BATCHES.containsKey(docId)) {
+            TICK_CONTENT_UPDATES.put(docId, new PendingContentUpdate(exclude, responseJson));
+        } else {
+            broadcast(docId, exclude, SessionOutbox.Lane.OPS, null, responseJson);
+        }
+    }
+
     /**
      * 处理光标位置更新事件
      */
@@ -274,34 +594,36 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         Integer userId = messageMap.get("userId") instanceof Number ? ((Number) messageMap.get("userId")).intValue() : null;
         String username = (String) messageMap.get("username");
         Integer cursorPosition = messageMap.get("cursorPosition") instanceof Number ? ((Number) messageMap.get("cursorPosition")).intValue() : null;
-        Integer cursorLength = messageMap.get("cursorLength") instanceof Number ? ((Number) messageMap.get("cursorLength")).intValue() : 0;
 
         if (userId == null || username == null || cursorPosition == null) {
             return;
         }
 
-        // 广播光标位置更新给其他用户
-        Set<WebSocketSession> sessions = DOCUMENT_SESSIONS.get(docId);
-        if (sessions != null) {
-            Map<String, Object> response = new HashMap<>();
-            response.put("type", "cursor_position_update");
-            response.put("docId", docId);
-            response.put("userId", userId);
-            response.put("username", username);
-            response.put("cursorPosition", cursorPosition);
-            response.put("cursorLength", cursorLength);
-
-            String responseJson = objectMapper.writeValueAsString(response);
-            for (WebSocketSession otherSession : sessions) {
-                if (!otherSession.equals(session)) {
-                    if (otherSession.isOpen()) {
-                        synchronized (otherSession) {
-                            otherSession.sendMessage(new TextMessage(responseJson));
-                        }
-                    }
-                }
-            }
+        // 超出光标限额时只保留最新位置，由定时任务稍后发送
+        TokenBucket cursorBucket = (TokenBucket) session.getAttributes().get(ATTR_CURSOR_BUCKET);
+        if (cursorBucket != null && !cursorBucket.tryAcquire()) {
+            PENDING_CURSORS.put(session, messageMap);
+            return;
         }
+        // 已有更新的位置直接发送，之前被合并的旧位置作废
+        PENDING_CURSORS.remove(session);
+        broadcastCursorPosition(session, messageMap, docId);
+    }
+
+    /**
+     * 广播光标位置更新给其他用户
+     */
+    private void broadcastCursorPosition(WebSocketSession session, Map<String, Object> messageMap, Long docId) throws IOException {
+        int userId = ((Number) messageMap.get("userId")).intValue();
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "cursor_position_update");
+        response.put("docId", docId);
+        response.put("userId", userId);
+        response.put("username", messageMap.get("username"));
+        response.put("cursorPosition", ((Number) messageMap.get("cursorPosition")).intValue());
+        response.put("cursorLength", messageMap.get("cursorLength") instanceof Number ? ((Number) messageMap.get("cursorLength")).intValue() : 0);
+        // 同一用户的光标更新按键合并，接收方积压时只发送最新位置
+        broadcast(docId, session, SessionOutbox.Lane.PRESENCE, "cursor:" + userId, objectMapper.writeValueAsString(response));
     }
 
     /**
@@ -322,66 +644,854 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         OTAlgorithm.Operation operation = new OTAlgorithm.Operation(type, position, content, version);
 
         // 获取文档的当前版本和操作历史
-        AtomicInteger currentVersion = DOCUMENT_VERSIONS.get(docId);
-        List<OTAlgorithm.Operation> operations = DOCUMENT_OPERATIONS.get(docId);
-        String currentContent = DOCUMENT_CONTENTS.getOrDefault(docId, "");
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null) {
+            return;
+        }
+        if (!ensureSeeded(session, live, docId, "operation", messageMap)) {
+            return;
+        }
+        AtomicInteger currentVersion = live.getVersion();
+        OperationHistory operations = live.getHistory();
+
+        // 同一文档的操作串行处理，保证版本号、内容和广播顺序一致
+        synchronized (live) {
+            // 按整篇文档提交的操作需要先退出分段模式
+            closeSections(live);
 
-        // 如果操作版本不是当前版本，需要进行操作转换
-        if (version < currentVersion.get()) {
-            // 获取需要转换的操作列表
-            List<OTAlgorithm.Operation> pendingOperations = operations.subList(version, currentVersion.get());
-            // 转换操作
-            for (OTAlgorithm.Operation pendingOp : pendingOperations) {
-                operation = OTAlgorithm.transform(operation, pendingOp);
+            // 历史已被整体替换（如退出分段模式），更早版本的操作无法转换，要求客户端重新同步
+            if (version < operations.baseVersion()) {
+                handleGetDocument(session, docId);
+                return;
+            }
+
+            // 如果操作版本不是当前版本，需要进行操作转换
+            if (version < currentVersion.get()) {
+                // 对之后接受的历史操作依次转换
+                operation = operations.transform(operation, version, currentVersion.get());
             }
+
+            commitOperation(session, docId, live, operation, messageMap, null);
         }
+    }
+
+    /**
+     * 应用已转换到当前版本的操作、记录历史并广播，调用方持有live的锁
+     * @param deferred 不为null时只把操作加入该列表，由调用方合并广播
+     * @return 应用后的文档版本
+     */
+    private int commitOperation(WebSocketSession session, Long docId, LiveDocument live, OTAlgorithm.Operation operation,
+                                Map<String, Object> messageMap, List<PendingOperation> deferred) throws IOException {
+        AtomicInteger currentVersion = live.getVersion();
 
-        // 应用操作到文档内容
-        String newContent = OTAlgorithm.applyOperation(currentContent, operation);
-        DOCUMENT_CONTENTS.put(docId, newContent);
+        // 原地应用操作到文档内容，同时增量更新统计
+        live.applyOperation(operation);
 
         // 将操作添加到历史记录
-        operations.add(operation);
-        currentVersion.incrementAndGet();
+        live.getHistory().add(operation);
+        int version = currentVersion.incrementAndGet();
+        live.markDirty();
+        DOCUMENT_OP_COUNTERS.computeIfAbsent(docId, k -> new AtomicInteger()).incrementAndGet();
+
+        // 操作只序列化一次，所有接收者共用
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "operation");
+        response.put("docId", docId);
+        response.put("operationType", operation.getType() == OTAlgorithm.OperationType.INSERT ? "insert" : "delete");
+        response.put("position", operation.getPosition());
+        response.put("content", operation.getContent());
+        response.put("version", version);
+        response.put("userId", messageMap.get("userId"));
+        response.put("username", messageMap.get("username"));
+        String responseJson = objectMapper.writeValueAsString(response);
+        streamBroadcaster.publishOperation(docId, responseJson, version);
+
+        if (deferred != null) {
+            deferred.add(new PendingOperation(session, responseJson, version));
+            return version;
+        }
+
+        // tick模式下先缓存，由定时任务按周期合并发送
+        List<PendingOperation> batch = TICK_BATCHES.get(docId);
+        if (batch != null) {
+            batch.add(new PendingOperation(session, responseJson, version));
+            return version;
+        }
 
         // 广播操作给所有其他用户
-        Set<WebSocketSession> sessions = DOCUMENT_SESSIONS.get(docId);
-        if (sessions != null) {
-            for (WebSocketSession otherSession : sessions) {
-                if (!otherSession.equals(session)) {
-                    Map<String, Object> response = new HashMap<>();
-                    response.put("type", "operation");
-                    response.put("docId", docId);
-                    response.put("operationType", opType);
-                    response.put("position", operation.getPosition());
-                    response.put("content", operation.getContent());
-                    response.put("version", currentVersion.get());
-                    response.put("userId", messageMap.get("userId"));
-                    response.put("username", messageMap.get("username"));
-
-                    synchronized (otherSession) {
-                        otherSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+        broadcast(docId, session, SessionOutbox.Lane.OPS, null, responseJson);
+        return version;
+    }
+
+    /**
+     * 处理批量操作：客户端离线期间基于同一版本顺序编辑的一串操作
+     * 客户端操作和期间服务端接受的操作各自先合并为一个变更集，再整体转换一次，
+     * 耗时与两边的操作数近似线性，不再逐对转换；转换结果拆回操作后依次应用，合并为一帧广播
+     */
+    private void handleOperationBatch(WebSocketSession session, Map<String, Object> messageMap, Long docId) throws IOException {
+        Integer version = messageMap.get("version") instanceof Number ? ((Number) messageMap.get("version")).intValue() : null;
+        if (version == null || !(messageMap.get("operations") instanceof List<?> items)) {
+            return;
+        }
+        if (items.size() > batchMaxOperations) {
+            sendBatchError(session, docId, "批量操作数超过上限: " + batchMaxOperations);
+            return;
+        }
+
+        // 解析客户端操作，版本号只用于排序
+        List<OTAlgorithm.Operation> branch = new ArrayList<>(items.size());
+        for (Object item : items) {
+            if (!(item instanceof Map<?, ?> op)) {
+                continue;
+            }
+            String opType = (String) op.get("operationType");
+            Integer position = op.get("position") instanceof Number ? ((Number) op.get("position")).intValue() : null;
+            String content = (String) op.get("content");
+            if (opType == null || position == null) {
+                continue;
+            }
+            OTAlgorithm.OperationType type = "insert".equals(opType) ? OTAlgorithm.OperationType.INSERT : OTAlgorithm.OperationType.DELETE;
+            branch.add(new OTAlgorithm.Operation(type, position, content != null ? content : "", version + branch.size()));
+        }
+
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null || !ensureSeeded(session, live, docId, "operation_batch", messageMap)) {
+            return;
+        }
+
+        synchronized (live) {
+            // 按整篇文档提交的操作需要先退出分段模式
+            closeSections(live);
+
+            OperationHistory operations = live.getHistory();
+            if (version < operations.baseVersion()) {
+                handleGetDocument(session, docId);
+                return;
+            }
+
+            // 合并客户端分支，再对期间服务端接受的操作整体转换
+            int currentVersion = live.getVersion().get();
+            Changeset changeset = Changeset.composeAll(branch);
+            boolean concurrent = version < currentVersion;
+            if (concurrent) {
+                List<OTAlgorithm.Operation> applied = new ArrayList<>(currentVersion - version);
+                for (int v = version; v < currentVersion; v++) {
+                    applied.add(operations.get(v - operations.baseVersion()));
+                }
+                changeset = changeset.transform(Changeset.composeAll(applied));
+            }
+
+            // 依次应用，收集后按tick批次或单帧广播
+            List<PendingOperation> committed = new ArrayList<>();
+            for (OTAlgorithm.Operation operation : changeset.toOperations(currentVersion)) {
+                commitOperation(session, docId, live, operation, messageMap, committed);
+            }
+            if (!committed.isEmpty()) {
+                List<PendingOperation> batch = TICK_BATCHES.get(docId);
+                if (batch != null) {
+                    batch.addAll(committed);
+                } else {
+                    sendTickBatch(docId, committed);
+                }
+            }
+
+            Map<String, Object> ack = new HashMap<>();
+            ack.put("type", "operation_batch_ack");
+            ack.put("docId", docId);
+            ack.put("received", branch.size());
+            ack.put("applied", committed.size());
+            ack.put("version", live.getVersion().get());
+            send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(ack)));
+
+            // 期间有其他人的修改时，客户端本地内容与服务端不同，直接下发最新内容
+            if (concurrent) {
+                handleGetDocument(session, docId);
+            }
+        }
+    }
+
+    private void sendBatchError(WebSocketSession session, Long docId, String message) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "operation_batch_error");
+        response.put("docId", docId);
+        response.put("message", message);
+        send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    /**
+     * 处理分块插入：大段粘贴/导入按块上传，每块作为一次普通插入转换、应用和广播，
+     * 其他客户端看到的是连续的insert操作；服务端记录上一块的落点和版本，下一块接着插入
+     * 首块（seq为0）的position和version为客户端所见，后续块只需按顺序发送内容
+     */
+    private void handleInsertChunk(WebSocketSession session, Map<String, Object> messageMap, Long docId) throws IOException {
+        String uploadId = messageMap.get("uploadId") != null ? String.valueOf(messageMap.get("uploadId")) : null;
+        Integer seq = messageMap.get("seq") instanceof Number ? ((Number) messageMap.get("seq")).intValue() : null;
+        String content = (String) messageMap.get("content");
+        boolean last = Boolean.TRUE.equals(messageMap.get("last"));
+        if (uploadId == null || seq == null) {
+            return;
+        }
+
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null || !ensureSeeded(session, live, docId, "insert_chunk", messageMap)) {
+            return;
+        }
+
+        synchronized (live) {
+            ChunkUpload upload = (ChunkUpload) session.getAttributes().get(ATTR_CHUNK_UPLOAD);
+            if (seq == 0) {
+                Integer position = messageMap.get("position") instanceof Number ? ((Number) messageMap.get("position")).intValue() : null;
+                Integer version = messageMap.get("version") instanceof Number ? ((Number) messageMap.get("version")).intValue() : null;
+                if (position == null || version == null) {
+                    return;
+                }
+                // 按整篇文档提交的操作需要先退出分段模式
+                closeSections(live);
+                upload = new ChunkUpload(uploadId, position, version);
+                session.getAttributes().put(ATTR_CHUNK_UPLOAD, upload);
+            } else if (upload == null || !upload.uploadId.equals(uploadId) || upload.nextSeq != seq) {
+                sendChunkError(session, docId, uploadId, upload != null && upload.uploadId.equals(uploadId) ? upload.nextSeq : 0,
+                        "分块顺序错误");
+                return;
+            }
+
+            int length = content != null ? content.length() : 0;
+            if (upload.totalChars + length > chunkMaxTotalChars) {
+                session.getAttributes().remove(ATTR_CHUNK_UPLOAD);
+                sendChunkError(session, docId, uploadId, 0, "分块插入的内容超过上限");
+                return;
+            }
+
+            // 上一块之后文档被整体替换（分段模式、全文更新），落点已无法转换，要求客户端重新同步后重传
+            OperationHistory operations = live.getHistory();
+            if (upload.version < operations.baseVersion()) {
+                session.getAttributes().remove(ATTR_CHUNK_UPLOAD);
+                sendChunkError(session, docId, uploadId, 0, "文档已被整体更新，请重新同步后重传");
+                handleGetDocument(session, docId);
+                return;
+            }
+
+            int appliedPosition = upload.nextPosition;
+            int version = live.getVersion().get();
+            if (length > 0) {
+                OTAlgorithm.Operation operation = new OTAlgorithm.Operation(
+                        OTAlgorithm.OperationType.INSERT, upload.nextPosition, content, upload.version);
+                if (upload.version < version) {
+                    operation = operations.transform(operation, upload.version, version);
+                }
+                version = commitOperation(session, docId, live, operation, messageMap, null);
+                appliedPosition = operation.getPosition();
+                upload.nextPosition = appliedPosition + length;
+                upload.version = version;
+                upload.totalChars += length;
+            }
+            upload.nextSeq++;
+            if (last) {
+                session.getAttributes().remove(ATTR_CHUNK_UPLOAD);
+            }
+
+            // 回执：本块的实际落点和应用后的文档版本
+            Map<String, Object> ack = new HashMap<>();
+            ack.put("type", "insert_chunk_ack");
+            ack.put("docId", docId);
+            ack.put("uploadId", uploadId);
+            ack.put("seq", seq);
+            ack.put("position", appliedPosition);
+            ack.put("version", version);
+            ack.put("last", last);
+            send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(ack)));
+        }
+    }
+
+    /**
+     * 分块插入出错：expectedSeq为服务端期望的下一块序号（0表示需要从头重传）
+     */
+    private void sendChunkError(WebSocketSession session, Long docId, String uploadId, int expectedSeq, String message) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "insert_chunk_error");
+        response.put("docId", docId);
+        response.put("uploadId", uploadId);
+        response.put("expectedSeq", expectedSeq);
+        response.put("message", message);
+        send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    /**
+     * 进行中的分块插入：下一块的落点、落点对应的文档版本和期望的序号
+     */
+    private static final class ChunkUpload {
+        private final String uploadId;
+        private int nextPosition;
+        private int version;
+        private int nextSeq;
+        private long totalChars;
+
+        private ChunkUpload(String uploadId, int nextPosition, int version) {
+            this.uploadId = uploadId;
+            this.nextPosition = nextPosition;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 处理开启分段模式请求：超大文档按标题/段落切分，之后各分段独立排序和转换
+     */
+    private void handleEnableSections(WebSocketSession session, Long docId) throws IOException {
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null || !ensureSeeded(session, live, docId, "enable_sections", Map.of())) {
+            return;
+        }
+        synchronized (live) {
+            if (live.getSectioned() != null) {
+                handleGetDocument(session, docId);
+                return;
+            }
+            OffHeapText content = live.getContent();
+            if (content == null || content.length() < sectionsMinLength) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("type", "sections_unavailable");
+                response.put("docId", docId);
+                response.put("minLength", sectionsMinLength);
+                send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+                return;
+            }
+
+            // 先发出tick模式下尚未广播的操作，分段版本从当前文档版本开始
+            sendTickBatch(docId, TICK_BATCHES.remove(docId));
+            SectionedDocument sectioned = new SectionedDocument(content.toString(), sectionsTargetChars);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "sections_enabled");
+            response.put("docId", docId);
+            response.put("version", live.getVersion().get());
+            response.put("sections", sectioned.layout());
+            broadcast(docId, null, SessionOutbox.Lane.OPS, null, objectMapper.writeValueAsString(response));
+
+            // 所有会话都收到分段布局后才开始接受分段操作
+            live.enterSections(sectioned);
+            logger.info("文档开启分段模式, docId: {}, 分段数: {}", docId, sectioned.sectionCount());
+        }
+    }
+
+    /**
+     * 处理分段操作：只持有目标分段的锁，不同分段的操作可在不同线程上并行处理
+     */
+    private void handleSectionOperation(WebSocketSession session, Map<String, Object> messageMap, Long docId) throws IOException {
+        Integer sectionId = messageMap.get("sectionId") instanceof Number ? ((Number) messageMap.get("sectionId")).intValue() : null;
+        String opType = (String) messageMap.get("operationType");
+        Integer position = messageMap.get("position") instanceof Number ? ((Number) messageMap.get("position")).intValue() : null;
+        String content = (String) messageMap.get("content");
+        Integer version = messageMap.get("version") instanceof Number ? ((Number) messageMap.get("version")).intValue() : null;
+
+        if (sectionId == null || opType == null || position == null || version == null) {
+            return;
+        }
+
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        SectionedDocument sectioned = live != null ? live.getSectioned() : null;
+        if (sectioned == null) {
+            // 分段模式已关闭，按整篇文档重新同步
+            handleGetDocument(session, docId);
+            return;
+        }
+        if (sectionId < 0 || sectionId >= sectioned.sectionCount()) {
+            return;
+        }
+
+        // 跨分段删除时客户端所见的后续分段版本
+        Map<Integer, Integer> baseVersions = new HashMap<>();
+        if (messageMap.get("baseVersions") instanceof Map<?, ?> versions) {
+            for (Map.Entry<?, ?> entry : versions.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    try {
+                        baseVersions.put(Integer.parseInt(String.valueOf(entry.getKey())), ((Number) entry.getValue()).intValue());
+                    } catch (NumberFormatException ignored) {
                     }
                 }
             }
         }
+
+        OTAlgorithm.OperationType type = "insert".equals(opType) ? OTAlgorithm.OperationType.INSERT : OTAlgorithm.OperationType.DELETE;
+        OTAlgorithm.Operation operation = new OTAlgorithm.Operation(type, position, content, version);
+        boolean applied = sectioned.apply(sectionId, operation, baseVersions,
+                sectionOperations -> broadcastSectionOperations(session, messageMap, live, sectionOperations));
+        if (applied) {
+            return;
+        }
+        if (sectioned.isActive()) {
+            // 跨分段删除的版本冲突，返回最新布局由客户端重试
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "section_conflict");
+            response.put("docId", docId);
+            response.put("sectionId", sectionId);
+            response.put("sections", sectioned.layout());
+            send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+        } else {
+            handleGetDocument(session, docId);
+        }
     }
 
     /**
-     * 处理获取文档内容请求
+     * 广播已应用的分段操作（在持有分段锁时调用），每条操作推进一次文档版本
      */
-    private void handleGetDocument(WebSocketSession session, Long docId) throws IOException {
-        String content = DOCUMENT_CONTENTS.getOrDefault(docId, "");
-        int version = DOCUMENT_VERSIONS.get(docId).get();
+    private void broadcastSectionOperations(WebSocketSession session, Map<String, Object> messageMap, LiveDocument live,
+                                            List<SectionedDocument.SectionOperation> sectionOperations) {
+        Long docId = live.getDocId();
+        AtomicInteger documentVersion = live.getVersion();
+        live.markDirty();
+        try {
+            for (SectionedDocument.SectionOperation sectionOperation : sectionOperations) {
+                OTAlgorithm.Operation operation = sectionOperation.operation();
+                int version = documentVersion.incrementAndGet();
+                Map<String, Object> response = new HashMap<>();
+                response.put("type", "section_operation");
+                response.put("docId", docId);
+                response.put("sectionId", sectionOperation.sectionId());
+                response.put("operationType", operation.getType() == OTAlgorithm.OperationType.INSERT ? "insert" : "delete");
+                response.put("position", operation.getPosition());
+                response.put("content", operation.getContent());
+                response.put("version", operation.getVersion());
+                response.put("documentVersion", version);
+                response.put("userId", messageMap.get("userId"));
+                response.put("username", messageMap.get("username"));
+                String responseJson = objectMapper.writeValueAsString(response);
+                streamBroadcaster.publishOperation(docId, responseJson, version);
+                broadcast(docId, session, SessionOutbox.Lane.OPS, null, responseJson);
+            }
+        } catch (IOException e) {
+            logger.warn("广播分段操作失败, docId: {}, 错误: {}", docId, e.getMessage());
+        }
+    }
+
+    /**
+     * 退出分段模式：把分段拼回整篇文档并要求所有客户端重新同步，调用方持有文档锁
+     * 分段期间的操作没有整篇文档的历史，之后旧版本的整篇操作都需要重新同步
+     */
+    private void closeSections(LiveDocument live) throws IOException {
+        SectionedDocument sectioned = live.exitSections();
+        if (sectioned == null) {
+            return;
+        }
+        Long docId = live.getDocId();
+        String content = sectioned.close();
+        live.replaceContent(content);
+        int version = live.getVersion().get();
+        live.getHistory().reset(version);
 
         Map<String, Object> response = new HashMap<>();
-        response.put("type", "document_content");
+        response.put("type", "sections_disabled");
         response.put("docId", docId);
         response.put("content", content);
         response.put("version", version);
+        broadcast(docId, null, SessionOutbox.Lane.OPS, null, objectMapper.writeValueAsString(response));
 
-        synchronized (session) {
-            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+        // 只读观众收到新的全量快照
+        Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("type", "document_content");
+        snapshot.put("docId", docId);
+        snapshot.put("content", content);
+        snapshot.put("version", version);
+        streamBroadcaster.publishSnapshot(docId, objectMapper.writeValueAsString(snapshot));
+        logger.info("文档退出分段模式, docId: {}, 版本: {}", docId, version);
+    }
+
+    /**
+     * 根据最近一秒的操作频率切换文档的tick模式（带滞后区间，避免频繁抖动）
+     */
+    private void updateTickModes() {
+        for (Map.Entry<Long, AtomicInteger> entry : DOCUMENT_OP_COUNTERS.entrySet()) {
+            Long docId = entry.getKey();
+            int opsLastSecond = entry.getValue().getAndSet(0);
+            LiveDocument live = liveDocumentRegistry.get(docId);
+            if (live == null) {
+                DOCUMENT_OP_COUNTERS.remove(docId);
+                continue;
+            }
+            if (opsLastSecond >= tickEnableOpsPerSecond && !TICK_BATCHES.containsKey(docId)) {
+                synchronized (live) {
+                    TICK_BATCHES.put(docId, new ArrayList<>());
+                }
+                logger.info("文档进入批量广播模式, docId: {}, 每秒操作数: {}", docId, opsLastSecond);
+            } else if (opsLastSecond <= tickDisableOpsPerSecond && TICK_BATCHES.containsKey(docId)) {
+                // 退出前把本周期剩余的内容更新和操作发送出去，再恢复逐条广播
+                synchronized (live) {
+                    flushTick(docId);
+                    TICK_BATCHES.remove(docId);
+                }
+                logger.info("文档退出批量广播模式, docId: {}, 每秒操作数: {}", docId, opsLastSecond);
+            }
+        }
+    }
+
+    /**
+     * tick周期到达：把每个文档本周期内接受的操作合并为一帧发送
+     */
+    private void flushTickBatches() {
+        for (Long docId : TICK_BATCHES.keySet()) {
+            LiveDocument live = liveDocumentRegistry.get(docId);
+            if (live == null) {
+                TICK_BATCHES.remove(docId);
+                TICK_CONTENT_UPDATES.remove(docId);
+                continue;
+            }
+            // 持有文档锁交换批次，保证与后续操作的顺序
+            synchronized (live) {
+                flushTick(docId);
+            }
+        }
+    }
+
+    /**
+     * 发出文档本周期待广播的整篇内容更新和操作（内容更新在前），调用方持有文档锁
+     */
+    private void flushTick(Long docId) {
+        PendingContentUpdate content = TICK_CONTENT_UPDATES.remove(docId);
+        if (content != null) {
+            broadcast(docId, content.origin(), SessionOutbox.Lane.OPS, null, content.json());
+        }
+        List<PendingOperation> batch = TICK_BATCHES.get(docId);
+        if (batch != null && !batch.isEmpty()) {
+            TICK_BATCHES.put(docId, new ArrayList<>());
+            sendTickBatch(docId, batch);
+        }
+    }
+
+    /**
+     * 发送一批操作：每个接收者一帧有序的operations消息，不包含接收者自己提交的操作
+     */
+    private void sendTickBatch(Long docId, List<PendingOperation> batch) {
+        Set<WebSocketSession> sessions = DOCUMENT_SESSIONS.get(docId);
+        if (sessions == null || batch == null || batch.isEmpty()) {
+            return;
+        }
+        String fullFrame = null;
+        for (WebSocketSession recipient : sessions) {
+            if (!recipient.isOpen()) {
+                continue;
+            }
+            String frame;
+            boolean authoredAny = false;
+            for (PendingOperation op : batch) {
+                if (op.origin().equals(recipient)) {
+                    authoredAny = true;
+                    break;
+                }
+            }
+            if (authoredAny) {
+                frame = buildOperationsFrame(docId, batch, recipient);
+            } else {
+                // 大多数接收者没有提交操作，共用同一帧
+                if (fullFrame == null) {
+                    fullFrame = buildOperationsFrame(docId, batch, null);
+                }
+                frame = fullFrame;
+            }
+            if (frame == null) {
+                continue;
+            }
+            send(recipient, SessionOutbox.Lane.OPS, null, new TextMessage(frame));
+        }
+    }
+
+    /**
+     * 拼接operations帧，操作JSON已预先序列化，这里只做字符串拼接
+     * @param exclude 需要排除其提交操作的会话，null表示不排除
+     * @return 帧内容，没有可发送的操作时返回null
+     */
+    private String buildOperationsFrame(Long docId, List<PendingOperation> batch, WebSocketSession exclude) {
+        StringBuilder sb = new StringBuilder(64 + batch.size() * 128);
+        int count = 0;
+        sb.append("{\"type\":\"operations\",\"docId\":").append(docId)
+          .append(",\"version\":").append(batch.get(batch.size() - 1).version())
+          .append(",\"operations\":[");
+        for (PendingOperation op : batch) {
+            if (exclude != null && op.origin().equals(exclude)) {
+                continue;
+            }
+            if (count++ > 0) {
+                sb.append(',');
+            }
+            sb.append(op.json());
+        }
+        sb.append("]}");
+        return count == 0 ? null : sb.toString();
+    }
+
+    /**
+     * tick模式下等待广播的操作
+     * @param origin 提交该操作的会话
+     * @param json 预先序列化的操作消息
+     * @param version 操作应用后的文档版本
+     */
+    private record PendingOperation(WebSocketSession origin, String json, int version) {
+    }
+
+    /**
+     * tick模式下等待广播的整篇内容更新
+     * @param origin 提交该更新的会话（不接收广播）
+     * @param json 预先序列化的content_update消息
+     */
+    private record PendingContentUpdate(WebSocketSession origin, String json) {
+    }
+
+    /**
+     * 处理获取文档内容请求
+     */
+    private void handleGetDocument(WebSocketSession session, Long docId) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "document_content");
+        response.put("docId", docId);
+
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null || !ensureSeeded(session, live, docId, "get_document", Map.of())) {
+            return;
+        }
+        SectionedDocument sectioned = live.getSectioned();
+        if (sectioned != null) {
+            // 分段模式下同时返回分段布局，客户端据此换算分段内位置
+            SectionedDocument.Snapshot snapshot = sectioned.snapshot(live.getVersion()::get);
+            response.put("content", snapshot.content());
+            response.put("version", snapshot.version());
+            response.put("sections", snapshot.sections());
+        } else {
+            LiveDocument.Snapshot snapshot = live.snapshot();
+            response.put("content", snapshot != null ? snapshot.content() : "");
+            response.put("version", snapshot != null ? snapshot.version() : live.getVersion().get());
+        }
+
+        send(session, SessionOutbox.Lane.OPS, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    /**
+     * 返回文档统计（字数、字符数和标题大纲），统计随每次修改增量维护，读取不扫描全文
+     */
+    private void handleGetStats(WebSocketSession session, Long docId) throws IOException {
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        if (live == null || !ensureSeeded(session, live, docId, "get_stats", Map.of())) {
+            return;
+        }
+        Map<String, Object> stats = live.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "document_stats");
+        response.put("docId", docId);
+        if (stats == null) {
+            stats = DocumentStats.summarize("");
+            response.put("version", live.getVersion().get());
+        } else {
+            response.put("version", stats.remove("version"));
+        }
+        response.put("stats", stats);
+        send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    /**
+     * 只读会话提交编辑时回复read_only；加入、光标等在线状态消息直接忽略
+     */
+    private void rejectReadOnly(WebSocketSession session, Long docId, String type) throws IOException {
+        if (!isEditType(type)) {
+            return;
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "read_only");
+        response.put("docId", docId);
+        response.put("rejectedType", type);
+        response.put("retryAfterMs", admissionController.getRetryAfterMs());
+        send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    private static boolean isEditType(String type) {
+        return "content_update".equals(type) || "operation".equals(type) || "section_operation".equals(type)
+                || "insert_chunk".equals(type) || "operation_batch".equals(type) || "enable_sections".equals(type);
+    }
+
+    /**
+     * 开始停机排空：之后的新会话和编辑都会收到reconnect提示
+     */
+    public void beginDrain() {
+        draining = true;
+    }
+
+    /**
+     * 向所有会话发送reconnect提示，附带文档的最新版本；
+     * 重连延迟在[0, spreadMs]内随机分布，避免所有客户端同时重连、同时加载文档
+     * @return 发送的会话数
+     */
+    public int sendReconnectHints(long spreadMs) {
+        int count = 0;
+        for (Map.Entry<WebSocketSession, Long> entry : SESSION_DOCUMENTS.entrySet()) {
+            try {
+                sendReconnect(entry.getKey(), entry.getValue(), ThreadLocalRandom.current().nextLong(spreadMs + 1));
+                count++;
+            } catch (Exception e) {
+                logger.warn("发送重连提示失败, sessionId: {}, 错误: {}", entry.getKey().getId(), e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 关闭所有会话：先等待发送队列发完（含reconnect提示），到达截止时间后直接关闭
+     * @param deadlineNanos 截止时间（System.nanoTime()）
+     */
+    public void closeAllSessions(long deadlineNanos) {
+        Set<WebSocketSession> sessions = new HashSet<>(SESSION_DOCUMENTS.keySet());
+        while (System.nanoTime() < deadlineNanos) {
+            boolean pending = false;
+            for (WebSocketSession session : sessions) {
+                SessionOutbox outbox = (SessionOutbox) session.getAttributes().get(ATTR_OUTBOX);
+                if (session.isOpen() && outbox != null && outbox.size() > 0) {
+                    pending = true;
+                    break;
+                }
+            }
+            if (!pending) {
+                break;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (WebSocketSession session : sessions) {
+            try {
+                session.close(CloseStatus.SERVICE_RESTARTED);
+            } catch (Exception e) {
+                logger.warn("关闭会话失败, sessionId: {}, 错误: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 发送reconnect提示：version为文档的最新版本（排空时已持久化），客户端重连后据此判断是否需要重新提交未确认的操作
+     */
+    private void sendReconnect(WebSocketSession session, Long docId, long retryAfterMs) throws IOException {
+        send(session, SessionOutbox.Lane.CONTROL, null, reconnectMessage(docId, retryAfterMs));
+    }
+
+    /**
+     * 重连提示消息
+     */
+    private TextMessage reconnectMessage(Long docId, long retryAfterMs) throws IOException {
+        LiveDocument live = liveDocumentRegistry.get(docId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "reconnect");
+        response.put("docId", docId);
+        response.put("version", live != null ? live.getVersion().get() : 0);
+        response.put("retryAfterMs", retryAfterMs);
+        return new TextMessage(objectMapper.writeValueAsString(response));
+    }
+
+    /**
+     * 统计所有会话发送队列的积压消息数，上报给准入控制；同时关闭发送超时的会话（没有新消息入队时也能发现）
+     */
+    private void reportQueueDepth() {
+        try {
+            long depth = 0;
+            for (WebSocketSession session : SESSION_DOCUMENTS.keySet()) {
+                SessionOutbox outbox = (SessionOutbox) session.getAttributes().get(ATTR_OUTBOX);
+                if (outbox != null) {
+                    outbox.checkSendTimeLimit();
+                    depth += outbox.size();
+                }
+            }
+            admissionController.recordQueueDepth(depth);
+        } catch (Exception e) {
+            logger.warn("统计发送队列积压失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 会话级消息总量限流
+     * @return 是否继续处理该消息
+     */
+    private boolean admitFrame(WebSocketSession session) throws IOException {
+        TokenBucket frameBucket = (TokenBucket) session.getAttributes().get(ATTR_FRAME_BUCKET);
+        AtomicInteger strikes = (AtomicInteger) session.getAttributes().get(ATTR_FLOOD_STRIKES);
+        if (frameBucket == null || strikes == null) {
+            return true;
+        }
+        if (frameBucket.tryAcquire()) {
+            strikes.set(0);
+            return true;
+        }
+        if (strikes.incrementAndGet() >= floodCloseThreshold) {
+            logger.warn("会话消息持续超限，断开连接, sessionId: {}, docId: {}", session.getId(), SESSION_DOCUMENTS.get(session));
+            session.close(new CloseStatus(4008, "消息发送过于频繁"));
+        }
+        return false;
+    }
+
+    /**
+     * 编辑操作限流（会话级 + 文档级），超限时向客户端发送回退提示
+     * @return 是否继续处理该编辑操作
+     */
+    private boolean admitEdit(WebSocketSession session, Long docId, String type, Map<String, Object> messageMap) throws IOException {
+        TokenBucket sessionBucket = (TokenBucket) session.getAttributes().get(ATTR_EDIT_BUCKET);
+        if (sessionBucket != null && !sessionBucket.tryAcquire()) {
+            sendBackoff(session, docId, type, messageMap, sessionBucket.millisUntilAvailable());
+            return false;
+        }
+        TokenBucket documentBucket = DOCUMENT_EDIT_BUCKETS.computeIfAbsent(docId, k -> new TokenBucket(documentEditsBurst, documentEditsPerSecond));
+        if (!documentBucket.tryAcquire()) {
+            sendBackoff(session, docId, type, messageMap, documentBucket.millisUntilAvailable());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 编辑和读取前确认实时内容已从数据库加载（连接时加载失败的话在这里重试）
+     * 仍然失败时发送回退提示，不能把操作应用到残缺的内容上，也不能把残缺的内容下发给客户端
+     * @return 是否继续处理该消息
+     */
+    private boolean ensureSeeded(WebSocketSession session, LiveDocument live, Long docId, String type,
+                                 Map<String, Object> messageMap) throws IOException {
+        if (liveDocumentRegistry.seed(live)) {
+            return true;
+        }
+        sendBackoff(session, docId, type, messageMap, SEED_RETRY_MS);
+        return false;
+    }
+
+    /**
+     * 发送回退提示：被拒绝的操作需要客户端在retryAfterMs后重发
+     */
+    private void sendBackoff(WebSocketSession session, Long docId, String type, Map<String, Object> messageMap, long retryAfterMs) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "rate_limited");
+        response.put("docId", docId);
+        response.put("rejectedType", type);
+        response.put("version", messageMap.get("version"));
+        response.put("retryAfterMs", Math.max(retryAfterMs, 1));
+
+        send(session, SessionOutbox.Lane.CONTROL, null, new TextMessage(objectMapper.writeValueAsString(response)));
+    }
+
+    /**
+     * 发送被合并的光标更新（每个会话仅最新一条）
+     */
+    private void flushPendingCursors() {
+        for (Map.Entry<WebSocketSession, Map<String, Object>> entry : PENDING_CURSORS.entrySet()) {
+            WebSocketSession session = entry.getKey();
+            Long docId = SESSION_DOCUMENTS.get(session);
+            if (docId == null || !session.isOpen()) {
+                PENDING_CURSORS.remove(session);
+                continue;
+            }
+            TokenBucket cursorBucket = (TokenBucket) session.getAttributes().get(ATTR_CURSOR_BUCKET);
+            if (cursorBucket != null && !cursorBucket.tryAcquire()) {
+                continue;
+            }
+            // 仅当期间没有更新的位置覆盖时才移除
+            if (PENDING_CURSORS.remove(session, entry.getValue())) {
+                try {
+                    broadcastCursorPosition(session, entry.getValue(), docId);
+                } catch (Exception e) {
+                    logger.warn("发送合并的光标更新失败: {}", e.getMessage());
+                }
+            }
         }
     }
 
@@ -389,6 +1499,11 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
      * 从会话中获取文档ID
      */
     private Long getDocIdFromSession(WebSocketSession session) {
+        // 多路复用连接的文档通道在订阅时已指定文档ID
+        if (session.getAttributes().get(ATTR_DOC_ID) instanceof Long docId) {
+            return docId;
+        }
+
         // 从URI中获取文档ID参数
         String uri = session.getUri().toString();
         
@@ -446,14 +1561,8 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         response.put("docId", docId);
         response.put("users", new ArrayList<>(users));
 
-        String message = objectMapper.writeValueAsString(response);
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(message));
-                }
-            }
-        }
+        // 用户列表是全量快照，积压时只需发送最新一份
+        broadcast(docId, null, SessionOutbox.Lane.PRESENCE, "online_users", objectMapper.writeValueAsString(response));
     }
 
     /**
@@ -471,14 +1580,7 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         response.put("userId", userInfo.get("userId"));
         response.put("username", userInfo.get("username"));
 
-        String message = objectMapper.writeValueAsString(response);
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(message));
-                }
-            }
-        }
+        broadcast(docId, null, SessionOutbox.Lane.CONTROL, null, objectMapper.writeValueAsString(response));
     }
 
     /**
@@ -496,13 +1598,39 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         response.put("userId", userInfo.get("userId"));
         response.put("username", userInfo.get("username"));
 
-        String message = objectMapper.writeValueAsString(response);
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                synchronized (session) {
-                    session.sendMessage(new TextMessage(message));
-                }
+        broadcast(docId, null, SessionOutbox.Lane.CONTROL, null, objectMapper.writeValueAsString(response));
+    }
+
+    /**
+     * 向文档的所有会话（可排除发送者）广播消息，消息只构造一次
+     * @param exclude 不需要接收的会话，null表示全部发送
+     */
+    private void broadcast(Long docId, WebSocketSession exclude, SessionOutbox.Lane lane, Object coalesceKey, String json) {
+        Set<WebSocketSession> sessions = DOCUMENT_SESSIONS.get(docId);
+        if (sessions == null) {
+            return;
+        }
+        TextMessage textMessage = new TextMessage(json);
+        for (WebSocketSession otherSession : sessions) {
+            if (!otherSession.equals(exclude)) {
+                send(otherSession, lane, coalesceKey, textMessage);
             }
         }
     }
+
+    /**
+     * 通过会话的优先级发送队列发送消息
+     */
+    private void send(WebSocketSession session, SessionOutbox.Lane lane, Object coalesceKey, TextMessage message) {
+        if (!session.isOpen()) {
+            return;
+        }
+        SessionOutbox outbox = (SessionOutbox) session.getAttributes()
+                .computeIfAbsent(ATTR_OUTBOX, k -> newOutbox(session));
+        outbox.send(lane, coalesceKey, message);
+    }
+
+    private SessionOutbox newOutbox(WebSocketSession session) {
+        return new SessionOutbox(session, sender, outboxMaxQueued, outboxMaxPresence, outboxBufferSizeLimit, outboxSendTimeLimitMs);
+    }
 }
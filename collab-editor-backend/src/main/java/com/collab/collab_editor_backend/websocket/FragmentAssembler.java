@@ -0,0 +1,171 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片消息拼装器
+ * 处理器开启supportsPartialMessages后，容器按缓冲区大小把大消息拆成多个分片依次交给处理器；
+ * 分片复制到池化的字符段中，收齐后直接从字符段流式解析JSON，不再拼接成完整的字符串
+ * 同一会话的分片由容器串行投递，拼装器本身不做同步
+ * 局限：省掉的只是拼接分片的那一份副本，JSON解析时仍会为content等字段创建完整的String和Map，
+ * 峰值内存仍与消息大小成正比；大段内容应使用insert_chunk分块发送，并由maxChars限制单条消息的上限
+ */
+public class FragmentAssembler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FragmentAssembler.class);
+
+    // 每段容量（字符数）
+    private static final int SEGMENT_CHARS = 16384;
+    // 池中最多保留的空闲段数，超出的段交由GC回收
+    private static final int MAX_POOLED_SEGMENTS = 256;
+    // 会话属性键：正在拼装的消息
+    private static final String ATTR_ASSEMBLER = "fragmentAssembler";
+
+    private static final Queue<char[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final List<char[]> segments = new ArrayList<>();
+    private int length;
+
+    /**
+     * 读取一帧文本消息：完整消息直接解析，分片先拼装，收齐后再解析
+     * 消息（拼装后）超过maxChars时以1009关闭连接
+     * @return 解析出的消息；消息尚未收齐或已超限时返回null
+     */
+    public static Map<String, Object> read(WebSocketSession session, TextMessage message, ObjectMapper objectMapper,
+                                           int maxChars) throws IOException {
+        FragmentAssembler assembler = (FragmentAssembler) session.getAttributes().get(ATTR_ASSEMBLER);
+        String payload = message.getPayload();
+
+        // 未分片的消息走原来的路径
+        if (assembler == null && message.isLast()) {
+            if (payload.length() > maxChars) {
+                rejectTooLarge(session, payload.length(), maxChars);
+                return null;
+            }
+            return objectMapper.readValue(payload, Map.class);
+        }
+
+        if (assembler == null) {
+            assembler = new FragmentAssembler();
+            session.getAttributes().put(ATTR_ASSEMBLER, assembler);
+        }
+        if (assembler.length + payload.length() > maxChars) {
+            discard(session);
+            rejectTooLarge(session, assembler.length + payload.length(), maxChars);
+            return null;
+        }
+        assembler.append(payload);
+        if (!message.isLast()) {
+            return null;
+        }
+
+        session.getAttributes().remove(ATTR_ASSEMBLER);
+        try {
+            return objectMapper.readValue(assembler.new SegmentReader(), Map.class);
+        } finally {
+            assembler.release();
+        }
+    }
+
+    /**
+     * 丢弃会话上未收齐的消息并归还字符段（连接关闭时调用）
+     */
+    public static void discard(WebSocketSession session) {
+        FragmentAssembler assembler = (FragmentAssembler) session.getAttributes().remove(ATTR_ASSEMBLER);
+        if (assembler != null) {
+            assembler.release();
+        }
+    }
+
+    /**
+     * 池中空闲段数
+     */
+    public static int pooledSegments() {
+        return POOLED.get();
+    }
+
+    private static void rejectTooLarge(WebSocketSession session, int length, int maxChars) throws IOException {
+        logger.warn("消息过大，断开连接, sessionId: {}, 长度: {}, 上限: {}", session.getId(), length, maxChars);
+        session.close(CloseStatus.TOO_BIG_TO_PROCESS.withReason("消息过大，大段文本请使用insert_chunk分块发送"));
+    }
+
+    private void append(String fragment) {
+        int src = 0;
+        int n = fragment.length();
+        while (src < n) {
+            int used = length % SEGMENT_CHARS;
+            if (used == 0 && length / SEGMENT_CHARS == segments.size()) {
+                segments.add(acquireSegment());
+            }
+            char[] segment = segments.get(segments.size() - 1);
+            int piece = Math.min(SEGMENT_CHARS - used, n - src);
+            fragment.getChars(src, src + piece, segment, used);
+            src += piece;
+            length += piece;
+        }
+    }
+
+    private void release() {
+        for (char[] segment : segments) {
+            if (POOLED.incrementAndGet() <= MAX_POOLED_SEGMENTS) {
+                POOL.offer(segment);
+            } else {
+                POOLED.decrementAndGet();
+            }
+        }
+        segments.clear();
+        length = 0;
+    }
+
+    private static char[] acquireSegment() {
+        char[] segment = POOL.poll();
+        if (segment != null) {
+            POOLED.decrementAndGet();
+            return segment;
+        }
+        return new char[SEGMENT_CHARS];
+    }
+
+    /**
+     * 按顺序读取各字符段，供JSON解析器流式读取
+     */
+    private class SegmentReader extends Reader {
+        private int position;
+
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            if (position >= length) {
+                return -1;
+            }
+            int total = 0;
+            while (total < count && position < length) {
+                char[] segment = segments.get(position / SEGMENT_CHARS);
+                int start = position % SEGMENT_CHARS;
+                int piece = Math.min(Math.min(SEGMENT_CHARS - start, length - position), count - total);
+                System.arraycopy(segment, start, buffer, offset + total, piece);
+                position += piece;
+                total += piece;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
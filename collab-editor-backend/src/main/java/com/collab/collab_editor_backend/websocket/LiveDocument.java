@@ -0,0 +1,253 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.handler.DocumentStats;
+import com.collab.collab_editor_backend.handler.OTAlgorithm;
+import com.collab.collab_editor_backend.handler.OperationHistory;
+import com.collab.collab_editor_backend.handler.SectionedDocument;
+import com.collab.collab_editor_backend.util.OffHeapText;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 正在编辑中的文档
+ * 保存实时内容、版本号和操作历史；同一文档的操作以该对象为锁串行处理
+ * 实时内容必须先用数据库中的内容初始化（seed）或被整篇替换后才算权威，之前不接受操作，也不会被持久化
+ */
+public class LiveDocument {
+
+    /**
+     * 文档内容快照
+     * @param content 内容
+     * @param version 内容对应的版本
+     * @param etag 内容对应的ETag
+     */
+    public record Snapshot(String content, int version, String etag) {
+    }
+
+    // 每次打开的文档使用不同的标识，版本号从0重新开始时ETag也不会与之前的重复
+    private final String instanceId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    // 整篇替换次数：整篇替换不推进版本号，ETag需要单独区分
+    private int replacements;
+
+    private final Long docId;
+    // 操作历史（列式存储）
+    private final OperationHistory history = new OperationHistory();
+    // 当前版本，分段模式下由各分段的操作共同推进
+    private final AtomicInteger version = new AtomicInteger(0);
+    // 当前内容（堆外），尚未收到内容或处于分段模式时为null
+    private OffHeapText content;
+    // 内容是否已从数据库初始化或被整篇替换，之后实时内容才是完整文档
+    private volatile boolean seeded;
+    // 整篇内容的统计与标题大纲，与content同时创建，随每次修改增量更新
+    private DocumentStats stats;
+    // 分段模式下的分段文档
+    private volatile SectionedDocument sectioned;
+    // 是否有尚未持久化的修改
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private boolean released;
+
+    public LiveDocument(Long docId) {
+        this.docId = docId;
+    }
+
+    public Long getDocId() {
+        return docId;
+    }
+
+    public OperationHistory getHistory() {
+        return history;
+    }
+
+    public AtomicInteger getVersion() {
+        return version;
+    }
+
+    public SectionedDocument getSectioned() {
+        return sectioned;
+    }
+
+    /**
+     * 标记有尚未持久化的修改（每次应用修改后调用），内容尚未初始化时忽略
+     */
+    public void markDirty() {
+        if (seeded) {
+            dirty.set(true);
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * 取出待持久化的快照并清除修改标记；持久化失败时调用方需重新markDirty()
+     * 只有从数据库初始化过的内容才会返回，未初始化的缓冲区写回会覆盖数据库中的完整内容
+     * @return 快照，没有未持久化的修改或内容尚未初始化时返回null
+     */
+    public synchronized Snapshot takeDirtySnapshot() {
+        if (!dirty.getAndSet(false) || !seeded) {
+            return null;
+        }
+        return snapshot();
+    }
+
+    /**
+     * 当前内容缓冲区，没有时返回null
+     */
+    public synchronized OffHeapText getContent() {
+        return content;
+    }
+
+    /**
+     * 当前内容缓冲区，没有时创建空缓冲区
+     */
+    public synchronized OffHeapText getOrCreateContent() {
+        if (content == null) {
+            content = new OffHeapText();
+            if (released) {
+                content.release();
+            }
+            stats = new DocumentStats(content);
+        }
+        return content;
+    }
+
+    /**
+     * 内容是否已初始化（可以接受操作）
+     */
+    public boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * 用数据库中保存的内容初始化实时内容，已初始化（或已被整篇替换）时忽略
+     * @param stored 数据库中的内容
+     */
+    public synchronized void seed(String stored) {
+        if (seeded) {
+            return;
+        }
+        getOrCreateContent().replace(stored != null ? stored : "");
+        stats.rebuild();
+        seeded = true;
+    }
+
+    /**
+     * 把操作应用到整篇内容，同时增量更新统计
+     * @throws IllegalStateException 内容尚未初始化（在空缓冲区上应用会得到残缺的文档）
+     */
+    public synchronized void applyOperation(OTAlgorithm.Operation operation) {
+        if (!seeded) {
+            throw new IllegalStateException("文档内容尚未加载, docId: " + docId);
+        }
+        getOrCreateContent();
+        stats.apply(operation);
+    }
+
+    /**
+     * 整体替换内容并重新统计，替换后的内容即为完整文档
+     */
+    public synchronized void replaceContent(String newContent) {
+        getOrCreateContent().replace(newContent);
+        stats.rebuild();
+        replacements++;
+        seeded = true;
+    }
+
+    /**
+     * 用已写入数据库的内容整体替换（REST保存、版本回滚），替换后与数据库一致，清除修改标记，
+     * 替换前未持久化的修改不会再被写回
+     */
+    public synchronized void replaceWithStored(String stored) {
+        replaceContent(stored);
+        dirty.set(false);
+    }
+
+    /**
+     * 当前统计：字数、字符数和标题大纲，分段模式下汇总各分段
+     * @return 统计结果（含version），内容尚未初始化时返回null（应回退到数据库）
+     */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> result;
+        SectionedDocument current = sectioned;
+        if (current != null) {
+            result = current.stats();
+        } else if (stats != null && seeded) {
+            result = stats.summary(0);
+        } else {
+            return null;
+        }
+        result.put("version", version.get());
+        return result;
+    }
+
+    /**
+     * 进入分段模式：内容交由分段文档管理，释放整篇缓冲区
+     */
+    public synchronized void enterSections(SectionedDocument sectionedDocument) {
+        sectioned = sectionedDocument;
+        if (content != null) {
+            content.release();
+            content = null;
+            stats = null;
+        }
+    }
+
+    /**
+     * 退出分段模式，调用方负责把分段内容写回整篇缓冲区
+     * @return 之前的分段文档，不在分段模式时返回null
+     */
+    public synchronized SectionedDocument exitSections() {
+        SectionedDocument previous = sectioned;
+        sectioned = null;
+        return previous;
+    }
+
+    /**
+     * 读取内容和版本的一致快照
+     * @return 快照，内容尚未初始化时返回null（应回退到数据库）
+     */
+    public synchronized Snapshot snapshot() {
+        SectionedDocument current = sectioned;
+        if (current != null) {
+            SectionedDocument.Snapshot sectionedSnapshot = current.snapshot(version::get);
+            return new Snapshot(sectionedSnapshot.content(), sectionedSnapshot.version(), etag(sectionedSnapshot.version()));
+        }
+        if (content == null || !seeded) {
+            return null;
+        }
+        return new Snapshot(content.toString(), version.get(), etag(version.get()));
+    }
+
+    /**
+     * 当前内容的ETag，不复制内容
+     * @return ETag，内容尚未初始化时返回null
+     */
+    public synchronized String etag() {
+        if (sectioned == null && (content == null || !seeded)) {
+            return null;
+        }
+        return etag(version.get());
+    }
+
+    private String etag(int currentVersion) {
+        return "\"L" + instanceId + "." + currentVersion + "." + replacements + "\"";
+    }
+
+    /**
+     * 文档关闭时释放堆外内存
+     */
+    public synchronized void release() {
+        released = true;
+        if (content != null) {
+            content.release();
+        }
+        SectionedDocument current = exitSections();
+        if (current != null) {
+            current.close();
+        }
+    }
+}
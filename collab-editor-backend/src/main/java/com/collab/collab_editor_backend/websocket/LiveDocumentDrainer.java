@@ -0,0 +1,156 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.service.DocumentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 停机排空
+ * 应用停止时（先于Web服务器停止）依次：停止接受新会话和编辑 → 并行持久化所有有未保存修改的在线文档 →
+ * 向客户端发送带最新版本的reconnect提示（重连时间随机分散）→ 在截止时间内关闭所有会话
+ */
+@Component
+public class LiveDocumentDrainer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveDocumentDrainer.class);
+
+    @Autowired
+    private LiveDocumentRegistry liveDocumentRegistry;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private DocumentWebSocketHandler documentWebSocketHandler;
+
+    // 排空的总时限
+    @Value("${collab.ws.drain.timeout-ms:20000}")
+    private long timeoutMs;
+    // 并行持久化的线程数
+    @Value("${collab.ws.drain.flush-parallelism:4}")
+    private int flushParallelism;
+    // 客户端重连延迟的随机分散范围
+    @Value("${collab.ws.drain.reconnect-spread-ms:10000}")
+    private long reconnectSpreadMs;
+
+    private volatile boolean running;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            drain();
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 最大阶段值：最先停止，此时Web服务器和数据源都还可用
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE;
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        logger.info("开始排空在线文档, 文档数: {}", liveDocumentRegistry.size());
+
+        // 1. 停止接受新会话和编辑
+        documentWebSocketHandler.beginDrain();
+
+        // 2. 并行持久化有未保存修改的文档（为关闭会话预留一半时限）
+        flushDirtyDocuments(start + (deadline - start) / 2);
+
+        // 3. 发送reconnect提示
+        int hinted = documentWebSocketHandler.sendReconnectHints(reconnectSpreadMs);
+
+        // 4. 在截止时间内关闭会话
+        documentWebSocketHandler.closeAllSessions(deadline);
+
+        // 排空开始前已在处理中的编辑可能在第一次持久化之后才应用，再补一次
+        flushDirtyDocuments(deadline);
+
+        logger.info("在线文档排空完成, 已提示重连会话数: {}, 耗时: {}ms", hinted,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * 并行持久化所有有未保存修改的在线文档，持久化失败的文档保留修改标记
+     * @param deadlineNanos 截止时间（System.nanoTime()）
+     */
+    private void flushDirtyDocuments(long deadlineNanos) {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        AtomicInteger flushed = new AtomicInteger();
+        for (LiveDocument live : liveDocumentRegistry.documents()) {
+            if (!live.isDirty()) {
+                continue;
+            }
+            tasks.add(() -> {
+                // 取快照和写数据库都持有文档锁：REST保存、回滚同样在文档锁内写数据库并替换实时内容、清除修改标记，
+                // 两者串行执行，替换前的旧内容不会在回滚之后被写回
+                synchronized (live) {
+                    // 内容尚未从数据库初始化的文档不会返回快照，数据库中的内容保持不变
+                    LiveDocument.Snapshot snapshot = live.takeDirtySnapshot();
+                    if (snapshot == null) {
+                        return null;
+                    }
+                    try {
+                        if (documentService.persistLiveContent(live.getDocId(), snapshot.content())) {
+                            flushed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        live.markDirty();
+                        logger.error("持久化在线文档失败, docId: {}, 版本: {}, 错误: {}", live.getDocId(), snapshot.version(), e.getMessage(), e);
+                    }
+                }
+                return null;
+            });
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(flushParallelism, tasks.size())), r -> {
+            Thread t = new Thread(r, "doc-drain-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks, Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            long timedOut = futures.stream().filter(Future::isCancelled).count();
+            if (timedOut > 0) {
+                logger.error("排空时限内未能持久化全部文档, 未完成: {}", timedOut);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("已持久化在线文档: {}/{}", flushed.get(), tasks.size());
+    }
+}
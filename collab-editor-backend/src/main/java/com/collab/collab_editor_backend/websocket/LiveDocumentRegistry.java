@@ -0,0 +1,96 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线文档注册表
+ * 文档有编辑会话时在此登记，WebSocket处理器、内容接口和导出共用同一份实时内容
+ * 登记时用数据库中的内容初始化实时内容，之后的操作都应用在完整文档上
+ */
+@Component
+public class LiveDocumentRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveDocumentRegistry.class);
+
+    @Autowired
+    private DocumentLoader documentLoader;
+
+    @Autowired
+    private DocumentContentStore contentStore;
+
+    // 文档ID到在线文档的映射
+    private final Map<Long, LiveDocument> documents = new ConcurrentHashMap<>();
+
+    /**
+     * 登记文档（已登记时返回已有对象）并加载内容；加载失败时仍然登记，之后的编辑会重试加载
+     */
+    public LiveDocument open(Long docId) {
+        LiveDocument document = documents.computeIfAbsent(docId, LiveDocument::new);
+        // 读取数据库不放在computeIfAbsent中，避免阻塞同一分桶的其他文档
+        seed(document);
+        return document;
+    }
+
+    /**
+     * 确保实时内容已用数据库中的内容初始化
+     * 多个会话同时打开冷文档时由DocumentLoader合并为一次查询；已初始化或已被整篇替换时直接返回
+     * @return 是否已初始化，读取失败时返回false（此时不能接受操作）
+     */
+    public boolean seed(LiveDocument document) {
+        if (document.isSeeded()) {
+            return true;
+        }
+        try {
+            Document stored = documentLoader.load(document.getDocId());
+            document.seed(stored != null ? contentStore.get(stored) : "");
+            return true;
+        } catch (Exception e) {
+            logger.error("加载在线文档内容失败, docId: {}, 错误: {}", document.getDocId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 获取在线文档，不在编辑中时返回null
+     */
+    public LiveDocument get(Long docId) {
+        return documents.get(docId);
+    }
+
+    /**
+     * 获取在线文档的内容快照
+     * @return 快照，文档不在编辑中或实时内容尚未从数据库初始化时返回null（应回退到数据库）
+     */
+    public LiveDocument.Snapshot snapshot(Long docId) {
+        LiveDocument document = documents.get(docId);
+        return document != null ? document.snapshot() : null;
+    }
+
+    /**
+     * 最后一个会话离开后移除文档并释放内容
+     */
+    public void close(Long docId) {
+        LiveDocument document = documents.remove(docId);
+        if (document != null) {
+            document.release();
+        }
+    }
+
+    public Collection<LiveDocument> documents() {
+        return documents.values();
+    }
+
+    public int size() {
+        return documents.size();
+    }
+}
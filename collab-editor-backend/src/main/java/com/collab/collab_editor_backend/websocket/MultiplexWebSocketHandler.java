@@ -0,0 +1,317 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.entity.User;
+import com.collab.collab_editor_backend.mapper.UserMapper;
+import com.collab.collab_editor_backend.util.JwtUtil;
+import com.collab.collab_editor_backend.util.TokenBucket;
+import com.collab.collab_editor_backend.util.WebSocketUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多路复用WebSocket处理器
+ * 每个客户端只建立一条连接，握手时认证一次，之后通过subscribe/unsubscribe订阅
+ * doc:{docId}、chat、notifications通道；下行消息带channel字段，上行消息按channel字段路由
+ */
+public class MultiplexWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiplexWebSocketHandler.class);
+
+    // 通道名称
+    private static final String CHANNEL_DOC_PREFIX = "doc:";
+    private static final String CHANNEL_CHAT = "chat";
+    private static final String CHANNEL_NOTIFICATIONS = "notifications";
+    // 会话属性键：通道名称到逻辑通道会话的映射
+    private static final String ATTR_CHANNELS = "channels";
+    // 会话属性键：物理连接的消息总量限流器与超限计数
+    private static final String ATTR_FRAME_BUCKET = "frameBucket";
+    private static final String ATTR_FLOOD_STRIKES = "floodStrikes";
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private DocumentWebSocketHandler documentWebSocketHandler;
+
+    @Autowired
+    private ChatWebSocketHandler chatWebSocketHandler;
+
+    // 单条连接最多同时订阅的通道数
+    @Value("${collab.ws.mux.max-channels:32}")
+    private int maxChannels;
+
+    // 单条消息（拼装分片后）的最大字符数，与文档连接一致
+    @Value("${collab.ws.max-message-chars:4194304}")
+    private int maxMessageChars;
+
+    // 限流配置：单条连接的消息总量（解析前检查，与文档连接共用配置）
+    @Value("${collab.ws.rate-limit.session-frames-per-second:200}")
+    private double sessionFramesPerSecond;
+    @Value("${collab.ws.rate-limit.session-frames-burst:400}")
+    private double sessionFramesBurst;
+    // 连续超限多少条消息后断开连接
+    @Value("${collab.ws.rate-limit.flood-close-threshold:1000}")
+    private int floodCloseThreshold;
+
+    // JSON序列化/反序列化工具
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        // 握手时认证一次，所有通道共用
+        Long userId = WebSocketUtils.getUserIdFromSession(session, jwtUtil);
+        if (userId == null) {
+            logger.error("多路复用连接失败：无法识别用户身份, URI: {}", session.getUri());
+            session.close(new CloseStatus(4001, "无法识别用户身份"));
+            return;
+        }
+        String username = WebSocketUtils.getUsernameFromSession(session, jwtUtil);
+        if (username == null) {
+            try {
+                User user = userMapper.selectById(userId);
+                if (user != null && user.getUsername() != null && !user.getUsername().isEmpty()) {
+                    username = user.getUsername();
+                }
+            } catch (Exception ignored) {}
+        }
+        if (username == null) {
+            username = "用户" + userId;
+        }
+
+        session.getAttributes().put(WebSocketUtils.ATTR_USER_ID, userId);
+        session.getAttributes().put(WebSocketUtils.ATTR_USERNAME, username);
+        session.getAttributes().put(ATTR_FRAME_BUCKET, new TokenBucket(sessionFramesBurst, sessionFramesPerSecond));
+        session.getAttributes().put(ATTR_FLOOD_STRIKES, new AtomicInteger(0));
+        session.getAttributes().put(ATTR_CHANNELS, new ConcurrentHashMap<String, ChannelWebSocketSession>());
+        logger.info("用户 {} 建立了多路复用连接", userId);
+    }
+
+    /**
+     * 文档通道上的大消息同样按分片投递并拼装
+     */
+    @Override
+    public boolean supportsPartialMessages() {
+        return true;
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Map<String, ChannelWebSocketSession> channels = getChannels(session);
+        if (channels == null) {
+            return;
+        }
+
+        // 解析前先做连接级总量限流：刷屏的消息不再拼装和解析JSON，连续超限过多则断开
+        // 分片消息在收到最后一片时计一次，被丢弃时已缓存的分片一并释放
+        if (message.isLast() && !admitFrame(session)) {
+            FragmentAssembler.discard(session);
+            return;
+        }
+
+        Map<String, Object> messageMap = FragmentAssembler.read(session, message, objectMapper, maxMessageChars);
+        if (messageMap == null) {
+            return;
+        }
+        String type = (String) messageMap.get("type");
+        String channel = (String) messageMap.get("channel");
+        if (channel == null) {
+            sendControl(session, "error", null, "缺少channel字段");
+            return;
+        }
+
+        if ("subscribe".equals(type)) {
+            subscribe(session, channels, channel);
+            return;
+        }
+        if ("unsubscribe".equals(type)) {
+            ChannelWebSocketSession channelSession = channels.get(channel);
+            if (channelSession != null) {
+                channelSession.close(CloseStatus.NORMAL);
+            } else {
+                sendControl(session, "unsubscribed", channel, null);
+            }
+            return;
+        }
+
+        ChannelWebSocketSession channelSession = channels.get(channel);
+        if (channelSession == null) {
+            sendControl(session, "error", channel, "未订阅该通道");
+            return;
+        }
+        // chat和notifications通道目前只有下行消息
+        if (channel.startsWith(CHANNEL_DOC_PREFIX)) {
+            documentWebSocketHandler.handleChannelMessage(channelSession, messageMap);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        FragmentAssembler.discard(session);
+        Map<String, ChannelWebSocketSession> channels = getChannels(session);
+        if (channels == null) {
+            return;
+        }
+        for (ChannelWebSocketSession channelSession : channels.values()) {
+            channelSession.markClosed();
+            detach(channelSession, status);
+        }
+        channels.clear();
+        logger.info("用户 {} 关闭了多路复用连接, status: {}", session.getAttributes().get(WebSocketUtils.ATTR_USER_ID), status);
+    }
+
+    /**
+     * 订阅通道：创建逻辑通道会话并交给对应处理器，处理器拒绝（如无权限）时通道随即关闭
+     */
+    private void subscribe(WebSocketSession session, Map<String, ChannelWebSocketSession> channels, String channel) throws IOException {
+        if (channels.containsKey(channel)) {
+            sendControl(session, "subscribed", channel, null);
+            return;
+        }
+        if (channels.size() >= maxChannels) {
+            sendControl(session, "error", channel, "订阅的通道数超过上限");
+            return;
+        }
+
+        Long userId = (Long) session.getAttributes().get(WebSocketUtils.ATTR_USER_ID);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(WebSocketUtils.ATTR_USER_ID, userId);
+        attributes.put(WebSocketUtils.ATTR_USERNAME, session.getAttributes().get(WebSocketUtils.ATTR_USERNAME));
+        if (channel.startsWith(CHANNEL_DOC_PREFIX)) {
+            try {
+                attributes.put(DocumentWebSocketHandler.ATTR_DOC_ID, Long.parseLong(channel.substring(CHANNEL_DOC_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                sendControl(session, "error", channel, "无效的文档ID");
+                return;
+            }
+        } else if (!CHANNEL_CHAT.equals(channel) && !CHANNEL_NOTIFICATIONS.equals(channel)) {
+            sendControl(session, "error", channel, "未知的通道");
+            return;
+        }
+
+        ChannelWebSocketSession channelSession = new ChannelWebSocketSession(session, channel, attributes, this::onChannelClosed);
+        channels.put(channel, channelSession);
+        try {
+            if (channel.startsWith(CHANNEL_DOC_PREFIX)) {
+                documentWebSocketHandler.afterConnectionEstablished(channelSession);
+            } else if (CHANNEL_CHAT.equals(channel)) {
+                chatWebSocketHandler.afterConnectionEstablished(channelSession);
+            } else {
+                ChatWebSocketHandler.registerNotificationSession(userId, channelSession);
+            }
+        } catch (Exception e) {
+            logger.error("订阅通道失败, channel: {}, 错误: {}", channel, e.getMessage(), e);
+            channelSession.close(CloseStatus.SERVER_ERROR);
+            return;
+        }
+        if (channelSession.isOpen()) {
+            sendControl(session, "subscribed", channel, null);
+        }
+    }
+
+    /**
+     * 逻辑通道被关闭（客户端退订、处理器拒绝或发送积压）：清理并通知客户端，物理连接保持
+     */
+    private void onChannelClosed(ChannelWebSocketSession channelSession, CloseStatus status) {
+        WebSocketSession session = channelSession.getDelegate();
+        Map<String, ChannelWebSocketSession> channels = getChannels(session);
+        if (channels != null) {
+            channels.remove(channelSession.getChannel(), channelSession);
+        }
+        detach(channelSession, status);
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "unsubscribed");
+            response.put("channel", channelSession.getChannel());
+            response.put("code", status.getCode());
+            response.put("reason", status.getReason());
+            sendRaw(session, objectMapper.writeValueAsString(response));
+        } catch (Exception e) {
+            logger.warn("发送退订通知失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把逻辑通道从对应处理器中移除
+     */
+    private void detach(ChannelWebSocketSession channelSession, CloseStatus status) {
+        String channel = channelSession.getChannel();
+        try {
+            if (channel.startsWith(CHANNEL_DOC_PREFIX)) {
+                documentWebSocketHandler.afterConnectionClosed(channelSession, status);
+            } else if (CHANNEL_CHAT.equals(channel)) {
+                chatWebSocketHandler.afterConnectionClosed(channelSession, status);
+            } else {
+                ChatWebSocketHandler.unregisterNotificationSession(
+                        (Long) channelSession.getAttributes().get(WebSocketUtils.ATTR_USER_ID), channelSession);
+            }
+        } catch (Exception e) {
+            logger.warn("关闭通道失败, channel: {}, 错误: {}", channel, e.getMessage());
+        }
+    }
+
+    /**
+     * 发送连接级控制消息（subscribed / unsubscribed / error）
+     */
+    private void sendControl(WebSocketSession session, String type, String channel, String message) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", type);
+        response.put("channel", channel);
+        if (message != null) {
+            response.put("message", message);
+        }
+        sendRaw(session, objectMapper.writeValueAsString(response));
+    }
+
+    /**
+     * 连接级消息总量限流（各通道另有自己的限流）
+     * @return 是否继续处理该消息
+     */
+    private boolean admitFrame(WebSocketSession session) throws IOException {
+        TokenBucket frameBucket = (TokenBucket) session.getAttributes().get(ATTR_FRAME_BUCKET);
+        AtomicInteger strikes = (AtomicInteger) session.getAttributes().get(ATTR_FLOOD_STRIKES);
+        if (frameBucket == null || strikes == null) {
+            return true;
+        }
+        if (frameBucket.tryAcquire()) {
+            strikes.set(0);
+            return true;
+        }
+        if (strikes.incrementAndGet() >= floodCloseThreshold) {
+            logger.warn("多路复用连接消息持续超限，断开连接, sessionId: {}, userId: {}", session.getId(),
+                    session.getAttributes().get(WebSocketUtils.ATTR_USER_ID));
+            session.close(new CloseStatus(4008, "消息发送过于频繁"));
+        }
+        return false;
+    }
+
+    /**
+     * 直接写物理连接，与各通道的发送共用同一把锁
+     */
+    private void sendRaw(WebSocketSession session, String json) throws IOException {
+        synchronized (session) {
+            if (session.isOpen()) {
+                session.sendMessage(new TextMessage(json));
+            }
+        }
+    }
+
+    private Map<String, ChannelWebSocketSession> getChannels(WebSocketSession session) {
+        return (Map<String, ChannelWebSocketSession>) session.getAttributes().get(ATTR_CHANNELS);
+    }
+}
@@ -0,0 +1,238 @@
+package com.collab.collab_editor_backend.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话发送队列（按优先级分道）
+ * 编辑操作优先于控制消息，控制消息优先于在线状态消息；
+ * 在线状态消息（光标等）按键合并，只保留最新一条，超出上限直接丢弃
+ * 入队的线程（通常持有文档锁）只负责入队，实际写出由共享的发送线程池完成，慢客户端不会阻塞文档锁；
+ * 与Spring的ConcurrentWebSocketSessionDecorator一样限制单次发送耗时和积压的字符数，超过任一限制即关闭会话
+ */
+public class SessionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutbox.class);
+
+    /**
+     * 发送优先级通道
+     */
+    public enum Lane {
+        // 文档操作与内容同步
+        OPS,
+        // 用户加入/离开、用户列表、限流提示等控制消息
+        CONTROL,
+        // 光标位置等可合并、可丢弃的在线状态消息
+        PRESENCE
+    }
+
+    // 每次发送任务最多连续发送的消息数，之后重新提交，让同一线程池中的其他会话也能发送
+    private static final int MAX_MESSAGES_PER_DRAIN = 64;
+
+    private final WebSocketSession session;
+    // 执行实际写出的发送线程池（所有会话共享）
+    private final Executor sender;
+    // 编辑操作和控制消息的积压上限，超过说明客户端消费过慢
+    private final int maxQueued;
+    // 在线状态消息最多保留的键数
+    private final int maxPresence;
+    // 编辑操作和控制消息积压的字符数上限
+    private final long bufferSizeLimit;
+    // 单条消息的发送耗时上限（纳秒）
+    private final long sendTimeLimitNanos;
+
+    private final Queue<TextMessage> ops = new ConcurrentLinkedQueue<>();
+    private final Queue<TextMessage> control = new ConcurrentLinkedQueue<>();
+    // 在线状态消息：同一个键只保留最新一条，保持首次入队的顺序
+    private final Map<Object, TextMessage> presence = new LinkedHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong bufferedChars = new AtomicLong();
+    // 是否已提交发送任务：同一时刻只有一个任务向会话写数据
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // 当前这条消息开始发送的时间（System.nanoTime()），没有在发送时为0
+    private volatile long sendingSince;
+
+    /**
+     * @param sender 发送线程池
+     * @param maxQueued 编辑操作和控制消息的条数上限
+     * @param maxPresence 在线状态消息的键数上限
+     * @param bufferSizeLimit 编辑操作和控制消息积压的字符数上限，需大于单条消息的上限
+     * @param sendTimeLimitMs 单条消息的发送耗时上限（毫秒）
+     */
+    public SessionOutbox(WebSocketSession session, Executor sender, int maxQueued, int maxPresence,
+                         long bufferSizeLimit, long sendTimeLimitMs) {
+        this.session = session;
+        this.sender = sender;
+        this.maxQueued = maxQueued;
+        this.maxPresence = maxPresence;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+    }
+
+    /**
+     * 入队并提交发送任务，不在调用线程上写出
+     * @param lane 优先级通道
+     * @param coalesceKey 在线状态消息的合并键（其他通道忽略）
+     * @param message 消息
+     */
+    public void send(Lane lane, Object coalesceKey, TextMessage message) {
+        if (!session.isOpen() || !checkSendTimeLimit()) {
+            return;
+        }
+        switch (lane) {
+            case OPS:
+            case CONTROL:
+                int length = message.getPayload().length();
+                if (queued.incrementAndGet() > maxQueued) {
+                    queued.decrementAndGet();
+                    closeSlowConsumer("积压消息数超过上限");
+                    return;
+                }
+                if (bufferedChars.addAndGet(length) > bufferSizeLimit) {
+                    queued.decrementAndGet();
+                    bufferedChars.addAndGet(-length);
+                    closeSlowConsumer("积压字符数超过上限");
+                    return;
+                }
+                (lane == Lane.OPS ? ops : control).add(message);
+                break;
+            case PRESENCE:
+                synchronized (presence) {
+                    if (presence.size() >= maxPresence && !presence.containsKey(coalesceKey)) {
+                        // 在线状态消息可丢弃，积压过多时直接放弃
+                        return;
+                    }
+                    presence.put(coalesceKey, message);
+                }
+                break;
+        }
+        schedule();
+    }
+
+    /**
+     * 检查当前消息的发送耗时，超过上限说明客户端不再读取，关闭会话（发送线程上阻塞的写出随之失败）
+     * 入队时检查，处理器的定时任务也会定期检查，没有新消息时卡住的会话同样会被关闭
+     * @return 会话是否仍可继续发送
+     */
+    public boolean checkSendTimeLimit() {
+        long since = sendingSince;
+        if (since != 0 && System.nanoTime() - since > sendTimeLimitNanos) {
+            closeSlowConsumer("单条消息发送超时");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 当前积压的消息数
+     */
+    public int size() {
+        int presenceSize;
+        synchronized (presence) {
+            presenceSize = presence.size();
+        }
+        return queued.get() + presenceSize;
+    }
+
+    /**
+     * 没有进行中的发送任务时提交一个；发送线程池已关闭（停机）时消息留在队列中
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * 在发送线程上按优先级发送积压消息，每次最多发送MAX_MESSAGES_PER_DRAIN条，还有积压时重新提交
+     */
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_MESSAGES_PER_DRAIN; i++) {
+                if (!session.isOpen()) {
+                    return;
+                }
+                TextMessage message = next();
+                if (message == null) {
+                    break;
+                }
+                sendingSince = System.nanoTime();
+                try {
+                    session.sendMessage(message);
+                } finally {
+                    sendingSince = 0;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("WebSocket消息发送失败, sessionId: {}, 错误: {}", session.getId(), e.getMessage());
+            return;
+        } finally {
+            scheduled.set(false);
+        }
+        // 释放标记后再检查一次，避免与入队线程错过彼此
+        if (hasPending()) {
+            schedule();
+        }
+    }
+
+    private boolean hasPending() {
+        if (!ops.isEmpty() || !control.isEmpty()) {
+            return true;
+        }
+        synchronized (presence) {
+            return !presence.isEmpty();
+        }
+    }
+
+    /**
+     * 每次发送前都重新检查高优先级通道
+     */
+    private TextMessage next() {
+        TextMessage message = ops.poll();
+        if (message == null) {
+            message = control.poll();
+        }
+        if (message != null) {
+            queued.decrementAndGet();
+            bufferedChars.addAndGet(-message.getPayload().length());
+            return message;
+        }
+        synchronized (presence) {
+            Iterator<TextMessage> it = presence.values().iterator();
+            if (it.hasNext()) {
+                message = it.next();
+                it.remove();
+            }
+        }
+        return message;
+    }
+
+    private void closeSlowConsumer(String reason) {
+        logger.warn("WebSocket客户端消费过慢（{}），关闭会话, sessionId: {}", reason, session.getId());
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            logger.warn("关闭会话失败: {}", e.getMessage());
+        }
+    }
+}
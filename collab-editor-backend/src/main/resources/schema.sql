@@ -17,11 +17,43 @@ CREATE TABLE IF NOT EXISTS t_document (
     title VARCHAR(255) NOT NULL,
     content TEXT,
     minio_key VARCHAR(255),
+    content_size INT,
+    preview VARCHAR(255),
+    content_hash VARCHAR(64),
+    search_text MEDIUMTEXT,
     category VARCHAR(50),
     create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     owner_id BIGINT NOT NULL,
-    tags VARCHAR(255)
+    tags VARCHAR(255),
+    deleted TINYINT NOT NULL DEFAULT 0
+);
+
+-- 文档清理任务表（文档标记删除后由后台任务分批删除关联数据）
+CREATE TABLE IF NOT EXISTS t_document_purge (
+    doc_id BIGINT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    purged_rows BIGINT DEFAULT 0,
+    attempts INT DEFAULT 0,
+    last_error VARCHAR(500),
+    next_attempt_time TIMESTAMP NULL,
+    create_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    update_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_purge_status_next (status, next_attempt_time)
+);
+
+-- 分类统计表（随文档创建、删除增量维护）
+CREATE TABLE IF NOT EXISTS t_category_stats (
+    name VARCHAR(50) PRIMARY KEY,
+    doc_count INT NOT NULL DEFAULT 0,
+    last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 标签统计表（随文档创建、删除增量维护）
+CREATE TABLE IF NOT EXISTS t_tag_stats (
+    name VARCHAR(255) PRIMARY KEY,
+    doc_count INT NOT NULL DEFAULT 0,
+    last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
 -- 创建文档权限表
@@ -168,6 +200,14 @@ CREATE INDEX IF NOT EXISTS idx_error_log_type ON error_log(type);
 CREATE INDEX IF NOT EXISTS idx_user_activity_user_id ON t_user_activity(user_id);
 CREATE INDEX IF NOT EXISTS idx_user_activity_activity_type ON t_user_activity(activity_type);
 CREATE INDEX IF NOT EXISTS idx_user_activity_created_at ON t_user_activity(created_at);
+-- 文档列表游标分页：(排序字段, id)复合索引
+CREATE INDEX IF NOT EXISTS idx_document_update ON t_document(update_time, id);
+CREATE INDEX IF NOT EXISTS idx_document_create ON t_document(create_time, id);
+CREATE INDEX IF NOT EXISTS idx_document_category_update ON t_document(category, update_time, id);
+-- 文档清理按doc_id分批删除关联数据
+CREATE INDEX IF NOT EXISTS idx_document_version_doc ON t_document_version(doc_id);
+CREATE INDEX IF NOT EXISTS idx_task_doc ON t_task(doc_id);
+CREATE INDEX IF NOT EXISTS idx_comment_doc ON t_comment(doc_id);
 
 -- 创建视频会议表
 CREATE TABLE IF NOT EXISTS t_video_meeting (
@@ -0,0 +1,293 @@
+package com.collab.collab_editor_backend.handler;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 变更集与逐个操作转换（OTAlgorithm.transform）的差分测试
+ * 合并：合并后拆回的操作与逐个应用的结果一致；
+ * 转换：在旧的逐对转换结果正确的范围内，两种方式得到的文档一致；旧实现出错的重叠删除、删除区间内的并发插入单独验证
+ * 性能对比标记为benchmark，默认不运行：mvn test -Dgroups=benchmark -DexcludedGroups=none
+ */
+class ChangesetTest {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    @Test
+    void composeMatchesSequentialApplication() {
+        Random random = new Random(38);
+        for (int round = 0; round < 500; round++) {
+            String base = randomText(random, random.nextInt(60));
+            List<OTAlgorithm.Operation> branch = randomBranch(random, base, 1 + random.nextInt(40), 0);
+
+            String expected = applyAll(base, branch);
+            List<OTAlgorithm.Operation> composed = Changeset.composeAll(branch).toOperations(0);
+            assertEquals(expected, applyAll(base, composed), "base=" + base + ", branch=" + branch);
+            assertTrue(composed.size() <= branch.size());
+        }
+    }
+
+    @Test
+    void composeOfLongTypingRunCollapsesToOneInsert() {
+        List<OTAlgorithm.Operation> branch = new ArrayList<>();
+        StringBuilder typed = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String ch = String.valueOf(ALPHABET.charAt(i % ALPHABET.length()));
+            branch.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 5 + i, ch, i));
+            typed.append(ch);
+        }
+        List<OTAlgorithm.Operation> composed = Changeset.composeAll(branch).toOperations(7);
+        assertEquals(1, composed.size());
+        assertEquals(5, composed.get(0).getPosition());
+        assertEquals(typed.toString(), composed.get(0).getContent());
+        assertEquals(7, composed.get(0).getVersion());
+    }
+
+    @Test
+    void singleOperationTransformMatchesOtAlgorithm() {
+        Random random = new Random(380);
+        int compared = 0;
+        for (int round = 0; round < 20000; round++) {
+            String base = randomText(random, 1 + random.nextInt(30));
+            OTAlgorithm.Operation mine = randomOperation(random, base, 0);
+            OTAlgorithm.Operation applied = randomOperation(random, base, 0);
+            if (legacyTransformIsWrong(mine, applied)) {
+                continue;
+            }
+            String afterApplied = OTAlgorithm.applyOperation(base, applied);
+            String legacy = OTAlgorithm.applyOperation(afterApplied, OTAlgorithm.transform(mine, applied));
+            String changeset = applyAll(afterApplied, Changeset.of(mine).transform(Changeset.of(applied)).toOperations(1));
+            assertEquals(legacy, changeset, "base=" + base + ", mine=" + mine + ", applied=" + applied);
+            compared++;
+        }
+        assertTrue(compared > 10000);
+    }
+
+    @Test
+    void branchTransformMatchesPerOperationTransform() {
+        Random random = new Random(3800);
+        for (int round = 0; round < 300; round++) {
+            Scenario scenario = disjointScenario(random, 2 + random.nextInt(8), 1 + random.nextInt(30), 1 + random.nextInt(30));
+            String afterApplied = applyAll(scenario.base, scenario.applied);
+
+            List<OTAlgorithm.Operation> legacy = legacyTransformBranch(scenario.mine, scenario.applied);
+            Changeset transformed = Changeset.composeAll(scenario.mine).transform(Changeset.composeAll(scenario.applied));
+
+            assertEquals(applyAll(afterApplied, legacy), applyAll(afterApplied, transformed.toOperations(0)),
+                    "base=" + scenario.base + ", mine=" + scenario.mine + ", applied=" + scenario.applied);
+        }
+    }
+
+    @Test
+    void concurrentInsertsAtSamePositionKeepAppliedFirst() {
+        assertEquals("abXYcd", transformAndApply("abcd", insert(2, "Y"), insert(2, "X")));
+    }
+
+    @Test
+    void insertInsideDeletedRangeMovesToDeletionStart() {
+        assertEquals("aXf", transformAndApply("abcdef", insert(3, "X"), delete(1, "bcde")));
+    }
+
+    @Test
+    void overlappingDeleteStartingEarlierDeletesOnlyRemainingChars() {
+        // 旧实现保留整段删除内容，会多删除"gh"
+        assertEquals("aghij", transformAndApply("abcdefghij", delete(1, "bcdef"), delete(3, "de")));
+        OTAlgorithm.Operation legacy = OTAlgorithm.transform(delete(1, "bcdef"), delete(3, "de"));
+        assertEquals("aij", OTAlgorithm.applyOperation("abcfghij", legacy));
+    }
+
+    @Test
+    void deleteSpanningConcurrentInsertKeepsInsertedText() {
+        // 旧实现不调整删除范围，会删掉并发插入的"XY"
+        assertEquals("aXYf", transformAndApply("abcdef", delete(1, "bcde"), insert(3, "XY")));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkLongBranches() {
+        Random random = new Random(1);
+        for (int length : new int[]{500, 2000, 5000}) {
+            Scenario scenario = disjointScenario(random, 64, length, length);
+            for (int warmup = 0; warmup < 3; warmup++) {
+                legacyTransformBranch(scenario.mine, scenario.applied);
+                Changeset.composeAll(scenario.mine).transform(Changeset.composeAll(scenario.applied)).toOperations(0);
+            }
+            long start = System.nanoTime();
+            List<OTAlgorithm.Operation> legacy = legacyTransformBranch(scenario.mine, scenario.applied);
+            long legacyNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<OTAlgorithm.Operation> changeset = Changeset.composeAll(scenario.mine)
+                    .transform(Changeset.composeAll(scenario.applied)).toOperations(0);
+            long changesetNanos = System.nanoTime() - start;
+
+            String afterApplied = applyAll(scenario.base, scenario.applied);
+            assertEquals(applyAll(afterApplied, legacy), applyAll(afterApplied, changeset));
+            System.out.printf("分支长度 %d/%d: 逐对转换 %.2f ms, 变更集 %.2f ms%n", length, length,
+                    legacyNanos / 1e6, changesetNanos / 1e6);
+        }
+    }
+
+    /**
+     * 旧的逐对转换：客户端第i个操作依次对服务端操作转换，服务端操作同时对客户端已处理的操作转换，
+     * 复杂度为两边操作数之积
+     */
+    private static List<OTAlgorithm.Operation> legacyTransformBranch(List<OTAlgorithm.Operation> mine,
+                                                                     List<OTAlgorithm.Operation> applied) {
+        List<OTAlgorithm.Operation> theirs = new ArrayList<>(applied.size());
+        for (OTAlgorithm.Operation op : applied) {
+            theirs.add(atVersion(op, 0));
+        }
+        List<OTAlgorithm.Operation> result = new ArrayList<>(mine.size());
+        for (OTAlgorithm.Operation op : mine) {
+            OTAlgorithm.Operation current = atVersion(op, 0);
+            for (int j = 0; j < theirs.size(); j++) {
+                OTAlgorithm.Operation other = theirs.get(j);
+                OTAlgorithm.Operation transformed = atVersion(OTAlgorithm.transform(current, other), 0);
+                theirs.set(j, atVersion(OTAlgorithm.transform(other, current), 0));
+                current = transformed;
+            }
+            result.add(current);
+        }
+        return result;
+    }
+
+    /**
+     * 旧实现在这两种情况下结果错误：删除起点在已应用删除之前且有重叠；已应用的插入落在删除区间内部
+     */
+    private static boolean legacyTransformIsWrong(OTAlgorithm.Operation mine, OTAlgorithm.Operation applied) {
+        if (mine.getType() != OTAlgorithm.OperationType.DELETE) {
+            return false;
+        }
+        int start = mine.getPosition();
+        int end = start + mine.getContent().length();
+        if (applied.getType() == OTAlgorithm.OperationType.DELETE) {
+            return start < applied.getPosition() && end > applied.getPosition();
+        }
+        return applied.getPosition() > start && applied.getPosition() < end;
+    }
+
+    /**
+     * 两个分支编辑互不相交的区域：文档切成若干区域，区域之间隔一个不修改的字符，每个区域只归一方编辑，
+     * 两边的操作没有重叠也没有同位置插入，逐对转换的结果是确定且正确的
+     */
+    private static Scenario disjointScenario(Random random, int regions, int mineOps, int appliedOps) {
+        StringBuilder base = new StringBuilder();
+        int[] starts = new int[regions];
+        int[] lengths = new int[regions];
+        boolean[] mineOwns = new boolean[regions];
+        for (int r = 0; r < regions; r++) {
+            base.append('|');
+            starts[r] = base.length();
+            lengths[r] = 1 + random.nextInt(20);
+            base.append(randomText(random, lengths[r]));
+            mineOwns[r] = random.nextBoolean();
+        }
+        base.append('|');
+        return new Scenario(base.toString(),
+                regionBranch(random, base.toString(), starts, lengths, mineOwns, true, mineOps),
+                regionBranch(random, base.toString(), starts, lengths, mineOwns, false, appliedOps));
+    }
+
+    private static List<OTAlgorithm.Operation> regionBranch(Random random, String base, int[] starts, int[] baseLengths,
+                                                            boolean[] mineOwns, boolean mine, int count) {
+        int[] lengths = baseLengths.clone();
+        StringBuilder doc = new StringBuilder(base);
+        List<OTAlgorithm.Operation> branch = new ArrayList<>();
+        List<Integer> owned = new ArrayList<>();
+        for (int r = 0; r < mineOwns.length; r++) {
+            if (mineOwns[r] == mine) {
+                owned.add(r);
+            }
+        }
+        if (owned.isEmpty()) {
+            return branch;
+        }
+        for (int i = 0; i < count; i++) {
+            int r = owned.get(random.nextInt(owned.size()));
+            int regionStart = starts[r];
+            for (int k = 0; k < r; k++) {
+                regionStart += lengths[k] - baseLengths[k];
+            }
+            OTAlgorithm.Operation op;
+            // 区域两侧是不修改的分隔字符，两边的插入不会落在同一位置
+            if (lengths[r] > 0 && random.nextInt(3) == 0) {
+                int offset = random.nextInt(lengths[r]);
+                int length = 1 + random.nextInt(Math.min(5, lengths[r] - offset));
+                String deleted = doc.substring(regionStart + offset, regionStart + offset + length);
+                op = new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, regionStart + offset, deleted, i);
+                lengths[r] -= length;
+            } else {
+                int offset = random.nextInt(lengths[r] + 1);
+                String text = randomText(random, 1 + random.nextInt(4));
+                op = new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, regionStart + offset, text, i);
+                lengths[r] += text.length();
+            }
+            doc.replace(0, doc.length(), OTAlgorithm.applyOperation(doc.toString(), op));
+            branch.add(op);
+        }
+        return branch;
+    }
+
+    private record Scenario(String base, List<OTAlgorithm.Operation> mine, List<OTAlgorithm.Operation> applied) {
+    }
+
+    private static String transformAndApply(String base, OTAlgorithm.Operation mine, OTAlgorithm.Operation applied) {
+        String afterApplied = OTAlgorithm.applyOperation(base, applied);
+        return applyAll(afterApplied, Changeset.of(mine).transform(Changeset.of(applied)).toOperations(1));
+    }
+
+    private static List<OTAlgorithm.Operation> randomBranch(Random random, String base, int count, int version) {
+        List<OTAlgorithm.Operation> branch = new ArrayList<>(count);
+        String doc = base;
+        for (int i = 0; i < count; i++) {
+            OTAlgorithm.Operation op = randomOperation(random, doc, version + i);
+            branch.add(op);
+            doc = OTAlgorithm.applyOperation(doc, op);
+        }
+        return branch;
+    }
+
+    private static OTAlgorithm.Operation randomOperation(Random random, String doc, int version) {
+        if (!doc.isEmpty() && random.nextBoolean()) {
+            int position = random.nextInt(doc.length());
+            int length = 1 + random.nextInt(Math.min(8, doc.length() - position));
+            return new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, position,
+                    doc.substring(position, position + length), version);
+        }
+        return new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, random.nextInt(doc.length() + 1),
+                randomText(random, 1 + random.nextInt(5)), version);
+    }
+
+    private static String applyAll(String doc, List<OTAlgorithm.Operation> operations) {
+        for (OTAlgorithm.Operation op : operations) {
+            doc = OTAlgorithm.applyOperation(doc, op);
+        }
+        return doc;
+    }
+
+    private static OTAlgorithm.Operation atVersion(OTAlgorithm.Operation op, int version) {
+        return new OTAlgorithm.Operation(op.getType(), op.getPosition(), op.getContent(), version);
+    }
+
+    private static OTAlgorithm.Operation insert(int position, String text) {
+        return new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, position, text, 0);
+    }
+
+    private static OTAlgorithm.Operation delete(int position, String text) {
+        return new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, position, text, 0);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
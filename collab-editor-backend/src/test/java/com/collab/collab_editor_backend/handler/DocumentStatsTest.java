@@ -0,0 +1,131 @@
+package com.collab.collab_editor_backend.handler;
+
+import com.collab.collab_editor_backend.util.OffHeapText;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 增量统计与DocumentStats.summarize(全文)的对比测试
+ * 包括HTML/Markdown混合内容，以及没有换行、边界超出查找范围的长段纯文本
+ * 性能测试标记为benchmark，默认不运行：mvn test -Dgroups=benchmark -DexcludedGroups=none
+ */
+class DocumentStatsTest {
+
+    private static final String[] TOKENS = {
+            "a", "b", "word", " ", "  ", "\n", "\n\n", "中", "文字", "<p>", "</p>", "<b>", "</b>", "<br>",
+            "<h1>", "</h1>", "<h2 class=\"x\">", "</h2>", "# ", "## ", "#", "<", ">", "1", "x9", ",", "\t"
+    };
+
+    @Test
+    void incrementalStatsMatchFullSummary() {
+        Random random = new Random(39);
+        for (int round = 0; round < 30; round++) {
+            OffHeapText text = new OffHeapText(randomMarkup(random, random.nextInt(200)));
+            try {
+                DocumentStats stats = new DocumentStats(text);
+                for (int step = 0; step < 300; step++) {
+                    stats.apply(randomOperation(random, text.toString(), () -> randomMarkup(random, 1 + random.nextInt(6))));
+                    assertEquals(DocumentStats.summarize(text.toString()), stats.summary(0), "step " + step);
+                }
+            } finally {
+                text.release();
+            }
+        }
+    }
+
+    @Test
+    void longTextWithoutNewlinesStaysCorrect() {
+        Random random = new Random(390);
+        OffHeapText text = new OffHeapText(randomPlain(random, 100_000));
+        try {
+            DocumentStats stats = new DocumentStats(text);
+            for (int step = 0; step < 500; step++) {
+                stats.apply(randomOperation(random, text.toString(), () -> randomPlain(random, 1 + random.nextInt(5))));
+                if (step % 50 == 0) {
+                    assertEquals(DocumentStats.summarize(text.toString()), stats.summary(0), "step " + step);
+                }
+            }
+            assertEquals(DocumentStats.summarize(text.toString()), stats.summary(0));
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    void staleStatsResumeIncrementalUpdatesAfterRefresh() {
+        OffHeapText text = new OffHeapText("x".repeat(50_000));
+        try {
+            DocumentStats stats = new DocumentStats(text);
+            stats.apply(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 25_000, " y ", 0));
+            assertEquals(3, stats.words());
+
+            // 加入换行后边界就在附近，之后的修改恢复增量统计
+            stats.apply(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 10, "\n# 标题\n", 1));
+            stats.apply(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 14, "二", 2));
+            Map<String, Object> summary = stats.summary(0);
+            assertEquals(DocumentStats.summarize(text.toString()), summary);
+            assertEquals(List.of(new DocumentStats.Heading(11, 1, "标二题")), summary.get("headings"));
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkTypingIntoLongLine() {
+        Random random = new Random(1);
+        for (int length : new int[]{100_000, 1_000_000}) {
+            OffHeapText text = new OffHeapText(randomPlain(random, length));
+            try {
+                DocumentStats stats = new DocumentStats(text);
+                int ops = 2000;
+                long start = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    stats.apply(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, length / 2 + i, "a", i));
+                }
+                long applyNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                stats.summary(0);
+                long summaryNanos = System.nanoTime() - start;
+                System.out.printf("单行长度 %d, %d次输入: 增量 %.2f ms, 读取统计 %.2f ms%n", length, ops,
+                        applyNanos / 1e6, summaryNanos / 1e6);
+            } finally {
+                text.release();
+            }
+        }
+    }
+
+    private static OTAlgorithm.Operation randomOperation(Random random, String doc, java.util.function.Supplier<String> inserted) {
+        if (!doc.isEmpty() && random.nextInt(5) < 2) {
+            int position = random.nextInt(doc.length());
+            int length = 1 + random.nextInt(Math.min(20, doc.length() - position));
+            return new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, position,
+                    doc.substring(position, position + length), 0);
+        }
+        return new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, random.nextInt(doc.length() + 1),
+                inserted.get(), 0);
+    }
+
+    private static String randomMarkup(Random random, int tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            sb.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static String randomPlain(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(8);
+            sb.append(r == 0 ? ' ' : r == 1 ? '字' : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,196 @@
+package com.collab.collab_editor_backend.handler;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列式操作历史与List<Operation>逐个调用OTAlgorithm.transform的差分测试
+ * 转换结果（类型、位置、内容、版本）和版本不一致时的异常都必须与旧实现相同
+ * 性能对比标记为benchmark，默认不运行：mvn test -Dgroups=benchmark -DexcludedGroups=none
+ */
+class OperationHistoryTest {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+
+    @Test
+    void transformMatchesPairwiseOtAlgorithm() {
+        Random random = new Random(32);
+        for (int round = 0; round < 2000; round++) {
+            int baseVersion = random.nextInt(100);
+            List<OTAlgorithm.Operation> applied = randomHistory(random, baseVersion, 1 + random.nextInt(50));
+            OperationHistory history = historyOf(baseVersion, applied);
+
+            int from = baseVersion + random.nextInt(applied.size());
+            int to = from + 1 + random.nextInt(baseVersion + applied.size() - from);
+            OTAlgorithm.Operation op = randomOperation(random, from);
+
+            assertSameOperation(pairwise(op, applied, baseVersion, from, to), history.transform(op, from, to));
+        }
+    }
+
+    @Test
+    void versionMismatchFailsLikePairwise() {
+        Random random = new Random(320);
+        int failures = 0;
+        for (int round = 0; round < 500; round++) {
+            List<OTAlgorithm.Operation> applied = randomHistory(random, 0, 1 + random.nextInt(20));
+            // 打乱某一条历史的版本号
+            int broken = random.nextInt(applied.size());
+            OTAlgorithm.Operation original = applied.get(broken);
+            applied.set(broken, new OTAlgorithm.Operation(original.getType(), original.getPosition(),
+                    original.getContent(), original.getVersion() + 1 + random.nextInt(3)));
+            OperationHistory history = historyOf(0, applied);
+            OTAlgorithm.Operation op = randomOperation(random, 0);
+
+            IllegalArgumentException expected = null;
+            OTAlgorithm.Operation expectedResult = null;
+            try {
+                expectedResult = pairwise(op, applied, 0, 0, applied.size());
+            } catch (IllegalArgumentException e) {
+                expected = e;
+            }
+            if (expected != null) {
+                IllegalArgumentException actual = assertThrows(IllegalArgumentException.class,
+                        () -> history.transform(op, 0, applied.size()));
+                assertEquals(expected.getMessage(), actual.getMessage());
+                failures++;
+            } else {
+                assertSameOperation(expectedResult, history.transform(op, 0, applied.size()));
+            }
+        }
+        assertTrue(failures > 0);
+    }
+
+    @Test
+    void getReturnsStoredOperations() {
+        Random random = new Random(3200);
+        List<OTAlgorithm.Operation> applied = randomHistory(random, 5, 300);
+        // 超过初始字符区容量的内容
+        applied.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 3, "x".repeat(5000), 305));
+        OperationHistory history = historyOf(5, applied);
+
+        assertEquals(applied.size(), history.size());
+        for (int i = 0; i < applied.size(); i++) {
+            assertSameOperation(applied.get(i), history.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> history.get(applied.size()));
+    }
+
+    @Test
+    void resetDropsEarlierHistory() {
+        OperationHistory history = new OperationHistory();
+        history.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 0, "abc", 0));
+        history.reset(10);
+
+        assertEquals(0, history.size());
+        assertEquals(10, history.baseVersion());
+        OTAlgorithm.Operation op = new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 1, "x", 0);
+        assertThrows(IllegalArgumentException.class, () -> history.transform(op, 0, 10));
+
+        history.add(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 0, "yy", 10));
+        OTAlgorithm.Operation transformed = history.transform(
+                new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 1, "x", 10), 10, 11);
+        assertEquals(3, transformed.getPosition());
+        assertEquals(11, transformed.getVersion());
+    }
+
+    @Test
+    void emptyRangeReturnsOperationUnchanged() {
+        OperationHistory history = new OperationHistory(4);
+        OTAlgorithm.Operation op = new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, 2, "ab", 4);
+        assertSame(op, history.transform(op, 4, 4));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmarkLongHistory() {
+        Random random = new Random(1);
+        for (int length : new int[]{1000, 10000, 100000}) {
+            List<OTAlgorithm.Operation> applied = randomHistory(random, 0, length);
+            OperationHistory history = historyOf(0, applied);
+            List<OTAlgorithm.Operation> ops = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ops.add(randomOperation(random, 0));
+            }
+            for (int warmup = 0; warmup < 3; warmup++) {
+                for (OTAlgorithm.Operation op : ops) {
+                    pairwise(op, applied, 0, 0, length);
+                    history.transform(op, 0, length);
+                }
+            }
+
+            long start = System.nanoTime();
+            List<OTAlgorithm.Operation> expected = new ArrayList<>(ops.size());
+            for (OTAlgorithm.Operation op : ops) {
+                expected.add(pairwise(op, applied, 0, 0, length));
+            }
+            long listNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<OTAlgorithm.Operation> actual = new ArrayList<>(ops.size());
+            for (OTAlgorithm.Operation op : ops) {
+                actual.add(history.transform(op, 0, length));
+            }
+            long historyNanos = System.nanoTime() - start;
+
+            for (int i = 0; i < ops.size(); i++) {
+                assertSameOperation(expected.get(i), actual.get(i));
+            }
+            System.out.printf("历史长度 %d, 转换%d个操作: List逐个转换 %.2f ms, 列式历史 %.2f ms%n", length, ops.size(),
+                    listNanos / 1e6, historyNanos / 1e6);
+        }
+    }
+
+    /**
+     * 旧实现：历史保存在List中，逐个调用OTAlgorithm.transform
+     */
+    private static OTAlgorithm.Operation pairwise(OTAlgorithm.Operation op, List<OTAlgorithm.Operation> applied,
+                                                  int baseVersion, int fromVersion, int toVersion) {
+        OTAlgorithm.Operation current = op;
+        for (int version = fromVersion; version < toVersion; version++) {
+            current = OTAlgorithm.transform(current, applied.get(version - baseVersion));
+        }
+        return current;
+    }
+
+    private static OperationHistory historyOf(int baseVersion, List<OTAlgorithm.Operation> applied) {
+        OperationHistory history = new OperationHistory(baseVersion);
+        for (OTAlgorithm.Operation op : applied) {
+            history.add(op);
+        }
+        return history;
+    }
+
+    private static List<OTAlgorithm.Operation> randomHistory(Random random, int baseVersion, int count) {
+        List<OTAlgorithm.Operation> applied = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            applied.add(randomOperation(random, baseVersion + i));
+        }
+        return applied;
+    }
+
+    private static OTAlgorithm.Operation randomOperation(Random random, int version) {
+        OTAlgorithm.OperationType type = random.nextBoolean()
+                ? OTAlgorithm.OperationType.INSERT : OTAlgorithm.OperationType.DELETE;
+        // 位置集中在小范围内，让插入同位置、删除重叠和包含的情况都经常出现
+        int position = random.nextInt(40);
+        StringBuilder content = new StringBuilder();
+        int length = random.nextInt(8) == 0 ? 0 : 1 + random.nextInt(10);
+        for (int i = 0; i < length; i++) {
+            content.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return new OTAlgorithm.Operation(type, position, content.toString(), version);
+    }
+
+    private static void assertSameOperation(OTAlgorithm.Operation expected, OTAlgorithm.Operation actual) {
+        assertEquals(expected.getType(), actual.getType(), () -> expected + " vs " + actual);
+        assertEquals(expected.getPosition(), actual.getPosition(), () -> expected + " vs " + actual);
+        assertEquals(expected.getContent(), actual.getContent(), () -> expected + " vs " + actual);
+        assertEquals(expected.getVersion(), actual.getVersion(), () -> expected + " vs " + actual);
+    }
+}
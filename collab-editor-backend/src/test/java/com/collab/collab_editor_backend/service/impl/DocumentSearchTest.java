@@ -0,0 +1,93 @@
+package com.collab.collab_editor_backend.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.Wrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.collab.collab_editor_backend.dto.DocumentPage;
+import com.collab.collab_editor_backend.dto.DocumentSummary;
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.mapper.DocumentMapper;
+import com.collab.collab_editor_backend.util.Result;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 内容搜索：外置存储的文档content列为空，关键字必须同时匹配search_text列
+ */
+class DocumentSearchTest {
+
+    private DocumentMapper documentMapper;
+    private DocumentServiceImpl documentService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // Lambda条件需要实体的列信息，不启动Spring时手动初始化
+        if (TableInfoHelper.getTableInfo(Document.class) == null) {
+            TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Document.class);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        documentMapper = mock(DocumentMapper.class);
+        documentService = new DocumentServiceImpl();
+        ReflectionTestUtils.setField(documentService, "documentMapper", documentMapper);
+        ReflectionTestUtils.setField(documentService, "pageDefaultSize", 50);
+        ReflectionTestUtils.setField(documentService, "pageMaxSize", 200);
+    }
+
+    @Test
+    void contentSearchMatchesOffloadedDocumentThroughSearchText() {
+        DocumentSummary offloaded = new DocumentSummary();
+        offloaded.setId(42L);
+        offloaded.setTitle("大文档");
+        ArgumentCaptor<Wrapper<Document>> wrapper = captureWrapper(List.of(offloaded));
+
+        Result<DocumentPage> result = documentService.search(1L, "needle", null, null, null, null,
+                null, null, null, "content", null, null);
+
+        assertEquals(200, result.getCode());
+        assertEquals(List.of(offloaded), result.getData().getItems());
+        String sql = wrapper.getValue().getSqlSegment();
+        assertTrue(sql.contains("content LIKE"), sql);
+        assertTrue(sql.contains("search_text LIKE"), sql);
+        assertTrue(sql.contains(" OR "), sql);
+    }
+
+    @Test
+    void allScopeSearchesTitleContentAndSearchText() {
+        ArgumentCaptor<Wrapper<Document>> wrapper = captureWrapper(List.of());
+
+        documentService.search(1L, "needle", null, null, null, null, null, null, null, null, null, null);
+
+        String sql = wrapper.getValue().getSqlSegment();
+        assertTrue(sql.contains("title LIKE"), sql);
+        assertTrue(sql.contains("content LIKE"), sql);
+        assertTrue(sql.contains("search_text LIKE"), sql);
+    }
+
+    @Test
+    void titleScopeDoesNotTouchBodies() {
+        ArgumentCaptor<Wrapper<Document>> wrapper = captureWrapper(List.of());
+
+        documentService.search(1L, "needle", null, null, null, null, null, null, null, "title", null, null);
+
+        assertFalse(wrapper.getValue().getSqlSegment().contains("search_text"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArgumentCaptor<Wrapper<Document>> captureWrapper(List<DocumentSummary> rows) {
+        ArgumentCaptor<Wrapper<Document>> wrapper = ArgumentCaptor.forClass(Wrapper.class);
+        when(documentMapper.selectSummaries(wrapper.capture())).thenReturn(rows);
+        return wrapper;
+    }
+}
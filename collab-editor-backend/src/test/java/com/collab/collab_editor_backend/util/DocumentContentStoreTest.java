@@ -0,0 +1,65 @@
+package com.collab.collab_editor_backend.util;
+
+import com.collab.collab_editor_backend.entity.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 文档内容分层存储：外置的大内容content列为空，搜索依赖search_text中的纯文本副本
+ */
+class DocumentContentStoreTest {
+
+    @TempDir
+    Path localDir;
+
+    private DocumentContentStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new DocumentContentStore();
+        ReflectionTestUtils.setField(store, "inlineMaxBytes", 64);
+        ReflectionTestUtils.setField(store, "backend", "local");
+        ReflectionTestUtils.setField(store, "localDir", localDir.toString());
+        ReflectionTestUtils.setField(store, "cacheMaxBytes", 1L << 20);
+        ReflectionTestUtils.setField(store, "searchTextMaxChars", 1000);
+    }
+
+    @Test
+    void offloadedContentKeepsSearchableText() {
+        String content = "<h1>Quarterly   report</h1>" + "<p>filler text</p>".repeat(20) + "<p>the <b>needle</b> is here</p>";
+        Document document = new Document();
+        store.write(document, content);
+
+        assertEquals("", document.getContent());
+        assertTrue(document.getMinioKey().startsWith("local:"));
+        assertEquals(content, store.get(document));
+        assertTrue(document.getSearchText().startsWith("Quarterly report filler text"));
+        assertTrue(document.getSearchText().contains("needle"));
+        assertFalse(document.getSearchText().contains("<"));
+    }
+
+    @Test
+    void inlineContentClearsSearchText() {
+        Document document = new Document();
+        document.setSearchText("stale copy of an earlier large body");
+        store.write(document, "<p>short needle</p>");
+
+        assertEquals("<p>short needle</p>", document.getContent());
+        assertEquals("", document.getMinioKey());
+        // 内联内容直接搜索content列，副本置为空串（不能是null，否则updateById不会清除旧值）
+        assertEquals("", document.getSearchText());
+    }
+
+    @Test
+    void searchTextIsCapped() {
+        ReflectionTestUtils.setField(store, "searchTextMaxChars", 10);
+        assertEquals("abcdefghij", store.searchText("<p>abcdefghijklmnop</p>"));
+        assertEquals("", store.searchText(null));
+    }
+}
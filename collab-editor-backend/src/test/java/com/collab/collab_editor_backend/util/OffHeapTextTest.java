@@ -0,0 +1,173 @@
+package com.collab.collab_editor_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 堆外文本缓冲区与StringBuilder模型的随机对比测试
+ * 插入、删除的长度覆盖跨多个块（每块4096字符）的情况，位置越界时按内容两端截断
+ */
+class OffHeapTextTest {
+
+    private static final int CHUNK_CHARS = 4096;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz\n中文";
+
+    @Test
+    void randomEditsMatchStringBuilder() {
+        Random random = new Random(31);
+        for (int round = 0; round < 20; round++) {
+            OffHeapText text = new OffHeapText();
+            StringBuilder model = new StringBuilder();
+            try {
+                for (int step = 0; step < 400; step++) {
+                    applyRandomEdit(random, text, model);
+                    assertEquals(model.length(), text.length());
+                    if (step % 10 == 0) {
+                        assertEquals(model.toString(), text.toString());
+                    }
+                    int start = random.nextInt(model.length() + 10) - 5;
+                    int end = start + random.nextInt(3 * CHUNK_CHARS);
+                    assertEquals(modelSubstring(model, start, end), text.substring(start, end));
+                }
+                assertEquals(model.toString(), text.toString());
+            } finally {
+                text.release();
+            }
+        }
+    }
+
+    @Test
+    void insertLargerThanChunkIntoMiddleOfFullChunks() {
+        String initial = randomText(new Random(310), 3 * CHUNK_CHARS);
+        OffHeapText text = new OffHeapText(initial);
+        try {
+            String large = randomText(new Random(311), 2 * CHUNK_CHARS + 123);
+            text.insert(CHUNK_CHARS + 7, large);
+            StringBuilder model = new StringBuilder(initial).insert(CHUNK_CHARS + 7, large);
+            assertEquals(model.toString(), text.toString());
+
+            // 删除跨越三个以上的块
+            text.delete(100, 3 * CHUNK_CHARS + 50);
+            model.delete(100, 100 + 3 * CHUNK_CHARS + 50);
+            assertEquals(model.toString(), text.toString());
+            assertEquals(model.length(), text.length());
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    void outOfRangePositionsAreClamped() {
+        OffHeapText text = new OffHeapText("hello");
+        try {
+            text.insert(-3, "[");
+            text.insert(100, "]");
+            assertEquals("[hello]", text.toString());
+            text.delete(-2, 3);
+            assertEquals("hello]", text.toString());
+            text.delete(4, 100);
+            assertEquals("hell", text.toString());
+            text.delete(10, 2);
+            assertEquals("hell", text.toString());
+            assertEquals("", text.substring(3, 2));
+            assertEquals("hell", text.substring(-5, 50));
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    void replaceResetsContent() {
+        OffHeapText text = new OffHeapText(randomText(new Random(312), 5 * CHUNK_CHARS));
+        try {
+            text.replace("short");
+            assertEquals("short", text.toString());
+            assertEquals(5, text.length());
+            String large = randomText(new Random(313), 4 * CHUNK_CHARS + 1);
+            text.replace(large);
+            assertEquals(large, text.toString());
+        } finally {
+            text.release();
+        }
+    }
+
+    @Test
+    void releaseReturnsChunksToPoolAndDisablesEdits() {
+        String content = randomText(new Random(314), 5 * CHUNK_CHARS);
+        OffHeapText text = new OffHeapText(content);
+        int pooledBefore = OffHeapText.pooledChunks();
+        text.release();
+        assertTrue(OffHeapText.pooledChunks() >= pooledBefore + 5);
+
+        assertEquals(0, text.length());
+        assertEquals("", text.toString());
+        text.insert(0, "ignored");
+        text.replace("ignored");
+        assertEquals(0, text.length());
+
+        // 释放的块被复用，不再申请新的直接内存
+        long reservedBefore = OffHeapText.reservedBytes();
+        OffHeapText reused = new OffHeapText(content);
+        try {
+            assertEquals(reservedBefore, OffHeapText.reservedBytes());
+            assertEquals(content, reused.toString());
+        } finally {
+            reused.release();
+        }
+    }
+
+    private static void applyRandomEdit(Random random, OffHeapText text, StringBuilder model) {
+        int kind = random.nextInt(20);
+        if (kind == 0) {
+            String content = randomText(random, random.nextInt(4 * CHUNK_CHARS));
+            text.replace(content);
+            model.setLength(0);
+            model.append(content);
+        } else if (kind < 11) {
+            int position = random.nextInt(model.length() + 20) - 10;
+            String inserted = randomText(random, randomLength(random));
+            text.insert(position, inserted);
+            model.insert(Math.max(0, Math.min(position, model.length())), inserted);
+        } else {
+            int position = random.nextInt(model.length() + 20) - 10;
+            int count = randomLength(random);
+            text.delete(position, count);
+            int start = Math.max(0, position);
+            int end = Math.min(position + count, model.length());
+            if (start < end) {
+                model.delete(start, end);
+            }
+        }
+    }
+
+    /**
+     * 多数是小编辑，部分接近或超过块大小，少数跨越多个块
+     */
+    private static int randomLength(Random random) {
+        int bucket = random.nextInt(10);
+        if (bucket < 6) {
+            return 1 + random.nextInt(20);
+        }
+        if (bucket < 9) {
+            return CHUNK_CHARS - 10 + random.nextInt(20);
+        }
+        return 1 + random.nextInt(3 * CHUNK_CHARS);
+    }
+
+    private static String modelSubstring(StringBuilder model, int start, int end) {
+        int from = Math.max(0, start);
+        int to = Math.min(end, model.length());
+        return from >= to ? "" : model.substring(from, to);
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package com.collab.collab_editor_backend.websocket;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 只读文档流：新观众不丢失获取快照期间推送的操作，接收过慢的观众被断开且不影响其他观众
+ */
+class DocumentStreamBroadcasterTest {
+
+    private static final long DOC_ID = 3L;
+    private static final String SNAPSHOT = "{\"type\":\"document_content\",\"version\":4}";
+
+    private DocumentStreamBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        broadcaster = new DocumentStreamBroadcaster();
+        ReflectionTestUtils.setField(broadcaster, "viewerMaxQueuedBytes", 1024L);
+    }
+
+    @Test
+    void operationsFlushedWhileTakingSnapshotFollowSnapshot() throws Exception {
+        FakeViewer existing = new FakeViewer(true);
+        broadcaster.subscribe(DOC_ID, existing.context, () -> SNAPSHOT);
+
+        FakeViewer viewer = new FakeViewer(true);
+        broadcaster.subscribe(DOC_ID, viewer.context, () -> {
+            // 获取快照期间推送周期到达
+            broadcaster.publishOperation(DOC_ID, "{\"v\":5}", 5);
+            flush();
+            return SNAPSHOT;
+        });
+
+        String received = viewer.received();
+        assertTrue(received.startsWith("event: document_content\ndata: " + SNAPSHOT + "\n\n"), received);
+        assertTrue(received.contains("event: operations\ndata: {\"type\":\"operations\",\"docId\":3,\"version\":5,\"operations\":[{\"v\":5}]}"), received);
+        assertTrue(existing.received().contains("{\"v\":5}"));
+        assertEquals(2, broadcaster.viewerCount());
+    }
+
+    @Test
+    void slowViewerIsDisconnectedWithoutBlockingOthers() throws Exception {
+        FakeViewer slow = new FakeViewer(false);
+        FakeViewer fast = new FakeViewer(true);
+        broadcaster.subscribe(DOC_ID, slow.context, () -> SNAPSHOT);
+        broadcaster.subscribe(DOC_ID, fast.context, () -> SNAPSHOT);
+
+        for (int i = 0; i < 20; i++) {
+            broadcaster.publishOperation(DOC_ID, "{\"v\":" + i + ",\"pad\":\"" + "x".repeat(50) + "\"}", i);
+            flush();
+        }
+
+        verify(slow.context).complete();
+        verify(fast.context, never()).complete();
+        assertEquals(1, broadcaster.viewerCount());
+        assertTrue(fast.received().contains("{\"v\":19,"));
+        assertEquals("", slow.received());
+    }
+
+    @Test
+    void writesResumeWhenConnectionBecomesWritable() throws Exception {
+        FakeViewer viewer = new FakeViewer(false);
+        broadcaster.subscribe(DOC_ID, viewer.context, () -> SNAPSHOT);
+        broadcaster.publishOperation(DOC_ID, "{\"v\":5}", 5);
+        flush();
+        assertEquals("", viewer.received());
+
+        viewer.ready.set(true);
+        viewer.listener().onWritePossible();
+        assertTrue(viewer.received().startsWith("event: document_content"));
+        assertTrue(viewer.received().contains("{\"v\":5}"));
+        verify(viewer.out).flush();
+    }
+
+    private void flush() {
+        ReflectionTestUtils.invokeMethod(broadcaster, "flush");
+    }
+
+    /**
+     * 模拟的观众连接：isReady由测试控制，写出的字节记录下来
+     */
+    private static final class FakeViewer {
+        private final AsyncContext context = mock(AsyncContext.class);
+        private final ServletOutputStream out = mock(ServletOutputStream.class);
+        private final AtomicBoolean ready;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private FakeViewer(boolean writable) throws Exception {
+            ready = new AtomicBoolean(writable);
+            ServletResponse response = mock(ServletResponse.class);
+            when(context.getResponse()).thenReturn(response);
+            when(response.getOutputStream()).thenReturn(out);
+            when(out.isReady()).thenAnswer(invocation -> ready.get());
+            doAnswer(invocation -> {
+                bytes.write((byte[]) invocation.getArgument(0));
+                return null;
+            }).when(out).write(any(byte[].class));
+        }
+
+        private String received() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+
+        private WriteListener listener() {
+            ArgumentCaptor<WriteListener> captor = ArgumentCaptor.forClass(WriteListener.class);
+            verify(out).setWriteListener(captor.capture());
+            return captor.getValue();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.handler.OTAlgorithm;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * REST保存、版本回滚：文档正在编辑时实时内容随数据库写入一起替换；
+ * 停机排空中新建的连接在关闭前收到重连提示；content_update计入编辑频率，tick模式下每周期只广播最新一条
+ */
+class DocumentWebSocketHandlerTest {
+
+    private static final long DOC_ID = 11L;
+
+    private LiveDocumentRegistry registry;
+    private DocumentStreamBroadcaster streamBroadcaster;
+    private DocumentWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        DocumentLoader documentLoader = mock(DocumentLoader.class);
+        DocumentContentStore contentStore = mock(DocumentContentStore.class);
+        Document document = new Document();
+        document.setId(DOC_ID);
+        when(documentLoader.load(DOC_ID)).thenReturn(document);
+        when(contentStore.get(document)).thenReturn("stored");
+
+        registry = new LiveDocumentRegistry();
+        ReflectionTestUtils.setField(registry, "documentLoader", documentLoader);
+        ReflectionTestUtils.setField(registry, "contentStore", contentStore);
+
+        streamBroadcaster = mock(DocumentStreamBroadcaster.class);
+        handler = new DocumentWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "liveDocumentRegistry", registry);
+        ReflectionTestUtils.setField(handler, "streamBroadcaster", streamBroadcaster);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close(DOC_ID);
+        staticMap("DOCUMENT_SESSIONS").remove(DOC_ID);
+        staticMap("DOCUMENT_OP_COUNTERS").remove(DOC_ID);
+        staticMap("TICK_BATCHES").remove(DOC_ID);
+        staticMap("TICK_CONTENT_UPDATES").remove(DOC_ID);
+    }
+
+    @Test
+    void storedContentReplacesLiveBufferAndClearsDirtyFlag() {
+        LiveDocument live = registry.open(DOC_ID);
+        live.applyOperation(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 6, " edit", 0));
+        live.getVersion().incrementAndGet();
+        live.markDirty();
+        String etagBefore = live.etag();
+
+        AtomicBoolean written = new AtomicBoolean();
+        handler.replaceStoredContent(DOC_ID, "rolled back", 1L, () -> {
+            // 写数据库时持有文档锁，排空持久化无法在写入和替换之间取走旧内容
+            assertTrue(Thread.holdsLock(live));
+            written.set(true);
+        });
+
+        assertTrue(written.get());
+        assertEquals("rolled back", registry.snapshot(DOC_ID).content());
+        assertNotEquals(etagBefore, live.etag());
+        // 替换前未保存的修改不会在停机时写回覆盖回滚
+        assertFalse(live.isDirty());
+        assertNull(live.takeDirtySnapshot());
+        verify(streamBroadcaster).publishSnapshot(eq(DOC_ID), contains("rolled back"));
+    }
+
+    @Test
+    void documentNotBeingEditedOnlyWritesStore() {
+        AtomicBoolean written = new AtomicBoolean();
+        handler.replaceStoredContent(DOC_ID, "saved", 1L, () -> written.set(true));
+
+        assertTrue(written.get());
+        assertNull(registry.get(DOC_ID));
+        verify(streamBroadcaster, never()).publishSnapshot(anyLong(), anyString());
+    }
+
+    @Test
+    void connectionDuringDrainReceivesReconnectBeforeClose() throws Exception {
+        ReflectionTestUtils.setField(handler, "draining", true);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("docId", DOC_ID);
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+
+        handler.afterConnectionEstablished(session);
+
+        var order = inOrder(session);
+        order.verify(session).sendMessage(argThat(message ->
+                ((TextMessage) message).getPayload().contains("\"type\":\"reconnect\"")));
+        order.verify(session).close(CloseStatus.SERVICE_RESTARTED);
+    }
+
+    @Test
+    void contentUpdatesCountTowardRateAndCoalescePerTick() throws Exception {
+        registry.open(DOC_ID);
+        registry.snapshot(DOC_ID);
+        WebSocketSession editor = mock(WebSocketSession.class);
+        WebSocketSession receiver = mock(WebSocketSession.class);
+        SessionOutbox outbox = mock(SessionOutbox.class);
+        Map<String, Object> receiverAttributes = new HashMap<>();
+        receiverAttributes.put("outbox", outbox);
+        when(receiver.isOpen()).thenReturn(true);
+        when(receiver.getAttributes()).thenReturn(receiverAttributes);
+        Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+        sessions.add(editor);
+        sessions.add(receiver);
+        staticMap("DOCUMENT_SESSIONS").put(DOC_ID, sessions);
+        // 文档已处于tick模式
+        staticMap("TICK_BATCHES").put(DOC_ID, new ArrayList<>());
+
+        for (String content : List.of("first", "second")) {
+            Map<String, Object> message = new HashMap<>();
+            message.put("content", content);
+            ReflectionTestUtils.invokeMethod(handler, "handleContentUpdate", editor, message, DOC_ID);
+        }
+
+        assertEquals(2, ((AtomicInteger) staticMap("DOCUMENT_OP_COUNTERS").get(DOC_ID)).get());
+        verify(outbox, never()).send(any(), any(), any());
+
+        ReflectionTestUtils.invokeMethod(handler, "flushTickBatches");
+        verify(outbox).send(eq(SessionOutbox.Lane.OPS), isNull(), argThat(message ->
+                ((TextMessage) message).getPayload().contains("\"content\":\"second\"")));
+        verify(outbox, times(1)).send(any(), any(), any());
+        assertEquals("second", registry.snapshot(DOC_ID).content());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, Object> staticMap(String name) {
+        return (Map<Long, Object>) ReflectionTestUtils.getField(DocumentWebSocketHandler.class, name);
+    }
+}
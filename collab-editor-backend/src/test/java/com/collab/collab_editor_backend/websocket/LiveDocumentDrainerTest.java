@@ -0,0 +1,143 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.entity.Document;
+import com.collab.collab_editor_backend.handler.OTAlgorithm;
+import com.collab.collab_editor_backend.service.DocumentService;
+import com.collab.collab_editor_backend.util.DocumentContentStore;
+import com.collab.collab_editor_backend.util.DocumentLoader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 停机排空：只持久化从数据库初始化过的在线文档，冷文档的存储内容不能被残缺的实时内容覆盖
+ */
+class LiveDocumentDrainerTest {
+
+    private static final long DOC_ID = 7L;
+    private static final String STORED = "hello world";
+
+    private DocumentLoader documentLoader;
+    private DocumentContentStore contentStore;
+    private DocumentService documentService;
+    private LiveDocumentRegistry registry;
+    private LiveDocumentDrainer drainer;
+
+    @BeforeEach
+    void setUp() {
+        documentLoader = mock(DocumentLoader.class);
+        contentStore = mock(DocumentContentStore.class);
+        documentService = mock(DocumentService.class);
+
+        registry = new LiveDocumentRegistry();
+        ReflectionTestUtils.setField(registry, "documentLoader", documentLoader);
+        ReflectionTestUtils.setField(registry, "contentStore", contentStore);
+
+        drainer = new LiveDocumentDrainer();
+        ReflectionTestUtils.setField(drainer, "liveDocumentRegistry", registry);
+        ReflectionTestUtils.setField(drainer, "documentService", documentService);
+        ReflectionTestUtils.setField(drainer, "documentWebSocketHandler", mock(DocumentWebSocketHandler.class));
+        ReflectionTestUtils.setField(drainer, "timeoutMs", 5000L);
+        ReflectionTestUtils.setField(drainer, "flushParallelism", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close(DOC_ID);
+    }
+
+    @Test
+    void drainPersistsSeededDocumentWithStoredContentAndEdits() {
+        Document document = new Document();
+        document.setId(DOC_ID);
+        when(documentLoader.load(DOC_ID)).thenReturn(document);
+        when(contentStore.get(document)).thenReturn(STORED);
+        when(documentService.persistLiveContent(anyLong(), anyString())).thenReturn(true);
+
+        LiveDocument live = registry.open(DOC_ID);
+        assertTrue(live.isSeeded());
+        live.applyOperation(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 5, ",", 0));
+        live.markDirty();
+
+        drainer.stop();
+
+        verify(documentService).persistLiveContent(eq(DOC_ID), eq("hello, world"));
+        assertFalse(live.isDirty());
+    }
+
+    @Test
+    void drainKeepsStoredContentWhenColdDocumentWasNeverSeeded() {
+        when(documentLoader.load(DOC_ID)).thenThrow(new IllegalStateException("数据库不可用"));
+
+        LiveDocument live = registry.open(DOC_ID);
+        assertFalse(live.isSeeded());
+        // 未初始化时操作被拒绝，修改标记也不会设置
+        assertThrows(IllegalStateException.class, () -> live.applyOperation(
+                new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 0, "x", 0)));
+        live.markDirty();
+        assertFalse(live.isDirty());
+
+        drainer.stop();
+
+        verify(documentService, never()).persistLiveContent(any(), any());
+    }
+
+    @Test
+    void drainHoldsDocumentLockWhilePersisting() {
+        Document document = new Document();
+        document.setId(DOC_ID);
+        when(documentLoader.load(DOC_ID)).thenReturn(document);
+        when(contentStore.get(document)).thenReturn(STORED);
+        LiveDocument live = registry.open(DOC_ID);
+        live.markDirty();
+        // REST保存、回滚在文档锁内写数据库，持久化也持有文档锁，两者不会交错
+        AtomicBoolean locked = new AtomicBoolean();
+        when(documentService.persistLiveContent(anyLong(), anyString())).thenAnswer(invocation -> {
+            locked.set(Thread.holdsLock(live));
+            return true;
+        });
+
+        drainer.stop();
+
+        verify(documentService).persistLiveContent(eq(DOC_ID), eq(STORED));
+        assertTrue(locked.get());
+        assertFalse(live.isDirty());
+    }
+
+    @Test
+    void drainSkipsBufferReplacedByStoredContent() {
+        Document document = new Document();
+        document.setId(DOC_ID);
+        when(documentLoader.load(DOC_ID)).thenReturn(document);
+        when(contentStore.get(document)).thenReturn(STORED);
+        LiveDocument live = registry.open(DOC_ID);
+        live.applyOperation(new OTAlgorithm.Operation(OTAlgorithm.OperationType.INSERT, 0, "unsaved ", 0));
+        live.markDirty();
+
+        // REST回滚写入数据库后替换实时内容，替换前未保存的修改不再写回
+        live.replaceWithStored("rolled back");
+        drainer.stop();
+
+        verify(documentService, never()).persistLiveContent(any(), any());
+    }
+
+    @Test
+    void takeDirtySnapshotIgnoresUnseededBuffer() {
+        LiveDocument live = new LiveDocument(DOC_ID);
+        // 直接写入缓冲区也不会让未初始化的内容被持久化
+        live.getOrCreateContent().insert(0, "fragment");
+        live.markDirty();
+        assertNull(live.takeDirtySnapshot());
+        live.release();
+    }
+}
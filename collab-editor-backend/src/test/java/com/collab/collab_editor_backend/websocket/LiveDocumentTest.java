@@ -0,0 +1,54 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.handler.OTAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在线文档：内容从数据库初始化之前，快照、ETag和统计都不能作为权威内容对外提供
+ */
+class LiveDocumentTest {
+
+    private final LiveDocument live = new LiveDocument(1L);
+
+    @AfterEach
+    void tearDown() {
+        live.release();
+    }
+
+    @Test
+    void unseededBufferIsNotServed() {
+        live.getOrCreateContent().insert(0, "fragment");
+        assertFalse(live.isSeeded());
+        assertNull(live.snapshot());
+        assertNull(live.etag());
+        assertNull(live.stats());
+    }
+
+    @Test
+    void seededBufferIsServedWithEdits() {
+        live.seed("hello world");
+        live.applyOperation(new OTAlgorithm.Operation(OTAlgorithm.OperationType.DELETE, 0, "hello ", 0));
+        live.getVersion().incrementAndGet();
+
+        LiveDocument.Snapshot snapshot = live.snapshot();
+        assertNotNull(snapshot);
+        assertEquals("world", snapshot.content());
+        assertEquals(1, snapshot.version());
+        assertEquals(snapshot.etag(), live.etag());
+        Map<String, Object> stats = live.stats();
+        assertNotNull(stats);
+        assertEquals(5, stats.get("length"));
+    }
+
+    @Test
+    void seedDoesNotOverwriteReplacedContent() {
+        live.replaceContent("from client");
+        live.seed("stale stored content");
+        assertEquals("from client", live.snapshot().content());
+    }
+}
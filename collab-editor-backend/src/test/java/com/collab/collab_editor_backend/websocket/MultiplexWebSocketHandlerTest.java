@@ -0,0 +1,78 @@
+package com.collab.collab_editor_backend.websocket;
+
+import com.collab.collab_editor_backend.util.TokenBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 多路复用连接：解析前按物理连接限制消息总量，持续超限时断开
+ */
+class MultiplexWebSocketHandlerTest {
+
+    private static final String UNROUTED = "{\"type\":\"ping\",\"channel\":\"doc:1\"}";
+
+    private MultiplexWebSocketHandler handler;
+    private WebSocketSession session;
+    private Map<String, Object> attributes;
+
+    @BeforeEach
+    void setUp() {
+        handler = new MultiplexWebSocketHandler();
+        ReflectionTestUtils.setField(handler, "maxMessageChars", 1024);
+        ReflectionTestUtils.setField(handler, "floodCloseThreshold", 3);
+
+        attributes = new ConcurrentHashMap<>();
+        attributes.put("channels", new ConcurrentHashMap<String, ChannelWebSocketSession>());
+        // 令牌几乎不补充，只允许突发的2条
+        attributes.put("frameBucket", new TokenBucket(2, 0.001));
+        attributes.put("floodStrikes", new AtomicInteger());
+        session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("m1");
+    }
+
+    @Test
+    void framesOverLimitAreDroppedBeforeParsing() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(UNROUTED));
+        handler.handleTextMessage(session, new TextMessage(UNROUTED));
+        // 超限的消息即使不是合法JSON也不会被解析
+        handler.handleTextMessage(session, new TextMessage("not json"));
+
+        // 前两条未订阅通道，各返回一条error
+        verify(session, times(2)).sendMessage(any());
+        verify(session, never()).close(any());
+    }
+
+    @Test
+    void rejectedFragmentedMessageReleasesBufferedFragments() throws Exception {
+        handler.handleTextMessage(session, new TextMessage(UNROUTED));
+        handler.handleTextMessage(session, new TextMessage(UNROUTED));
+
+        handler.handleTextMessage(session, new TextMessage("{\"type\":\"ping\",", false));
+        assertTrue(attributes.containsKey("fragmentAssembler"));
+        handler.handleTextMessage(session, new TextMessage("\"channel\":\"doc:1\"}", true));
+        assertFalse(attributes.containsKey("fragmentAssembler"));
+        verify(session, times(2)).sendMessage(any());
+    }
+
+    @Test
+    void persistentFloodClosesConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            handler.handleTextMessage(session, new TextMessage(UNROUTED));
+        }
+        verify(session, atLeastOnce()).close(new CloseStatus(4008, "消息发送过于频繁"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.collab.collab_editor_backend.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 会话发送队列：入队线程不写出，慢客户端按积压字符数和发送耗时被关闭
+ */
+class SessionOutboxTest {
+
+    private ExecutorService sender;
+    private WebSocketSession session;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        sender = Executors.newFixedThreadPool(2);
+        session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.shutdownNow();
+    }
+
+    @Test
+    void sendsInPriorityOrderOnSenderThread() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            if (sent.isEmpty()) {
+                blocked.countDown();
+                release.await();
+            }
+            sent.add(message.getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+
+        SessionOutbox outbox = new SessionOutbox(session, sender, 100, 10, 1_000_000, 10_000);
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("first"));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // 发送线程被卡住时入队立即返回
+        long start = System.nanoTime();
+        outbox.send(SessionOutbox.Lane.PRESENCE, "cursor:1", new TextMessage("cursor-old"));
+        outbox.send(SessionOutbox.Lane.PRESENCE, "cursor:1", new TextMessage("cursor-new"));
+        outbox.send(SessionOutbox.Lane.CONTROL, null, new TextMessage("control"));
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("op"));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        // 同一键的在线状态消息只保留最新一条
+        assertEquals(3, outbox.size());
+
+        release.countDown();
+        waitUntil(() -> outbox.size() == 0 && sent.size() == 4);
+        assertEquals(List.of("first", "op", "control", "cursor-new"), sent);
+    }
+
+    @Test
+    void closesWhenBufferedCharsExceedLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(session).sendMessage(any());
+
+        SessionOutbox outbox = new SessionOutbox(session, sender, 100, 10, 10, 10_000);
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("12345"));
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("12345"));
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("12345"));
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("12345"));
+        verify(session, atLeastOnce()).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    @Test
+    void closesWhenSingleSendExceedsTimeLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            blocked.countDown();
+            release.await();
+            return null;
+        }).when(session).sendMessage(any());
+
+        SessionOutbox outbox = new SessionOutbox(session, sender, 100, 10, 1_000_000, 50);
+        outbox.send(SessionOutbox.Lane.OPS, null, new TextMessage("stuck"));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertTrue(outbox.checkSendTimeLimit());
+        Thread.sleep(100);
+        assertFalse(outbox.checkSendTimeLimit());
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        release.countDown();
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("等待超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+}